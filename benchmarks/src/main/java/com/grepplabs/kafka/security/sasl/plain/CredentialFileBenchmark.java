@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a compiled credential file, which is the credential part of a reload with the option credential.file,
+ * and a lookup in the mapped file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CredentialFileBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int users;
+
+    private Path file;
+    private PasswordVerifiers verifiers;
+    private PackedCredentialStore store;
+    private byte[] username;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Map<String, String> configured = new HashMap<>();
+        for (int i = 0; i < users; i++) {
+            String name = "user" + i;
+            configured.put(name, HandshakeBenchmark.password(name));
+        }
+        file = Files.createTempFile("users", ".cred");
+        verifiers = PasswordVerifiers.create(Collections.<String, Object>emptyMap());
+        CredentialFileCompiler.compile(configured, verifiers, file);
+        store = PackedCredentialStore.open(file, verifiers);
+        username = ("user" + (users / 2)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    /**
+     * Single shots like a reload, as mappings are only released by the garbage collector.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 100)
+    public PackedCredentialStore open() {
+        return PackedCredentialStore.open(file, verifiers);
+    }
+
+    @Benchmark
+    public Credential lookup() {
+        return store.credential(username, 0, username.length);
+    }
+}
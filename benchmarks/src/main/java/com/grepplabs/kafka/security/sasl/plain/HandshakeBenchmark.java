@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.security.JaasContext;
+import org.apache.kafka.common.security.authenticator.SaslServerCallbackHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.security.auth.login.Configuration;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full server side handshake: PlainSaslServerFactory.createSaslServer, evaluateResponse and dispose.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HandshakeBenchmark {
+
+    public enum Outcome {
+        VALID, WRONG_PASSWORD, UNKNOWN_USER
+    }
+
+    @Param({"10", "1000", "100000"})
+    public int users;
+
+    @Param({"VALID", "WRONG_PASSWORD", "UNKNOWN_USER"})
+    public Outcome outcome;
+
+    private final PlainSaslServer.PlainSaslServerFactory factory = new PlainSaslServer.PlainSaslServerFactory();
+    private final Map<String, Object> props = Collections.emptyMap();
+    private SaslServerCallbackHandler callbackHandler;
+    private byte[] response;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Configuration.setConfiguration(jaasConfig(users));
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+        JaasContext jaasContext = JaasContext.load(JaasContext.Type.SERVER, new ListenerName("SASL_PLAINTEXT"), props);
+        callbackHandler = new SaslServerCallbackHandler(jaasContext, null);
+
+        String username = "user" + (users / 2);
+        switch (outcome) {
+            case VALID:
+                response = saslMessage(username, password(username));
+                break;
+            case WRONG_PASSWORD:
+                response = saslMessage(username, "wrong-password");
+                break;
+            case UNKNOWN_USER:
+                response = saslMessage("unknown-user", "wrong-password");
+                break;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+        Configuration.setConfiguration(null);
+    }
+
+    @Benchmark
+    public boolean handshake() throws SaslException {
+        SaslServer server = factory.createSaslServer(PlainSaslServer.PLAIN_MECHANISM, "SASL_PLAINTEXT", "localhost", props, callbackHandler);
+        try {
+            server.evaluateResponse(response);
+        } catch (SaslException ignore) {
+            // expected for the failure outcomes
+        } finally {
+            server.dispose();
+        }
+        return server.isComplete();
+    }
+
+    static BenchmarkJaasConfig jaasConfig(int users) {
+        Map<String, Object> options = new HashMap<>();
+        for (int i = 0; i < users; i++) {
+            String username = "user" + i;
+            options.put("user_" + username, password(username));
+        }
+        BenchmarkJaasConfig jaasConfig = new BenchmarkJaasConfig();
+        jaasConfig.addEntry(BenchmarkJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName(), options);
+        return jaasConfig;
+    }
+
+    static String password(String username) {
+        return username + "-secret";
+    }
+
+    static byte[] saslMessage(String username, String password) {
+        return ("\u0000" + username + "\u0000" + password).getBytes(StandardCharsets.UTF_8);
+    }
+}
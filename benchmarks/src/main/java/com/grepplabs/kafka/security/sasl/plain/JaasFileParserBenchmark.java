@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.security.auth.login.Configuration;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.security.URIParameter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a JAAS configuration file with JaasFileConfiguration, which is the file part of a reload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JaasFileParserBenchmark {
+
+    @Param({"1000", "200000"})
+    public int users;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("kafka_server_jaas", ".conf");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("KafkaClient {\n  " + PlainLoginModule.class.getName() + " required username=\"admin\" password=\"admin-secret\";\n};\n");
+            writer.write("KafkaServer {\n  " + PlainLoginModule.class.getName() + " required\n");
+            for (int i = 0; i < users; i++) {
+                String username = "user" + i;
+                writer.write("  user_" + username + "=\"" + HandshakeBenchmark.password(username) + "\"\n");
+            }
+            writer.write(";\n};\n");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public JaasFileConfiguration parse() throws IOException {
+        return JaasFileConfiguration.load(file);
+    }
+
+    /**
+     * The JDK ConfigFile for comparison, which parses all sections of the file.
+     */
+    @Benchmark
+    public Configuration jdkConfigFile() throws NoSuchAlgorithmException {
+        return Configuration.getInstance("JavaLoginConfig", new URIParameter(file.toUri()));
+    }
+}
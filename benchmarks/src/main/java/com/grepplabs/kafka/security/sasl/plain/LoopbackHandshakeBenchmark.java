@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.config.SaslConfigs;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.network.ChannelState;
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.network.SaslChannelBuilder;
+import org.apache.kafka.common.network.Selectable;
+import org.apache.kafka.common.network.Selector;
+import org.apache.kafka.common.protocol.SecurityProtocol;
+import org.apache.kafka.common.security.JaasContext;
+import org.apache.kafka.common.utils.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.security.auth.login.Configuration;
+import javax.security.sasl.Sasl;
+import javax.security.sasl.SaslServerFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Full SASL/PLAIN handshakes over loopback sockets through the Kafka SaslClientAuthenticator and
+ * SaslServerAuthenticator, so the framing of the handshake request and the SASL tokens is included.
+ * Each operation connects a client, waits until the client channel is authenticated and closes it.
+ * The provider parameter selects the SaslServer of this module or the stock Kafka PlainSaslServer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LoopbackHandshakeBenchmark {
+
+    public enum ServerProvider {
+        MODULE(PlainLoginModule.class, PlainSaslServer.class),
+        STOCK(org.apache.kafka.common.security.plain.PlainLoginModule.class, org.apache.kafka.common.security.plain.PlainSaslServer.class);
+
+        final Class<?> loginModule;
+        final Class<?> saslServer;
+
+        ServerProvider(Class<?> loginModule, Class<?> saslServer) {
+            this.loginModule = loginModule;
+            this.saslServer = saslServer;
+        }
+    }
+
+    private static final ListenerName LISTENER = new ListenerName("SASL_PLAINTEXT");
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final long HANDSHAKE_TIMEOUT_MS = 10000;
+
+    @Param({"1000", "100000"})
+    public int users;
+
+    @Param({"MODULE", "STOCK"})
+    public ServerProvider provider;
+
+    private final Map<String, Object> configs = new HashMap<>();
+    private SaslChannelBuilder serverChannelBuilder;
+    private Selector serverSelector;
+    private ServerSocketChannel serverSocket;
+    private Thread acceptor;
+    private Thread processor;
+    private volatile boolean running;
+    private InetSocketAddress address;
+    private SaslChannelBuilder clientChannelBuilder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkJaasConfig jaasConfig = jaasConfig(provider, users);
+        Configuration.setConfiguration(jaasConfig);
+        installProvider(provider);
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+
+        configs.put(SaslConfigs.SASL_ENABLED_MECHANISMS, Collections.singletonList(PlainSaslServer.PLAIN_MECHANISM));
+        configs.put(SaslConfigs.SASL_MECHANISM, PlainSaslServer.PLAIN_MECHANISM);
+
+        JaasContext serverContext = JaasContext.load(JaasContext.Type.SERVER, LISTENER, configs);
+        serverChannelBuilder = new SaslChannelBuilder(org.apache.kafka.common.network.Mode.SERVER, serverContext,
+                SecurityProtocol.SASL_PLAINTEXT, PlainSaslServer.PLAIN_MECHANISM, true, null);
+        serverChannelBuilder.configure(configs);
+        serverSelector = new Selector(Selector.NO_IDLE_TIMEOUT_MS, new Metrics(), Time.SYSTEM, "server", serverChannelBuilder);
+
+        JaasContext clientContext = new JaasContext(BenchmarkJaasConfig.LOGIN_CONTEXT_CLIENT, JaasContext.Type.CLIENT, jaasConfig);
+        clientChannelBuilder = new SaslChannelBuilder(org.apache.kafka.common.network.Mode.CLIENT, clientContext,
+                SecurityProtocol.SASL_PLAINTEXT, PlainSaslServer.PLAIN_MECHANISM, true, null);
+        clientChannelBuilder.configure(configs);
+
+        serverSocket = ServerSocketChannel.open();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        address = (InetSocketAddress) serverSocket.getLocalAddress();
+        running = true;
+        final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept(accepted);
+            }
+        }, "loopback-acceptor");
+        processor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                process(accepted);
+            }
+        }, "loopback-processor");
+        acceptor.start();
+        processor.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        running = false;
+        serverSocket.close();
+        serverSelector.wakeup();
+        acceptor.join();
+        processor.join();
+        serverSelector.close();
+        clientChannelBuilder.close();
+        serverChannelBuilder.close();
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+        Configuration.setConfiguration(null);
+    }
+
+    /**
+     * Client selector of a benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        private static final AtomicInteger CLIENTS = new AtomicInteger();
+
+        Selector selector;
+        int connections;
+
+        @Setup(Level.Trial)
+        public void setUp(LoopbackHandshakeBenchmark benchmark) {
+            selector = new Selector(Selector.NO_IDLE_TIMEOUT_MS, new Metrics(), Time.SYSTEM,
+                    "client-" + CLIENTS.incrementAndGet(), benchmark.clientChannelBuilder);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            selector.close();
+        }
+    }
+
+    @Benchmark
+    public void handshake(Client client) throws IOException {
+        String id = Integer.toString(client.connections++);
+        Selector selector = client.selector;
+        selector.connect(id, address, Selectable.USE_DEFAULT_BUFFER_SIZE, Selectable.USE_DEFAULT_BUFFER_SIZE);
+        long deadlineMs = System.currentTimeMillis() + HANDSHAKE_TIMEOUT_MS;
+        try {
+            while (!selector.isChannelReady(id)) {
+                selector.poll(POLL_TIMEOUT_MS);
+                ChannelState state = selector.disconnected().get(id);
+                if (state != null) {
+                    throw new IllegalStateException("Handshake of connection " + id + " failed: " + state);
+                }
+                if (System.currentTimeMillis() > deadlineMs) {
+                    throw new IllegalStateException("Handshake of connection " + id + " timed out");
+                }
+            }
+        } finally {
+            selector.close(id);
+        }
+    }
+
+    private void accept(Queue<SocketChannel> accepted) {
+        while (running) {
+            try {
+                SocketChannel socket = serverSocket.accept();
+                socket.configureBlocking(false);
+                socket.socket().setTcpNoDelay(true);
+                accepted.add(socket);
+                serverSelector.wakeup();
+            } catch (IOException e) {
+                if (running) {
+                    throw new IllegalStateException("Accept failed", e);
+                }
+            }
+        }
+    }
+
+    private void process(Queue<SocketChannel> accepted) {
+        int connections = 0;
+        while (running) {
+            try {
+                SocketChannel socket;
+                while ((socket = accepted.poll()) != null) {
+                    serverSelector.register(Integer.toString(connections++), socket);
+                }
+                serverSelector.poll(POLL_TIMEOUT_MS);
+            } catch (IOException e) {
+                if (running) {
+                    throw new IllegalStateException("Poll failed", e);
+                }
+            }
+        }
+    }
+
+    static BenchmarkJaasConfig jaasConfig(ServerProvider provider, int users) {
+        Map<String, Object> serverOptions = new HashMap<>();
+        for (int i = 0; i < users; i++) {
+            String username = "user" + i;
+            serverOptions.put("user_" + username, HandshakeBenchmark.password(username));
+        }
+        String username = "user" + (users / 2);
+        Map<String, Object> clientOptions = new HashMap<>();
+        clientOptions.put("username", username);
+        clientOptions.put("password", HandshakeBenchmark.password(username));
+
+        BenchmarkJaasConfig jaasConfig = new BenchmarkJaasConfig();
+        jaasConfig.addEntry(BenchmarkJaasConfig.LOGIN_CONTEXT_SERVER, provider.loginModule.getName(), serverOptions);
+        jaasConfig.addEntry(BenchmarkJaasConfig.LOGIN_CONTEXT_CLIENT,
+                org.apache.kafka.common.security.plain.PlainLoginModule.class.getName(), clientOptions);
+        return jaasConfig;
+    }
+
+    /**
+     * Both login modules install a SaslServerFactory for PLAIN when they are loaded and the first installed one
+     * is used, so the factories are removed and the one of the provider parameter is installed again.
+     */
+    static void installProvider(ServerProvider provider) throws Exception {
+        Class.forName(PlainLoginModule.class.getName());
+        Class.forName(org.apache.kafka.common.security.plain.PlainLoginModule.class.getName());
+        String service = "SaslServerFactory." + PlainSaslServer.PLAIN_MECHANISM;
+        Provider[] installed = Security.getProviders(service);
+        if (installed != null) {
+            for (Provider p : installed) {
+                Security.removeProvider(p.getName());
+            }
+        }
+        if (provider == ServerProvider.MODULE) {
+            PlainSaslServerProvider.initialize();
+        } else {
+            org.apache.kafka.common.security.plain.PlainSaslServerProvider.initialize();
+        }
+        Class<?> used = usedSaslServerFactory();
+        if (used.getEnclosingClass() != provider.saslServer) {
+            throw new IllegalStateException("SaslServerFactory of " + provider + " is not installed, but " + used.getName());
+        }
+    }
+
+    private static Class<?> usedSaslServerFactory() {
+        Enumeration<SaslServerFactory> factories = Sasl.getSaslServerFactories();
+        while (factories.hasMoreElements()) {
+            SaslServerFactory factory = factories.nextElement();
+            for (String mechanism : factory.getMechanismNames(Collections.<String, Object>emptyMap())) {
+                if (PlainSaslServer.PLAIN_MECHANISM.equals(mechanism)) {
+                    return factory.getClass();
+                }
+            }
+        }
+        throw new IllegalStateException("No SaslServerFactory for " + PlainSaslServer.PLAIN_MECHANISM);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConfigFileWatchService.notifyChangeListeners with N registered listeners.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NotifyListenersBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int listeners;
+
+    private final ConfigFileWatchService service = new ConfigFileWatchService();
+    // strong references, the service keeps weak references only
+    private final List<CountingListener> registered = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < listeners; i++) {
+            CountingListener listener = new CountingListener();
+            registered.add(listener);
+            service.addListener(listener);
+        }
+    }
+
+    @Benchmark
+    public void notifyChangeListeners() {
+        service.notifyChangeListeners();
+    }
+
+    static class CountingListener implements ConfigFileChangeListener {
+        private final AtomicLong changes = new AtomicLong();
+
+        @Override
+        public void configFileChanged() {
+            changes.incrementAndGet();
+        }
+    }
+}
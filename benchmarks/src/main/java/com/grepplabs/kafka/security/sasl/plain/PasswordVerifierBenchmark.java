@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.security.JaasContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.security.sasl.SaslException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Successful handshakes per second on a single thread (i.e. per core) for each password verifier scheme.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PasswordVerifierBenchmark {
+
+    private static final String USERNAME = "alice";
+    private static final String PASSWORD = "alice-secret";
+
+    @Param({"PLAIN", "HMAC-SHA256", "PBKDF2-SHA256", "BCRYPT"})
+    public String scheme;
+
+    @Param({"10000"})
+    public int iterations;
+
+    @Param({"10"})
+    public int cost;
+
+    private PlainSaslServer.JaasContextProvider provider;
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("user_" + USERNAME, PasswordEncoder.encode(scheme, PASSWORD.getBytes(StandardCharsets.UTF_8), iterations, cost));
+        BenchmarkJaasConfig jaasConfig = new BenchmarkJaasConfig();
+        jaasConfig.addEntry(BenchmarkJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName(), options);
+        provider = new PlainSaslServer.JaasContextProvider(new JaasContext(BenchmarkJaasConfig.LOGIN_CONTEXT_SERVER, JaasContext.Type.SERVER, jaasConfig));
+        response = ("\u0000" + USERNAME + "\u0000" + PASSWORD).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public boolean handshake() throws SaslException {
+        PlainSaslServer server = new PlainSaslServer(provider);
+        server.evaluateResponse(response);
+        return server.isComplete();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.security.JaasContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.security.auth.login.Configuration;
+import javax.security.sasl.SaslException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JaasContextProvider.configFileChanged on one thread while three threads authenticate against the same provider.
+ * The score of the reload method is the reload latency, the score of the authenticate method the handshake
+ * latency observed during the reloads.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReloadBenchmark {
+
+    @Param({"1000", "100000"})
+    public int users;
+
+    private PlainSaslServer.JaasContextProvider provider;
+    private byte[] response;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Configuration.setConfiguration(HandshakeBenchmark.jaasConfig(users));
+        provider = new PlainSaslServer.JaasContextProvider(JaasContext.Type.SERVER, new ListenerName("SASL_PLAINTEXT"),
+                Collections.<String, Object>emptyMap());
+        provider.init();
+        String username = "user" + (users / 2);
+        response = HandshakeBenchmark.saslMessage(username, HandshakeBenchmark.password(username));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.dispose();
+        Configuration.setConfiguration(null);
+    }
+
+    @Benchmark
+    @Group("reloadUnderLoad")
+    @GroupThreads(1)
+    public void reload() {
+        provider.configFileChanged();
+    }
+
+    @Benchmark
+    @Group("reloadUnderLoad")
+    @GroupThreads(3)
+    public boolean authenticate() throws SaslException {
+        PlainSaslServer server = new PlainSaslServer(provider);
+        server.evaluateResponse(response);
+        return server.isComplete();
+    }
+}
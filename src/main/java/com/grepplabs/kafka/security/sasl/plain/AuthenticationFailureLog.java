@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.utils.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Log of failed authentications which stays small during a storm of failures. The failures are counted per
+ * username over an interval; the first occurrences of a username in an interval are logged individually, further
+ * occurrences only with the sample rate. The summary of the failures which were not logged individually is logged
+ * by the first failure after an interval, or by the {@link #scheduleSummaries() scheduled} flush if no failure
+ * follows. Configured with the options of the login module:
+ * <ul>
+ * <li><code>failure.log.first.occurrences</code> - failures of a username logged individually per interval (default 5)</li>
+ * <li><code>failure.log.sample.rate</code> - fraction of the further failures logged individually (default 0)</li>
+ * <li><code>failure.log.interval.ms</code> - interval of the counts and the summary (default 60000)</li>
+ * <li><code>failure.log.max.usernames</code> - maximum number of usernames counted per interval (default 1000)</li>
+ * </ul>
+ * The failures of the usernames which exceed the maximum are only logged with the sample rate.
+ */
+final class AuthenticationFailureLog {
+    private static final Logger log = LoggerFactory.getLogger(AuthenticationFailureLog.class);
+
+    static final String FIRST_OCCURRENCES_CONFIG = "failure.log.first.occurrences";
+    static final String SAMPLE_RATE_CONFIG = "failure.log.sample.rate";
+    static final String INTERVAL_MS_CONFIG = "failure.log.interval.ms";
+    static final String MAX_USERNAMES_CONFIG = "failure.log.max.usernames";
+    static final int DEFAULT_FIRST_OCCURRENCES = 5;
+    static final double DEFAULT_SAMPLE_RATE = 0.0;
+    static final int DEFAULT_INTERVAL_MS = 60000;
+    static final int DEFAULT_MAX_USERNAMES = 1000;
+
+    // usernames listed in a summary
+    private static final int SUMMARY_USERNAMES = 10;
+    // maximum delay of a scheduled summary after its interval
+    private static final int FLUSH_PERIOD_MS = 1000;
+
+    private static final ScheduledThreadPoolExecutor SUMMARY_EXECUTOR = summaryExecutor();
+
+    enum Failure {
+        INVALID_USERNAME, INVALID_PASSWORD
+    }
+
+    private final Time time;
+    private final int firstOccurrences;
+    private final double sampleRate;
+    private final int intervalMs;
+    private final int maxUsernames;
+    private final AtomicReference<Window> window;
+    private volatile Future<?> summaries;
+
+    private AuthenticationFailureLog(Time time, int firstOccurrences, double sampleRate, int intervalMs, int maxUsernames) {
+        this.time = time;
+        this.firstOccurrences = firstOccurrences;
+        this.sampleRate = sampleRate;
+        this.intervalMs = intervalMs;
+        this.maxUsernames = maxUsernames;
+        this.window = new AtomicReference<>(new Window(time.milliseconds()));
+    }
+
+    static AuthenticationFailureLog create(Map<String, ?> options, Time time) {
+        int firstOccurrences = ModuleOptions.intOption(options, FIRST_OCCURRENCES_CONFIG, DEFAULT_FIRST_OCCURRENCES);
+        double sampleRate = sampleRate(options);
+        int intervalMs = ModuleOptions.intOption(options, INTERVAL_MS_CONFIG, DEFAULT_INTERVAL_MS);
+        int maxUsernames = ModuleOptions.intOption(options, MAX_USERNAMES_CONFIG, DEFAULT_MAX_USERNAMES);
+        if (firstOccurrences < 0 || maxUsernames < 0 || intervalMs <= 0) {
+            throw new IllegalArgumentException("Options " + FIRST_OCCURRENCES_CONFIG + " and " + MAX_USERNAMES_CONFIG
+                    + " must not be negative, " + INTERVAL_MS_CONFIG + " must be positive");
+        }
+        return new AuthenticationFailureLog(time, firstOccurrences, sampleRate, intervalMs, maxUsernames);
+    }
+
+    private static double sampleRate(Map<String, ?> options) {
+        Object value = options.get(SAMPLE_RATE_CONFIG);
+        if (value == null) {
+            return DEFAULT_SAMPLE_RATE;
+        }
+        try {
+            double sampleRate = Double.parseDouble(value.toString().trim());
+            if (sampleRate >= 0.0 && sampleRate <= 1.0) {
+                return sampleRate;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Option " + SAMPLE_RATE_CONFIG + " must be a number between 0 and 1, but it is: " + value);
+    }
+
+    /**
+     * @return true if the options configure this log, so it can be kept on a reload
+     */
+    boolean isConfiguredBy(Map<String, ?> options) {
+        AuthenticationFailureLog configured = create(options, time);
+        return configured.firstOccurrences == firstOccurrences && configured.sampleRate == sampleRate
+                && configured.intervalMs == intervalMs && configured.maxUsernames == maxUsernames;
+    }
+
+    void record(Failure failure, String username) {
+        Window current = currentWindow();
+        int count = current.record(failure, username, maxUsernames);
+        if (count != -1 && count <= firstOccurrences) {
+            logFailure(failure, username, "");
+        } else if (sampleRate > 0.0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            current.notLogged.increment();
+            logFailure(failure, username, " (sampled)");
+        } else {
+            current.notLogged.increment();
+        }
+    }
+
+    private static void logFailure(Failure failure, String username, String suffix) {
+        if (failure == Failure.INVALID_USERNAME) {
+            log.info("Authentication failed: Invalid username {}{}", username, suffix);
+        } else {
+            log.info("Authentication failed: Invalid password for username {}{}", username, suffix);
+        }
+    }
+
+    /**
+     * Logs the summary of an elapsed interval without waiting for a later failure. The flush runs on a shared daemon
+     * thread until the log is closed or no longer referenced.
+     */
+    void scheduleSummaries() {
+        final WeakReference<AuthenticationFailureLog> reference = new WeakReference<>(this);
+        final AtomicReference<Future<?>> scheduled = new AtomicReference<>();
+        long periodMs = Math.min(intervalMs, FLUSH_PERIOD_MS);
+        scheduled.set(SUMMARY_EXECUTOR.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                AuthenticationFailureLog failureLog = reference.get();
+                if (failureLog == null) {
+                    scheduled.get().cancel(false);
+                } else {
+                    failureLog.flush();
+                }
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS));
+        summaries = scheduled.get();
+    }
+
+    /**
+     * Logs the summary of the current window if its interval elapsed.
+     */
+    void flush() {
+        currentWindow();
+    }
+
+    /**
+     * Stops the scheduled summaries and logs the summary of the current window, e.g. when the log is replaced on a reload.
+     */
+    void close() {
+        Future<?> scheduled = summaries;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        long nowMs = time.milliseconds();
+        window.getAndSet(new Window(nowMs)).logSummary(nowMs, intervalMs);
+    }
+
+    /**
+     * Starts a new window if the interval elapsed, the thread which starts it logs the summary of the previous one.
+     */
+    private Window currentWindow() {
+        Window current = window.get();
+        long nowMs = time.milliseconds();
+        if (nowMs - current.startMs < intervalMs) {
+            return current;
+        }
+        Window next = new Window(nowMs);
+        if (window.compareAndSet(current, next)) {
+            current.logSummary(nowMs, intervalMs);
+            return next;
+        }
+        return window.get();
+    }
+
+    private static final class Window {
+        final long startMs;
+        final StripedCounter[] failures = {new StripedCounter(), new StripedCounter()};
+        final StripedCounter notLogged = new StripedCounter();
+        final ConcurrentMap<String, AtomicInteger> usernames = new ConcurrentHashMap<>();
+
+        Window(long startMs) {
+            this.startMs = startMs;
+        }
+
+        /**
+         * @return the failures of the username in this window or -1 if the username is not counted
+         */
+        int record(Failure failure, String username, int maxUsernames) {
+            failures[failure.ordinal()].increment();
+            AtomicInteger count = usernames.get(username);
+            if (count == null) {
+                if (usernames.size() >= maxUsernames) {
+                    return -1;
+                }
+                AtomicInteger created = new AtomicInteger();
+                count = usernames.putIfAbsent(username, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            return count.incrementAndGet();
+        }
+
+        /**
+         * The failures of a window happened within its interval, a summary logged later reports at most the interval.
+         */
+        void logSummary(long nowMs, int intervalMs) {
+            long notLoggedCount = notLogged.sum();
+            if (notLoggedCount == 0) {
+                return;
+            }
+            List<Map.Entry<String, AtomicInteger>> counts = new ArrayList<>(usernames.entrySet());
+            Collections.sort(counts, new Comparator<Map.Entry<String, AtomicInteger>>() {
+                @Override
+                public int compare(Map.Entry<String, AtomicInteger> first, Map.Entry<String, AtomicInteger> second) {
+                    return Integer.compare(second.getValue().get(), first.getValue().get());
+                }
+            });
+            StringBuilder top = new StringBuilder();
+            for (Map.Entry<String, AtomicInteger> entry : counts.subList(0, Math.min(SUMMARY_USERNAMES, counts.size()))) {
+                top.append(top.length() == 0 ? "" : ", ").append(entry.getKey()).append('=').append(entry.getValue().get());
+            }
+            log.info("Authentication failed {} times in the last {} ms: {} invalid usernames, {} invalid passwords, {} not logged; "
+                            + "most failed usernames of {}: {}", failures[0].sum() + failures[1].sum(), Math.min(nowMs - startMs, intervalMs),
+                    failures[0].sum(), failures[1].sum(), notLoggedCount, usernames.size(), top);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor summaryExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "authentication-failure-log");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * @return the invalid usernames, invalid passwords and failures not logged individually of the current interval
+     */
+    long[] counts() {
+        Window current = window.get();
+        return new long[]{current.failures[0].sum(), current.failures[1].sum(), current.notLogged.sum()};
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.utils.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Authentication and reload metrics of one {@link PlainSaslServer.JaasContextProvider}.
+ * <p>
+ * The hot path only touches {@link StripedCounter}s and {@link LatencyHistogram}s; the values are exposed as
+ * {@link Measurable}s registered in a Kafka {@link Metrics} registry, so they are read by the reporters
+ * instead of being recorded through synchronized sensors.
+ */
+final class AuthenticatorMetrics {
+    private static final Logger log = LoggerFactory.getLogger(AuthenticatorMetrics.class);
+
+    static final String GROUP = "sasl-plain-authenticator-metrics";
+    static final String LISTENER_TAG = "listener";
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    enum Outcome {
+        SUCCESSFUL, INVALID_USERNAME, REJECTED_USERNAME, INVALID_PASSWORD, THROTTLED, SOURCE_UNAVAILABLE, FAILED
+    }
+
+    private final Time time;
+
+    private final StripedCounter successfulAuthentications = new StripedCounter();
+    private final StripedCounter failedAuthentications = new StripedCounter();
+    private final StripedCounter invalidUsernames = new StripedCounter();
+    private final StripedCounter rejectedUsernames = new StripedCounter();
+    private final StripedCounter invalidPasswords = new StripedCounter();
+    private final StripedCounter throttledAuthentications = new StripedCounter();
+    private final StripedCounter sourceUnavailable = new StripedCounter();
+    private final LatencyHistogram handshakeTime = new LatencyHistogram();
+
+    private final StripedCounter reloads = new StripedCounter();
+    private final StripedCounter reloadFailures = new StripedCounter();
+    private final StripedCounter rejectedReloads = new StripedCounter();
+    private final LatencyHistogram reloadTime = new LatencyHistogram();
+
+    private volatile long snapshotTimeMs;
+    private volatile int userCount;
+    private volatile long generation;
+    private volatile double warmUpTimeMs;
+
+    private Metrics metrics;
+    private final List<MetricName> metricNames = new ArrayList<>();
+
+    AuthenticatorMetrics(Time time) {
+        this.time = time;
+    }
+
+    long nanoseconds() {
+        return time.nanoseconds();
+    }
+
+    void recordAuthentication(Outcome outcome, long startNs) {
+        handshakeTime.record(time.nanoseconds() - startNs);
+        switch (outcome) {
+            case SUCCESSFUL:
+                successfulAuthentications.increment();
+                return;
+            case REJECTED_USERNAME:
+                rejectedUsernames.increment();
+                invalidUsernames.increment();
+                break;
+            case INVALID_USERNAME:
+                invalidUsernames.increment();
+                break;
+            case INVALID_PASSWORD:
+                invalidPasswords.increment();
+                break;
+            case THROTTLED:
+                throttledAuthentications.increment();
+                break;
+            case SOURCE_UNAVAILABLE:
+                sourceUnavailable.increment();
+                break;
+            default:
+                break;
+        }
+        failedAuthentications.increment();
+    }
+
+    void snapshotLoaded(CredentialSnapshot snapshot) {
+        snapshotTimeMs = time.milliseconds();
+        userCount = snapshot.userCount();
+        generation = snapshot.generation();
+    }
+
+    void recordReload(CredentialSnapshot snapshot, long startNs) {
+        reloadTime.record(time.nanoseconds() - startNs);
+        reloads.increment();
+        snapshotLoaded(snapshot);
+    }
+
+    /**
+     * @return the time of the warm-up in milliseconds
+     */
+    double recordWarmUp(long startNs) {
+        warmUpTimeMs = (time.nanoseconds() - startNs) / NANOS_PER_MILLI;
+        return warmUpTimeMs;
+    }
+
+    void recordReloadFailure(long startNs) {
+        reloadTime.record(time.nanoseconds() - startNs);
+        reloads.increment();
+        reloadFailures.increment();
+    }
+
+    void recordReloadRejected(long startNs) {
+        recordReloadFailure(startNs);
+        rejectedReloads.increment();
+    }
+
+    /**
+     * Registers the metrics tagged with the listener name. A name already registered by another provider
+     * is skipped, the values are still recorded.
+     */
+    synchronized void register(Metrics metrics, String listener) {
+        unregister();
+        this.metrics = metrics;
+        add("successful-authentication-total", "The total number of successful authentications", listener, counter(successfulAuthentications));
+        add("failed-authentication-total", "The total number of failed authentications", listener, counter(failedAuthentications));
+        add("invalid-username-total", "The total number of authentications failed with an unknown username", listener, counter(invalidUsernames));
+        add("rejected-username-total", "The total number of unknown usernames rejected by the username filter before a lookup",
+                listener, counter(rejectedUsernames));
+        add("invalid-password-total", "The total number of authentications failed with an invalid password", listener, counter(invalidPasswords));
+        add("throttled-authentication-total", "The total number of authentications rejected as a failure budget is exhausted",
+                listener, counter(throttledAuthentications));
+        add("source-unavailable-total", "The total number of authentications failed as the credential source timed out or failed",
+                listener, counter(sourceUnavailable));
+        add("handshake-time-avg-ns", "The average time of evaluating a SASL/PLAIN response in nanoseconds", listener, mean(handshakeTime, 1.0));
+        add("handshake-time-p50-ns", "The median time of evaluating a SASL/PLAIN response in nanoseconds", listener, percentile(handshakeTime, 0.5, 1.0));
+        add("handshake-time-p99-ns", "The 99th percentile time of evaluating a SASL/PLAIN response in nanoseconds", listener, percentile(handshakeTime, 0.99, 1.0));
+        add("handshake-time-max-ns", "The maximum time of evaluating a SASL/PLAIN response in nanoseconds", listener, max(handshakeTime, 1.0));
+        add("reload-total", "The total number of credential reloads", listener, counter(reloads));
+        add("reload-failure-total", "The total number of failed credential reloads", listener, counter(reloadFailures));
+        add("reload-rejected-total", "The total number of credential reloads rejected by the reload validation", listener, counter(rejectedReloads));
+        add("reload-time-avg-ms", "The average time of a credential reload in milliseconds", listener, mean(reloadTime, NANOS_PER_MILLI));
+        add("reload-time-max-ms", "The maximum time of a credential reload in milliseconds", listener, max(reloadTime, NANOS_PER_MILLI));
+        add("snapshot-age-ms", "The time since the active credentials were loaded in milliseconds", listener, new Measurable() {
+            @Override
+            public double measure(MetricConfig config, long now) {
+                return now - snapshotTimeMs;
+            }
+        });
+        add("user-count", "The number of users of the active credentials", listener, new Measurable() {
+            @Override
+            public double measure(MetricConfig config, long now) {
+                return userCount;
+            }
+        });
+        add("snapshot-generation", "The generation of the active credentials", listener, new Measurable() {
+            @Override
+            public double measure(MetricConfig config, long now) {
+                return generation;
+            }
+        });
+        add("warmup-time-ms", "The time of the eager warm-up of the credentials at startup in milliseconds", listener, new Measurable() {
+            @Override
+            public double measure(MetricConfig config, long now) {
+                return warmUpTimeMs;
+            }
+        });
+    }
+
+    synchronized void unregister() {
+        if (metrics != null) {
+            for (MetricName metricName : metricNames) {
+                metrics.removeMetric(metricName);
+            }
+            metricNames.clear();
+            metrics = null;
+        }
+    }
+
+    private void add(String name, String description, String listener, Measurable measurable) {
+        MetricName metricName = metrics.metricName(name, GROUP, description, Collections.singletonMap(LISTENER_TAG, listener));
+        try {
+            metrics.addMetric(metricName, measurable);
+            metricNames.add(metricName);
+        } catch (IllegalArgumentException e) {
+            log.warn("Metric {} is not registered: {}", metricName, e.getMessage());
+        }
+    }
+
+    private static Measurable counter(final StripedCounter counter) {
+        return new Measurable() {
+            @Override
+            public double measure(MetricConfig config, long now) {
+                return counter.sum();
+            }
+        };
+    }
+
+    private static Measurable mean(final LatencyHistogram histogram, final double divisor) {
+        return new Measurable() {
+            @Override
+            public double measure(MetricConfig config, long now) {
+                return histogram.mean() / divisor;
+            }
+        };
+    }
+
+    private static Measurable percentile(final LatencyHistogram histogram, final double quantile, final double divisor) {
+        return new Measurable() {
+            @Override
+            public double measure(MetricConfig config, long now) {
+                return histogram.percentile(quantile) / divisor;
+            }
+        };
+    }
+
+    private static Measurable max(final LatencyHistogram histogram, final double divisor) {
+        return new Measurable() {
+            @Override
+            public double measure(MetricConfig config, long now) {
+                return histogram.max() / divisor;
+            }
+        };
+    }
+}
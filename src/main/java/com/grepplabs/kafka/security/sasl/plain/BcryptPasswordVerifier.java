@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * bcrypt, <code>{BCRYPT}$2a$&lt;cost&gt;$&lt;salt and hash&gt;</code>. The cost is part of the stored
+ * credential and limited by the <code>bcrypt.max.cost</code> option. Only the revision <code>2a</code> is
+ * supported by jBCrypt, a <code>2b</code> or <code>2y</code> hash is rejected when it is loaded.
+ * <p>
+ * The hashing is delegated to jBCrypt (org.mindrot:jbcrypt), which is an optional dependency
+ * and must be added to the broker classpath when the scheme is used.
+ */
+final class BcryptPasswordVerifier implements PasswordVerifier {
+
+    static final String SCHEME = "BCRYPT";
+    static final String MAX_COST_CONFIG = "bcrypt.max.cost";
+    static final int DEFAULT_MAX_COST = 16;
+    static final int DEFAULT_COST = 10;
+    // the minimum cost accepted by jBCrypt
+    private static final int MIN_COST = 4;
+    private static final String ALPHABET = "./ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    private int maxCost = DEFAULT_MAX_COST;
+
+    @Override
+    public String scheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public void configure(Map<String, ?> options) {
+        maxCost = ModuleOptions.intOption(options, MAX_COST_CONFIG, DEFAULT_MAX_COST);
+    }
+
+    @Override
+    public Credential parse(String encoded) {
+        if (!isAvailable()) {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: jBCrypt (org.mindrot.jbcrypt.BCrypt) is not on the classpath");
+        }
+        // $2a$10$ followed by 22 characters of salt and 31 characters of hash
+        if (encoded.length() != 60 || encoded.charAt(0) != '$' || encoded.charAt(3) != '$' || encoded.charAt(6) != '$') {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: expected $2a$<cost>$<salt and hash>");
+        }
+        if (!encoded.startsWith("$2a$")) {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: revision " + encoded.substring(1, 3)
+                    + " is not supported, expected 2a");
+        }
+        for (int i = 7; i < encoded.length(); i++) {
+            if (ALPHABET.indexOf(encoded.charAt(i)) == -1) {
+                throw new IllegalArgumentException("Invalid " + SCHEME + " credential: salt and hash contain '"
+                        + encoded.charAt(i) + "' which is not a bcrypt base64 character");
+            }
+        }
+        int cost;
+        try {
+            cost = Integer.parseInt(encoded.substring(4, 6));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: cost " + encoded.substring(4, 6) + " is not a number");
+        }
+        if (cost < MIN_COST) {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: cost " + cost + " is less than " + MIN_COST);
+        }
+        if (cost > maxCost) {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: cost " + cost + " exceeds " + maxCost);
+        }
+        return new BcryptCredential(encoded);
+    }
+
+    static String encode(byte[] password, int cost) {
+        return "{" + SCHEME + "}" + BCrypt.hashpw(new String(password, StandardCharsets.UTF_8), BCrypt.gensalt(cost));
+    }
+
+    static boolean isAvailable() {
+        try {
+            Class.forName("org.mindrot.jbcrypt.BCrypt", false, BcryptPasswordVerifier.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static final class BcryptCredential implements Credential {
+        private final String hash;
+        private final byte[] hashBytes;
+
+        BcryptCredential(String hash) {
+            this.hash = hash;
+            this.hashBytes = hash.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String scheme() {
+            return SCHEME;
+        }
+
+        /**
+         * A hash which jBCrypt rejects fails the verification, so that the failure is handled like a wrong password.
+         */
+        @Override
+        public boolean verify(byte[] password, int offset, int length) {
+            String candidate;
+            try {
+                candidate = BCrypt.hashpw(new String(password, offset, length, StandardCharsets.UTF_8), hash);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            return MessageDigest.isEqual(hashBytes, candidate.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Immutable Bloom filter of the UTF-8 encoded usernames of a snapshot. A username which is not configured is
+ * rejected after a few probes of a bit array, without decoding it or looking it up, with a false positive
+ * rate of about 1%.
+ */
+final class BloomFilter {
+
+    // 10 bits per username and 5 probes give a false positive rate below 1%
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int PROBES = 5;
+
+    private final long[] bits;
+    private final int mask;
+
+    private BloomFilter(long[] bits) {
+        this.bits = bits;
+        this.mask = bits.length * 64 - 1;
+    }
+
+    static BloomFilter create(Collection<String> usernames) {
+        long size = Math.max(64L, (long) usernames.size() * BITS_PER_ENTRY);
+        int bitCount = (int) Math.min(1L << 30, Long.highestOneBit(size - 1) << 1);
+        BloomFilter filter = new BloomFilter(new long[bitCount / 64]);
+        for (String username : usernames) {
+            byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+            filter.add(bytes, 0, bytes.length);
+        }
+        return filter;
+    }
+
+    private void add(byte[] bytes, int offset, int length) {
+        long hash = hash(bytes, offset, length);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if the username is certainly not configured
+     */
+    boolean mightContain(byte[] bytes, int offset, int length) {
+        long hash = hash(bytes, offset, length);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int bitCount() {
+        return bits.length * 64;
+    }
+
+    /**
+     * 64 bit FNV-1a with a final avalanche, the halves are the two hashes of the probe sequence.
+     */
+    private static long hash(byte[] bytes, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.utils.Time;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Credentials of a {@link CredentialSource} cached in process, so that an authentication almost never waits for the source:
+ * <ul>
+ * <li>an entry, also of an unknown user, is used for <code>credential.source.cache.ttl.ms</code> (default 60000)</li>
+ * <li>an entry used within <code>credential.source.refresh.ahead.ms</code> (default 10000) before it expires is
+ * reloaded in the background, so the credentials of active users do not expire</li>
+ * <li>concurrent misses of a username wait for a single request to the source</li>
+ * <li>a miss waits at most <code>credential.source.timeout.ms</code> (default 2000) for the source, so a slow source
+ * does not stall the network thread of the broker; the request goes on in the background and its result is cached</li>
+ * <li>if the source fails, an expired entry is used up to <code>credential.source.stale.ms</code> (default 3600000)
+ * after it expired</li>
+ * <li>at most <code>credential.source.cache.max.entries</code> (default 100000) users are cached; a full cache evicts
+ * down to 90% of its capacity at once, unusable entries first, then unknown users, and an unknown user never
+ * displaces a known one</li>
+ * </ul>
+ * The requests to the source run on a shared pool of {@value #LOADER_THREADS} daemon threads, a request which can not be
+ * queued fails at once. The cache belongs to a {@link CredentialSnapshot}, so a reload of the JAAS configuration starts
+ * with an empty cache. If a user can not be loaded and no expired credential can be used, the lookup throws a
+ * {@link CredentialSourceException}. A reloaded credential which differs from the cached one, or the eviction of
+ * known users, notifies the snapshot to invalidate its verification cache.
+ */
+final class CachingCredentialStore implements CredentialStore {
+    private static final Logger log = LoggerFactory.getLogger(CachingCredentialStore.class);
+
+    static final String CREDENTIAL_SOURCE_CLASS_CONFIG = "credential.source.class";
+    static final String TTL_MS_CONFIG = "credential.source.cache.ttl.ms";
+    static final String REFRESH_AHEAD_MS_CONFIG = "credential.source.refresh.ahead.ms";
+    static final String STALE_MS_CONFIG = "credential.source.stale.ms";
+    static final String MAX_ENTRIES_CONFIG = "credential.source.cache.max.entries";
+    static final String TIMEOUT_MS_CONFIG = "credential.source.timeout.ms";
+    static final int DEFAULT_TTL_MS = 60000;
+    static final int DEFAULT_REFRESH_AHEAD_MS = 10000;
+    static final int DEFAULT_STALE_MS = 3600000;
+    static final int DEFAULT_MAX_ENTRIES = 100000;
+    static final int DEFAULT_TIMEOUT_MS = 2000;
+    static final int LOADER_THREADS = 8;
+    private static final int LOADER_QUEUE_SIZE = 1024;
+
+    private static final Executor LOADER = loader();
+
+    private final CredentialSource source;
+    private final PasswordVerifiers verifiers;
+    private final Time time;
+    private final Executor loadExecutor;
+    private final Executor refreshExecutor;
+    // invalidates the verification cache of the snapshot
+    private final Runnable credentialChanged;
+    private final long ttlNs;
+    private final long refreshAheadNs;
+    private final long staleNs;
+    private final long timeoutNs;
+    private final int maxEntries;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, FutureTask<Entry>> loading = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    CachingCredentialStore(CredentialSource source, PasswordVerifiers verifiers, Map<String, ?> options, Time time,
+                           Executor loadExecutor, Executor refreshExecutor, Runnable credentialChanged) {
+        this.source = source;
+        this.verifiers = verifiers;
+        this.time = time;
+        this.loadExecutor = loadExecutor;
+        this.refreshExecutor = refreshExecutor;
+        this.credentialChanged = credentialChanged;
+        this.ttlNs = TimeUnit.MILLISECONDS.toNanos(ModuleOptions.intOption(options, TTL_MS_CONFIG, DEFAULT_TTL_MS));
+        this.refreshAheadNs = TimeUnit.MILLISECONDS.toNanos(ModuleOptions.intOption(options, REFRESH_AHEAD_MS_CONFIG, DEFAULT_REFRESH_AHEAD_MS));
+        this.staleNs = TimeUnit.MILLISECONDS.toNanos(ModuleOptions.intOption(options, STALE_MS_CONFIG, DEFAULT_STALE_MS));
+        this.timeoutNs = TimeUnit.MILLISECONDS.toNanos(ModuleOptions.intOption(options, TIMEOUT_MS_CONFIG, DEFAULT_TIMEOUT_MS));
+        this.maxEntries = ModuleOptions.intOption(options, MAX_ENTRIES_CONFIG, DEFAULT_MAX_ENTRIES);
+        if (ttlNs <= 0 || refreshAheadNs < 0 || staleNs < 0 || timeoutNs <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("Options " + TTL_MS_CONFIG + ", " + TIMEOUT_MS_CONFIG + " and " + MAX_ENTRIES_CONFIG
+                    + " must be positive, " + REFRESH_AHEAD_MS_CONFIG + " and " + STALE_MS_CONFIG + " must not be negative");
+        }
+    }
+
+    /**
+     * Creates the configured source, loaded and refreshed on the shared loader threads.
+     */
+    static CachingCredentialStore create(Map<String, ?> options, PasswordVerifiers verifiers, Runnable credentialChanged) {
+        String className = options.get(CREDENTIAL_SOURCE_CLASS_CONFIG).toString().trim();
+        CredentialSource source;
+        try {
+            source = Utils.newInstance(className, CredentialSource.class);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Credential source class " + className + " not found", e);
+        }
+        source.configure(options);
+        return new CachingCredentialStore(source, verifiers, options, Time.SYSTEM, LOADER, LOADER, credentialChanged);
+    }
+
+    @Override
+    public Credential credential(byte[] username, int offset, int length) {
+        return credential(new String(username, offset, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws CredentialSourceException if the user can not be loaded and no expired credential can be used
+     */
+    Credential credential(String username) {
+        long nowNs = time.nanoseconds();
+        Entry entry = entries.get(username);
+        if (entry != null) {
+            long ageNs = nowNs - entry.loadedNs;
+            if (ageNs < ttlNs) {
+                if (ageNs >= ttlNs - refreshAheadNs) {
+                    refresh(username, entry);
+                }
+                return entry.credential;
+            }
+        }
+        try {
+            return load(username).credential;
+        } catch (TimeoutException e) {
+            if (entry != null && nowNs - entry.loadedNs < ttlNs + staleNs) {
+                return entry.credential;
+            }
+            log.warn("Credential of username {} was not loaded within {} ms", username, TimeUnit.NANOSECONDS.toMillis(timeoutNs));
+            throw new CredentialSourceException("Credential source timed out", e);
+        } catch (Exception e) {
+            if (entry != null && nowNs - entry.loadedNs < ttlNs + staleNs) {
+                log.debug("Credential of username {} can not be loaded, the expired credential is used: {}", username, e.toString());
+                return entry.credential;
+            }
+            log.warn("Credential of username {} can not be loaded: {}", username, e.toString());
+            throw new CredentialSourceException("Credential source failed", e);
+        }
+    }
+
+    /**
+     * Only a fresh entry of an unknown user rejects a username without calling the source.
+     */
+    @Override
+    public boolean mightContain(byte[] username, int offset, int length) {
+        Entry entry = entries.get(new String(username, offset, length, StandardCharsets.UTF_8));
+        return entry == null || entry.credential != null || time.nanoseconds() - entry.loadedNs >= ttlNs - refreshAheadNs;
+    }
+
+    /**
+     * @return the number of cached users
+     */
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The credentials are loaded on demand, a lookup would request the source.
+     */
+    @Override
+    public int warmUp() {
+        return 0;
+    }
+
+    private void refresh(String username, Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            start(username, refreshExecutor);
+        } catch (RejectedExecutionException e) {
+            // the next use retries, until the entry expires
+            entry.refreshing.set(false);
+            log.debug("Credential of username {} can not be refreshed: {}", username, e.toString());
+        }
+    }
+
+    /**
+     * Loads the credential from the source, waiting at most for the source timeout.
+     */
+    private Entry load(String username) throws Exception {
+        try {
+            return start(username, loadExecutor).get(timeoutNs, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Starts a request of the username to the source, or returns the running one, so that concurrent loads
+     * of a username share a single request.
+     */
+    private FutureTask<Entry> start(final String username, Executor executor) {
+        FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+            @Override
+            public Entry call() throws Exception {
+                try {
+                    String configured = source.credential(username);
+                    Credential credential = parse(username, configured);
+                    Entry entry = new Entry(credential, credential == null ? null : configured, time.nanoseconds());
+                    put(username, entry);
+                    return entry;
+                } catch (Exception e) {
+                    // the next use of a cached entry retries the refresh, until the entry expires
+                    Entry cached = entries.get(username);
+                    if (cached != null) {
+                        cached.refreshing.set(false);
+                    }
+                    log.debug("Credential of username {} can not be requested: {}", username, e.toString());
+                    throw e;
+                }
+            }
+        }) {
+            @Override
+            protected void done() {
+                loading.remove(username, this);
+            }
+        };
+        FutureTask<Entry> running = loading.putIfAbsent(username, task);
+        if (running != null) {
+            return running;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            loading.remove(username, task);
+            throw e;
+        }
+        return task;
+    }
+
+    private Credential parse(String username, String configured) {
+        if (configured == null || configured.isEmpty()) {
+            return null;
+        }
+        try {
+            return verifiers.parse(configured);
+        } catch (IllegalArgumentException e) {
+            log.warn("Credential of username {} is ignored: {}", username, e.getMessage());
+            return null;
+        }
+    }
+
+    private void put(String username, Entry entry) {
+        if (entries.size() >= maxEntries && !entries.containsKey(username)) {
+            evict(entry.loadedNs, entry.credential != null);
+            if (entry.credential == null && entries.size() >= maxEntries) {
+                // an unknown user does not displace a known one
+                return;
+            }
+        }
+        Entry previous = entries.put(username, entry);
+        if (previous != null && previous.credential != null && !previous.configured.equals(entry.configured)) {
+            // the verification results of the previous credential are keyed by username and password only
+            credentialChanged.run();
+        }
+    }
+
+    /**
+     * Removes the entries which can not be used any more, then unknown users and, for a known user, arbitrary
+     * known users, until the cache is down to 90% of its capacity. Concurrent puts do not wait for a running eviction.
+     * As a later change of an evicted credential can not be detected, the eviction of a known user invalidates
+     * the verification cache.
+     */
+    private void evict(long nowNs, boolean known) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        boolean knownEvicted = false;
+        try {
+            int target = Math.min(maxEntries - 1, maxEntries - maxEntries / 10);
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (nowNs - entry.loadedNs >= ttlNs + staleNs) {
+                    iterator.remove();
+                    knownEvicted |= entry.credential != null;
+                }
+            }
+            iterator = entries.values().iterator();
+            while (entries.size() > target && iterator.hasNext()) {
+                if (iterator.next().credential == null) {
+                    iterator.remove();
+                }
+            }
+            iterator = entries.values().iterator();
+            while (known && entries.size() > target && iterator.hasNext()) {
+                knownEvicted |= iterator.next().credential != null;
+                iterator.remove();
+            }
+        } finally {
+            evicting.set(false);
+        }
+        if (knownEvicted) {
+            credentialChanged.run();
+        }
+    }
+
+    private static Executor loader() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(LOADER_THREADS, LOADER_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(LOADER_QUEUE_SIZE), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "credential-source-loader-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class Entry {
+        // null if the user is not known
+        final Credential credential;
+        // the credential as returned by the source, to detect a change
+        final String configured;
+        final long loadedNs;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Credential credential, String configured, long loadedNs) {
+            this.credential = credential;
+            this.configured = configured;
+            this.loadedNs = loadedNs;
+        }
+    }
+}
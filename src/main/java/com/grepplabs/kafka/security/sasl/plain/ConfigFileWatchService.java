@@ -21,18 +21,75 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.security.auth.login.Configuration;
-import java.util.Collections;
-import java.util.Map;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class ConfigFileWatchService implements ConfigFileChangeListener {
+/**
+ * Reloads the JAAS configuration file on a change and notifies the registered listeners.
+ * <p>
+ * The file is parsed by {@link JaasFileConfiguration} once per change without refreshing the JVM wide
+ * {@link Configuration}, so no global lock is taken. Only if the installed configuration is not the JDK
+ * ConfigFile of that file, e.g. a custom login configuration provider, the installed configuration is refreshed.
+ * The parsed file is shared by the listeners only while a change is fanned out and dropped afterwards, so the user
+ * options of the file are retained only by the snapshots which keep them.
+ * <p>
+ * The listeners are weakly referenced from a copy-on-write array which is replaced by compare-and-set,
+ * so registering a listener never waits for a running notification. A change is fanned out to the
+ * listeners on the reload executor without holding a lock; listeners are shared per context, so the
+ * number of reloads depends on the distinct contexts and not on the open connections.
+ * <p>
+ * Compiled credential files referenced by the JAAS configuration are watched as well, a change of one of them
+ * is handled like a change of the JAAS configuration file. The shard files of credential directories are watched by a
+ * {@link ShardDirectoryWatcher}, a change of shards is passed to the listeners which are {@link CredentialShardListener}s,
+ * so they reload only the changed shards.
+ */
+public class ConfigFileWatchService implements ConfigFileChangeListener, CredentialShardListener {
     private static final Logger log = LoggerFactory.getLogger(ConfigFileWatchService.class);
 
+    private static final ListenerReference[] NO_LISTENERS = new ListenerReference[0];
+
+    private static final List<String> JDK_CONFIG_FILE_CLASSES = Arrays.asList(
+            "sun.security.provider.ConfigFile", "com.sun.security.auth.login.ConfigFile");
+
     private final AtomicReference<Thread> watcherThread = new AtomicReference<>();
 
-    private final Map<ConfigFileChangeListener, Boolean> listeners = Collections.synchronizedMap(new WeakHashMap<ConfigFileChangeListener, Boolean>());
+    private final ConcurrentMap<Path, Thread> fileWatcherThreads = new ConcurrentHashMap<>();
+
+    private final AtomicReference<ListenerReference[]> listeners = new AtomicReference<>(NO_LISTENERS);
+
+    private final Executor reloadExecutor;
+
+    // the configuration of the change being notified, dropped when the last listener returned
+    private final AtomicReference<JaasFileConfiguration> jaasConfiguration = new AtomicReference<>();
+
+    // incremented on every change of the configuration, before the listeners are notified
+    private final AtomicLong configurationVersion = new AtomicLong();
+
+    public ConfigFileWatchService() {
+        this(reloadExecutor());
+    }
+
+    ConfigFileWatchService(Executor reloadExecutor) {
+        this.reloadExecutor = reloadExecutor;
+    }
 
     public void startWatcher() {
         Thread thread = watcherThread.get();
@@ -56,43 +113,300 @@ public class ConfigFileWatchService implements ConfigFileChangeListener {
                 thread.interrupt();
             }
         }
+        for (Path file : fileWatcherThreads.keySet()) {
+            Thread fileWatcherThread = fileWatcherThreads.remove(file);
+            if (fileWatcherThread != null) {
+                fileWatcherThread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Watches a further file, e.g. a compiled credential file. A change of it reloads the listeners.
+     */
+    void watchFile(Path file) {
+        Path watched = file.toAbsolutePath().normalize();
+        if (fileWatcherThreads.containsKey(watched)) {
+            return;
+        }
+        Thread thread = new Thread(new ConfigFileWatcher(watched.toString(), this), "credential-file-watcher");
+        thread.setDaemon(true);
+        if (fileWatcherThreads.putIfAbsent(watched, thread) == null) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Watches a directory of credential shards. A change of shards is passed to the shard listeners.
+     */
+    void watchDirectory(Path directory) {
+        Path watched = directory.toAbsolutePath().normalize();
+        if (fileWatcherThreads.containsKey(watched)) {
+            return;
+        }
+        Thread thread = new Thread(new ShardDirectoryWatcher(watched, this), "credential-directory-watcher");
+        thread.setDaemon(true);
+        if (fileWatcherThreads.putIfAbsent(watched, thread) == null) {
+            thread.start();
+        }
+    }
+
+    int getFileWatchersCount() {
+        return fileWatcherThreads.size();
     }
 
     @Override
     public void configFileChanged() {
+        Object event = FlightRecorderEvents.INSTANCE.beginConfigurationChange();
+        long startNs = event != null ? System.nanoTime() : 0L;
         try {
             log.info("Auth configuration will be refreshed");
 
-            // refresh configuration to reload the data
-            synchronized (Configuration.class) {
+            JaasFileConfiguration configuration = loadJaasConfiguration();
+            if (configuration == null) {
+                // the installed configuration is not the JAAS file, refresh it for JaasContext.load
                 Configuration.getConfiguration().refresh();
             }
-            notifyChangeListeners();
+            jaasConfiguration.set(configuration);
+            configurationVersion.incrementAndGet();
+            notifyChangeListenersAsync(configuration, event, startNs, event != null ? System.nanoTime() : 0L);
         } catch (Throwable t) {
             log.warn("Auth configuration change failed {}", t.toString());
         }
     }
 
+    /**
+     * A listener registered after a change is notified does not miss it, if it compares the version read
+     * before it loaded its configuration with the version after its registration.
+     *
+     * @return the number of changes of the configuration
+     */
+    long configurationVersion() {
+        return configurationVersion.get();
+    }
+
+    /**
+     * @return the JAAS configuration file of the change being notified, otherwise the file is parsed again;
+     * null if the configuration is not read from a file
+     * @throws IOException if the file can not be read or is invalid
+     */
+    JaasFileConfiguration jaasConfiguration() throws IOException {
+        JaasFileConfiguration configuration = jaasConfiguration.get();
+        return configuration != null ? configuration : loadJaasConfiguration();
+    }
+
+    /**
+     * Parses the JAAS configuration file set by {@value JaasUtils#JAVA_LOGIN_CONFIG_PARAM} if it is the source
+     * of the installed configuration. The parsed configuration is not retained.
+     *
+     * @return the loaded configuration or null if the configuration is not read from a file
+     * @throws IOException if the file can not be read or is invalid
+     */
+    JaasFileConfiguration loadJaasConfiguration() throws IOException {
+        Path file = jaasConfigFile();
+        return file == null ? null : JaasFileConfiguration.load(file);
+    }
+
+    /**
+     * @return the JAAS configuration file or null if the installed configuration is not the JDK ConfigFile
+     * reading only that file
+     */
+    static Path jaasConfigFile() {
+        String jaasConfigFile = System.getProperty(JaasUtils.JAVA_LOGIN_CONFIG_PARAM);
+        if (jaasConfigFile == null || jaasConfigFile.isEmpty()) {
+            return null;
+        }
+        if (jaasConfigFile.startsWith("=")) {
+            // "==file" overrides the files of the login.config.url.n security properties
+            jaasConfigFile = jaasConfigFile.substring(1);
+        } else if (Security.getProperty("login.config.url.1") != null) {
+            return null;
+        }
+        try {
+            String configurationClass = Configuration.getConfiguration().getClass().getName();
+            if (!JDK_CONFIG_FILE_CLASSES.contains(configurationClass)) {
+                log.debug("Installed configuration {} is not read from the file {}", configurationClass, jaasConfigFile);
+                return null;
+            }
+            if (jaasConfigFile.startsWith("file:")) {
+                return Paths.get(new URI(jaasConfigFile));
+            }
+            return jaasConfigFile.contains("://") ? null : Paths.get(jaasConfigFile);
+        } catch (SecurityException | URISyntaxException | IllegalArgumentException e) {
+            log.debug("JAAS configuration file {} is not used: {}", jaasConfigFile, e.toString());
+            return null;
+        }
+    }
+
     public void addListener(ConfigFileChangeListener listener) {
-        this.listeners.put(listener, Boolean.TRUE);
+        while (true) {
+            ListenerReference[] current = listeners.get();
+            ListenerReference[] updated = new ListenerReference[current.length + 1];
+            int size = 0;
+            for (ListenerReference reference : current) {
+                ConfigFileChangeListener registered = reference.get();
+                if (registered == listener) {
+                    return;
+                }
+                if (registered != null) {
+                    updated[size++] = reference;
+                }
+            }
+            updated[size++] = new ListenerReference(listener);
+            if (listeners.compareAndSet(current, Arrays.copyOf(updated, size))) {
+                return;
+            }
+        }
     }
 
     public void removeListener(ConfigFileChangeListener listener) {
-        this.listeners.remove(listener);
+        while (true) {
+            ListenerReference[] current = listeners.get();
+            ListenerReference[] updated = new ListenerReference[current.length];
+            int size = 0;
+            for (ListenerReference reference : current) {
+                ConfigFileChangeListener registered = reference.get();
+                if (registered != null && registered != listener) {
+                    updated[size++] = reference;
+                }
+            }
+            if (size == current.length || listeners.compareAndSet(current, Arrays.copyOf(updated, size))) {
+                return;
+            }
+        }
     }
 
-    /** See also {@link java.util.Collections#synchronizedMap}. */
-    private void notifyChangeListeners() {
-        Set<ConfigFileChangeListener> keys = listeners.keySet();
-        synchronized (listeners) {
-            log.info("Notify {} listeners ", keys.size());
-            for (ConfigFileChangeListener key : keys) {
-                key.configFileChanged();
+    /**
+     * Notifies the listeners on the calling thread.
+     */
+    void notifyChangeListeners() {
+        ListenerReference[] current = listeners.get();
+        log.debug("Notify {} listeners", current.length);
+        for (ListenerReference reference : current) {
+            ConfigFileChangeListener listener = reference.get();
+            if (listener != null) {
+                notifyChangeListener(listener);
             }
         }
     }
 
+    /**
+     * Notifies each listener in a task of the reload executor, so a slow listener does not delay the others.
+     */
+    void notifyChangeListenersAsync() {
+        notifyChangeListenersAsync(null, null, 0L, 0L);
+    }
+
+    /**
+     * Notifies the listeners in tasks of the reload executor. When the last listener returned, the configuration
+     * of the change is dropped and the configuration change event, if it is recorded, is committed.
+     */
+    private void notifyChangeListenersAsync(final JaasFileConfiguration configuration, final Object event,
+                                            final long startNs, final long parsedNs) {
+        ListenerReference[] current = listeners.get();
+        log.debug("Notify {} listeners", current.length);
+        final AtomicInteger pending = new AtomicInteger(current.length);
+        for (ListenerReference reference : current) {
+            final ConfigFileChangeListener listener = reference.get();
+            if (listener != null) {
+                reloadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            notifyChangeListener(listener);
+                        } finally {
+                            notified(pending, configuration, event, startNs, parsedNs);
+                        }
+                    }
+                });
+            } else {
+                notified(pending, configuration, event, startNs, parsedNs);
+            }
+        }
+        if (current.length == 0) {
+            notified(configuration, event, startNs, parsedNs);
+        }
+    }
+
+    private void notified(AtomicInteger pending, JaasFileConfiguration configuration, Object event, long startNs, long parsedNs) {
+        if (pending.decrementAndGet() == 0) {
+            notified(configuration, event, startNs, parsedNs);
+        }
+    }
+
+    private void notified(JaasFileConfiguration configuration, Object event, long startNs, long parsedNs) {
+        // a newer change keeps its configuration
+        if (configuration != null) {
+            jaasConfiguration.compareAndSet(configuration, null);
+        }
+        commitConfigurationChange(event, startNs, parsedNs);
+    }
+
+    private void commitConfigurationChange(Object event, long startNs, long parsedNs) {
+        if (event != null) {
+            FlightRecorderEvents.INSTANCE.commitConfigurationChange(event,
+                    System.getProperty(JaasUtils.JAVA_LOGIN_CONFIG_PARAM), getListenersCount(), startNs, parsedNs);
+        }
+    }
+
+    @Override
+    public void credentialShardsChanged(final Path directory, final Set<Path> files) {
+        log.info("Credential shards {} will be reloaded", files);
+        for (ListenerReference reference : listeners.get()) {
+            final ConfigFileChangeListener listener = reference.get();
+            if (listener instanceof CredentialShardListener) {
+                reloadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            ((CredentialShardListener) listener).credentialShardsChanged(directory, files);
+                        } catch (Throwable t) {
+                            log.warn("Listener {} failed on credential shard change {}", listener, t.toString());
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    private static void notifyChangeListener(ConfigFileChangeListener listener) {
+        try {
+            listener.configFileChanged();
+        } catch (Throwable t) {
+            log.warn("Listener {} failed on configuration change {}", listener, t.toString());
+        }
+    }
+
     int getListenersCount() {
-        return listeners.size();
+        int count = 0;
+        for (ListenerReference reference : listeners.get()) {
+            if (reference.get() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Executor reloadExecutor() {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "jaas-config-reload-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class ListenerReference extends WeakReference<ConfigFileChangeListener> {
+        ListenerReference(ConfigFileChangeListener listener) {
+            super(listener);
+        }
     }
 }
@@ -28,38 +28,111 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 
+/**
+ * Watches the JAAS configuration file and notifies the listener when the content of the file changed.
+ * <p>
+ * The watcher follows the symbolic links of the file path and watches the directory of each link and of the
+ * real file, so an atomic swap of a Kubernetes ConfigMap or Secret, which replaces the <code>..data</code> link,
+ * is seen as a change of the file. The watched directories are registered again after a change, e.g. when a
+ * directory was replaced. Events of other files are ignored without accessing the file. The watcher blocks
+ * until an event arrives and does not wake up while idle.
+ * <p>
+ * A burst of events, as produced by editors and configuration management tools, is coalesced into one check
+ * after a quiet period without further events, configured with the system property {@value #QUIET_PERIOD_MS_PROP}
+ * (default {@value #DEFAULT_QUIET_PERIOD_MS} ms). The listener is only notified if the SHA-256 checksum of the
+ * content differs from the last checked content.
+ */
 public class ConfigFileWatcher implements Runnable {
 
     private static final Logger log = LoggerFactory.getLogger(ConfigFileWatcher.class);
 
+    static final String QUIET_PERIOD_MS_PROP = "kafka.sasl.plain.config.file.quiet.period.ms";
+    static final long DEFAULT_QUIET_PERIOD_MS = 100L;
+
+    // reasons of the wake-up events
+    static final String FILE_EVENT_WAKE_UP = "file-event";
+    static final String QUIET_PERIOD_WAKE_UP = "quiet-period";
+
+    private static final int MAX_SYMBOLIC_LINKS = 40;
+    // interval of retries to register a missing directory
+    private static final long RETRY_MS = 1000L;
+
     private final ConfigFileChangeListener listener;
     private final File file;
+    private final long quietPeriodMs;
+
+    private final Map<Path, Registration> registrations = new HashMap<>();
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private Set<Path> watchedPaths = new HashSet<>();
 
     private volatile boolean stop;
 
     ConfigFileWatcher(final String filename, final ConfigFileChangeListener listener) {
+        this(filename, listener, Long.getLong(QUIET_PERIOD_MS_PROP, DEFAULT_QUIET_PERIOD_MS));
+    }
+
+    ConfigFileWatcher(final String filename, final ConfigFileChangeListener listener, final long quietPeriodMs) {
         this.listener = listener;
         this.file = new File(filename);
+        this.quietPeriodMs = Math.max(0L, quietPeriodMs);
     }
 
     @Override
     public void run() {
-        final Path path = file.toPath().getParent();
         log.info("Starting watching file {}", file);
         try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
-            path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            register(watchService);
 
-            long lastModifiedTime = getLastModifiedTime();
+            byte[] checksum = checksum();
+            // deadline of the pending check, 0 if no check is pending
+            long checkDeadlineNs = 0L;
 
             while (!stop) {
                 WatchKey key;
                 try {
-                    key = watchService.poll(500, TimeUnit.MILLISECONDS);
+                    if (checkDeadlineNs != 0L) {
+                        long timeoutMs = TimeUnit.NANOSECONDS.toMillis(checkDeadlineNs - System.nanoTime());
+                        if (timeoutMs <= 0L) {
+                            Object event = FlightRecorderEvents.INSTANCE.beginWatcherWakeUp();
+                            checkDeadlineNs = 0L;
+                            register(watchService);
+                            byte[] newChecksum = checksum();
+                            boolean changed = newChecksum != null && !Arrays.equals(checksum, newChecksum);
+                            if (changed) {
+                                checksum = newChecksum;
+                                listener.configFileChanged();
+                            } else {
+                                log.debug("Content of file {} is unchanged", file);
+                            }
+                            if (event != null) {
+                                FlightRecorderEvents.INSTANCE.commitWatcherWakeUp(event, file.toString(), QUIET_PERIOD_WAKE_UP, 0, 0, changed);
+                            }
+                            continue;
+                        }
+                        key = watchService.poll(timeoutMs, TimeUnit.MILLISECONDS);
+                    } else if (registrations.isEmpty()) {
+                        key = watchService.poll(RETRY_MS, TimeUnit.MILLISECONDS);
+                        if (key == null && register(watchService)) {
+                            checkDeadlineNs = System.nanoTime();
+                        }
+                    } else {
+                        key = watchService.take();
+                    }
                 } catch (InterruptedException e) {
                     return;
                 }
@@ -67,27 +140,31 @@ public class ConfigFileWatcher implements Runnable {
                     continue;
                 }
 
+                Object event = FlightRecorderEvents.INSTANCE.beginWatcherWakeUp();
+                int events = 0;
+                int ignoredEvents = 0;
+                final Path directory = directories.get(key);
                 for (WatchEvent<?> watchEvent : key.pollEvents()) {
                     final WatchEvent.Kind<?> kind = watchEvent.kind();
-                    if (kind == StandardWatchEventKinds.OVERFLOW) {
+                    if (kind != StandardWatchEventKinds.OVERFLOW
+                            && (directory == null || !watchedPaths.contains(directory.resolve((Path) watchEvent.context())))) {
+                        ignoredEvents++;
                         continue;
                     }
-                    @SuppressWarnings("unchecked") final WatchEvent<Path> watchEventPath = (WatchEvent<Path>) watchEvent;
-                    final Path filename = watchEventPath.context();
-                    log.debug("Change {} on file {}", kind, filename);
-
-                    long newLastModifiedTime = getLastModifiedTime();
-                    if (lastModifiedTime != newLastModifiedTime && newLastModifiedTime != 0L) {
-
-                        lastModifiedTime = newLastModifiedTime;
-
-                        listener.configFileChanged();
-                    }
+                    log.debug("Change {} on file {}", kind, watchEvent.context());
+                    events++;
+                    // every relevant event extends the quiet period
+                    checkDeadlineNs = deadline();
+                }
+                if (event != null) {
+                    FlightRecorderEvents.INSTANCE.commitWatcherWakeUp(event, file.toString(), FILE_EVENT_WAKE_UP, events, ignoredEvents, false);
                 }
 
                 final boolean valid = key.reset();
                 if (!valid) {
-                    break;
+                    log.debug("Directory {} is no longer watched", directory);
+                    unregister(directory);
+                    checkDeadlineNs = deadline();
                 }
             }
         } catch (Throwable t) {
@@ -97,18 +174,142 @@ public class ConfigFileWatcher implements Runnable {
         }
     }
 
-    private long getLastModifiedTime() {
-        if (file.canRead()) {
+    private long deadline() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(quietPeriodMs);
+        return deadline == 0L ? 1L : deadline;
+    }
+
+    /**
+     * Registers the directories of the current symbolic link chain and cancels the registrations
+     * of directories which are no longer part of it or were replaced.
+     *
+     * @return true if at least one directory is registered
+     */
+    private boolean register(WatchService watchService) {
+        watchedPaths = symbolicLinkChain(file.toPath());
+        Set<Path> required = new HashSet<>();
+        for (Path path : watchedPaths) {
+            if (path.getParent() != null) {
+                required.add(path.getParent());
+            }
+        }
+        Iterator<Map.Entry<Path, Registration>> iterator = registrations.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Registration> entry = iterator.next();
+            Registration registration = entry.getValue();
+            if (!required.contains(entry.getKey()) || !registration.key.isValid()
+                    || !registration.fileKey.equals(fileKey(entry.getKey()))) {
+                registration.key.cancel();
+                directories.remove(registration.key);
+                iterator.remove();
+            }
+        }
+        for (Path directory : required) {
+            if (registrations.containsKey(directory)) {
+                continue;
+            }
+            Object fileKey = fileKey(directory);
+            if (fileKey == null) {
+                log.debug("Directory {} does not exist", directory);
+                continue;
+            }
+            try {
+                WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+                registrations.put(directory, new Registration(key, fileKey));
+                directories.put(key, directory);
+                log.debug("Watching directory {}", directory);
+            } catch (IOException e) {
+                log.warn("Directory {} can not be watched: {}", directory, e.toString());
+            }
+        }
+        return !registrations.isEmpty();
+    }
+
+    private void unregister(Path directory) {
+        Registration registration = directory != null ? registrations.remove(directory) : null;
+        if (registration != null) {
+            directories.remove(registration.key);
+        }
+    }
+
+    /**
+     * @return the absolute path of the file, every symbolic link on the way to the real file and the real file
+     */
+    static Set<Path> symbolicLinkChain(Path file) {
+        Set<Path> paths = new LinkedHashSet<>();
+        Path current = file.toAbsolutePath().normalize();
+        for (int i = 0; i < MAX_SYMBOLIC_LINKS && current != null; i++) {
+            paths.add(current);
+            Path next = null;
+            Path prefix = current.getRoot();
+            for (Path name : current) {
+                prefix = prefix.resolve(name);
+                if (Files.isSymbolicLink(prefix)) {
+                    paths.add(prefix);
+                    try {
+                        Path target = prefix.getParent().resolve(Files.readSymbolicLink(prefix));
+                        next = target.resolve(prefix.relativize(current)).normalize();
+                    } catch (IOException e) {
+                        log.debug("Symbolic link {} can not be read: {}", prefix, e.toString());
+                    }
+                    break;
+                }
+            }
+            current = next;
+        }
+        return paths;
+    }
+
+    private static Object fileKey(Path directory) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class);
+            if (!attributes.isDirectory()) {
+                return null;
+            }
+            // fileKey is null on file systems without inodes, the path is the best available identity
+            return attributes.fileKey() != null ? attributes.fileKey() : directory;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the SHA-256 checksum of the file content or null if the file can not be read
+     */
+    private byte[] checksum() {
+        return checksum(file.toPath());
+    }
+
+    /**
+     * @return the SHA-256 checksum of the file content or null if the file can not be read
+     */
+    static byte[] checksum(Path file) {
+        if (Files.isReadable(file)) {
             try {
-                return Files.getLastModifiedTime(file.toPath()).toMillis();
+                return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file));
             } catch (IOException e) {
-                log.warn("Unexpected error while getting the file {} LastModifiedTime ", file, e);
+                log.warn("Unexpected error while reading the file {} ", file, e);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
             }
         }
-        return 0L;
+        return null;
     }
 
+    /**
+     * Stops the watcher, the watcher thread must be interrupted to stop waiting for events.
+     */
     public void stop() {
         this.stop = true;
     }
+
+    private static final class Registration {
+        private final WatchKey key;
+        private final Object fileKey;
+
+        Registration(WatchKey key, Object fileKey) {
+            this.key = key;
+            this.fileKey = fileKey;
+        }
+    }
 }
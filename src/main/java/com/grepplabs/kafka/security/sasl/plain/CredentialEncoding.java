@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.util.Arrays;
+
+/**
+ * Helpers shared by the password verifiers. Base64 is implemented here as neither
+ * java.util.Base64 nor javax.xml.bind are available on all supported Java versions.
+ */
+final class CredentialEncoding {
+
+    private static final char[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64_ALPHABET.length; i++) {
+            BASE64_VALUES[BASE64_ALPHABET[i]] = i;
+        }
+    }
+
+    private CredentialEncoding() {
+    }
+
+    /**
+     * Compares the expected bytes with a range of the actual bytes in constant time.
+     */
+    static boolean constantTimeEquals(byte[] expected, byte[] actual, int offset, int length) {
+        if (expected.length != length) {
+            return false;
+        }
+        int result = 0;
+        for (int i = 0; i < length; i++) {
+            result |= expected[i] ^ actual[offset + i];
+        }
+        return result == 0;
+    }
+
+    static String base64Encode(byte[] bytes) {
+        StringBuilder builder = new StringBuilder((bytes.length + 2) / 3 * 4);
+        for (int i = 0; i < bytes.length; i += 3) {
+            int b0 = bytes[i] & 0xff;
+            int b1 = i + 1 < bytes.length ? bytes[i + 1] & 0xff : 0;
+            int b2 = i + 2 < bytes.length ? bytes[i + 2] & 0xff : 0;
+            builder.append(BASE64_ALPHABET[b0 >>> 2]);
+            builder.append(BASE64_ALPHABET[((b0 & 0x03) << 4) | (b1 >>> 4)]);
+            builder.append(i + 1 < bytes.length ? BASE64_ALPHABET[((b1 & 0x0f) << 2) | (b2 >>> 6)] : '=');
+            builder.append(i + 2 < bytes.length ? BASE64_ALPHABET[b2 & 0x3f] : '=');
+        }
+        return builder.toString();
+    }
+
+    static byte[] base64Decode(String value) {
+        int length = value.length();
+        if (length % 4 != 0) {
+            throw new IllegalArgumentException("Invalid base64 length " + length);
+        }
+        int padding = 0;
+        if (length > 0 && value.charAt(length - 1) == '=') padding++;
+        if (length > 1 && value.charAt(length - 2) == '=') padding++;
+        byte[] bytes = new byte[length / 4 * 3 - padding];
+        int index = 0;
+        for (int i = 0; i < length; i += 4) {
+            int c0 = base64Value(value, i);
+            int c1 = base64Value(value, i + 1);
+            int c2 = value.charAt(i + 2) == '=' && i + 4 == length ? 0 : base64Value(value, i + 2);
+            int c3 = value.charAt(i + 3) == '=' && i + 4 == length ? 0 : base64Value(value, i + 3);
+            int triple = (c0 << 18) | (c1 << 12) | (c2 << 6) | c3;
+            bytes[index++] = (byte) (triple >> 16);
+            if (index < bytes.length) bytes[index++] = (byte) (triple >> 8);
+            if (index < bytes.length) bytes[index++] = (byte) triple;
+        }
+        return bytes;
+    }
+
+    private static int base64Value(String value, int index) {
+        char c = value.charAt(index);
+        int result = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+        if (result == -1) {
+            throw new IllegalArgumentException("Invalid base64 character '" + c + "' at " + index);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.security.JaasContext;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Command line tool compiling the users of a JAAS configuration file or of a users file into a credential file.
+ * <pre>
+ * java -cp kafka-sasl-plain.jar com.grepplabs.kafka.security.sasl.plain.CredentialFileCompiler --jaas FILE [--section NAME] --output FILE
+ * java -cp kafka-sasl-plain.jar com.grepplabs.kafka.security.sasl.plain.CredentialFileCompiler --users FILE --output FILE
+ * </pre>
+ * A users file has a line <code>username=credential</code> per user in the format of a properties file.
+ * The credential file is written next to the output and renamed to it, so a broker watching the output
+ * never reads a partially written file.
+ */
+public class CredentialFileCompiler {
+
+    public static void main(String[] args) throws IOException {
+        String jaasFile = null;
+        String section = JaasFileConfiguration.GLOBAL_CONTEXT_NAME_SERVER;
+        String usersFile = null;
+        String output = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                usage("Missing value of " + arg);
+            }
+            switch (arg) {
+                case "--jaas":
+                    jaasFile = args[++i];
+                    break;
+                case "--section":
+                    section = args[++i];
+                    break;
+                case "--users":
+                    usersFile = args[++i];
+                    break;
+                case "--output":
+                    output = args[++i];
+                    break;
+                default:
+                    usage("Unknown argument " + arg);
+            }
+        }
+        if ((jaasFile == null) == (usersFile == null)) {
+            usage("Either --jaas or --users must be specified");
+        }
+        if (output == null) {
+            usage("Output not specified");
+        }
+        int users;
+        try {
+            users = jaasFile != null ? compileJaasFile(Paths.get(jaasFile), section, Paths.get(output))
+                    : compileUsersFile(Paths.get(usersFile), Paths.get(output));
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+            return;
+        }
+        System.out.println("Compiled " + users + " users to " + output);
+    }
+
+    /**
+     * Compiles the users of the login modules of a section, the credentials are validated with the
+     * password verifiers of the section options.
+     *
+     * @return the number of compiled users
+     */
+    static int compileJaasFile(Path jaasFile, String section, Path output) throws IOException {
+        JaasFileConfiguration configuration = JaasFileConfiguration.load(jaasFile);
+        if (configuration.getAppConfigurationEntry(section) == null) {
+            throw new IllegalArgumentException("Section " + section + " not found in " + jaasFile);
+        }
+        JaasContext jaasContext = new JaasContext(section, JaasContext.Type.SERVER, configuration);
+        PasswordVerifiers verifiers = PasswordVerifiers.create(CredentialSnapshot.moduleOptions(jaasContext));
+        return compile(CredentialSnapshot.configuredCredentials(jaasContext), verifiers, output);
+    }
+
+    /**
+     * Compiles a users file, the credentials are validated with the built-in password verifiers.
+     *
+     * @return the number of compiled users
+     */
+    static int compileUsersFile(Path usersFile, Path output) throws IOException {
+        return compile(readUsersFile(usersFile), PasswordVerifiers.create(Collections.<String, Object>emptyMap()), output);
+    }
+
+    /**
+     * Reads a users file with a line <code>username=credential</code> per user in the properties format.
+     *
+     * @return the non-empty credentials by username
+     */
+    static Map<String, String> readUsersFile(Path usersFile) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(Files.newInputStream(usersFile), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        Map<String, String> configured = new LinkedHashMap<>();
+        for (String username : properties.stringPropertyNames()) {
+            String credential = properties.getProperty(username);
+            if (!username.isEmpty() && !credential.isEmpty()) {
+                configured.put(username, credential);
+            }
+        }
+        return configured;
+    }
+
+    /**
+     * Writes the credentials to a temporary file and renames it to the output.
+     *
+     * @return the number of compiled users
+     */
+    static int compile(Map<String, String> configured, PasswordVerifiers verifiers, Path output) throws IOException {
+        PackedCredentialStore store = PackedCredentialStore.create(configured, verifiers, false);
+        Path directory = output.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, "." + output.getFileName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                store.writeTo(channel);
+                channel.force(true);
+            }
+            Files.move(temp, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return store.size();
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: CredentialFileCompiler (--jaas FILE [--section NAME] | --users FILE) --output FILE");
+        System.exit(1);
+    }
+}
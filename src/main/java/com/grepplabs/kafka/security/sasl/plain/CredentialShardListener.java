@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Listener of the changes of the shard files of a credential directory.
+ */
+interface CredentialShardListener {
+
+    /**
+     * @param directory the normalized absolute path of the directory
+     * @param files     the shard files whose content changed, which were created or removed
+     */
+    void credentialShardsChanged(Path directory, Set<Path> files);
+}
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.security.JaasContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable view of the users configured in a JaasContext. The index is compiled once per reload,
+ * with the options of {@link PlainLoginModule} taking precedence over the options of
+ * {@link org.apache.kafka.common.security.plain.PlainLoginModule}, so a login is a single map lookup.
+ * The configured credentials are parsed by the {@link PasswordVerifiers} of the login module options
+ * and the verification results of expensive schemes are kept in the {@link VerificationCache} of the snapshot.
+ * <p>
+ * The credentials are kept in the {@link CredentialStore} selected by the option {@value CredentialStore#CREDENTIAL_STORE_CONFIG}.
+ * With a packed store the snapshot keeps a copy of the JaasContext without the user options, so the
+ * configured credentials are not retained as strings. The credentials of a compiled credential file set by the
+ * option {@value CredentialStore#CREDENTIAL_FILE_CONFIG} are mapped from the file without parsing, the credentials
+ * of a {@link CredentialSource} are loaded on demand by a {@link CachingCredentialStore}. The credentials of a directory
+ * of shards set by the option {@value CredentialStore#CREDENTIAL_DIRECTORY_CONFIG} are kept in a {@link ShardedCredentialStore},
+ * which is updated in place when a shard changes.
+ * <p>
+ * Each snapshot has a generation, which increases with every snapshot created in the JVM.
+ */
+final class CredentialSnapshot {
+    private static final Logger log = LoggerFactory.getLogger(CredentialSnapshot.class);
+
+    static final String JAAS_USER_PREFIX = "user_";
+
+    private static final String[] LOGIN_MODULES = {PlainLoginModule.class.getName(),
+            org.apache.kafka.common.security.plain.PlainLoginModule.class.getName()};
+
+    static final String MAP_STORE = "map";
+    static final String PACKED_STORE = "packed";
+    static final String DIRECT_STORE = "direct";
+
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    private final long generation = GENERATIONS.incrementAndGet();
+    private final JaasContext jaasContext;
+    private final CredentialStore credentials;
+    private final VerificationCache verificationCache;
+    private final Path credentialFile;
+    private final int invalidCredentialCount;
+
+    private CredentialSnapshot(JaasContext jaasContext, CredentialStore credentials, VerificationCache verificationCache) {
+        this(jaasContext, credentials, verificationCache, null, 0);
+    }
+
+    private CredentialSnapshot(JaasContext jaasContext, CredentialStore credentials, VerificationCache verificationCache,
+                               Path credentialFile, int invalidCredentialCount) {
+        this.jaasContext = jaasContext;
+        this.credentials = credentials;
+        this.verificationCache = verificationCache;
+        this.credentialFile = credentialFile;
+        this.invalidCredentialCount = invalidCredentialCount;
+    }
+
+    static CredentialSnapshot create(JaasContext jaasContext) {
+        return create(jaasContext, new VerificationCache.Stats());
+    }
+
+    static CredentialSnapshot create(JaasContext jaasContext, VerificationCache.Stats cacheStats) {
+        Map<String, Object> options = moduleOptions(jaasContext);
+        PasswordVerifiers verifiers = PasswordVerifiers.create(options);
+        final VerificationCache verificationCache = VerificationCache.create(options, cacheStats);
+        Object file = options.get(CredentialStore.CREDENTIAL_FILE_CONFIG);
+        Object directory = options.get(CredentialStore.CREDENTIAL_DIRECTORY_CONFIG);
+        Object source = options.get(CachingCredentialStore.CREDENTIAL_SOURCE_CLASS_CONFIG);
+        if ((source != null ? 1 : 0) + (file != null ? 1 : 0) + (directory != null ? 1 : 0) > 1) {
+            throw new IllegalArgumentException("Options " + CredentialStore.CREDENTIAL_FILE_CONFIG + ", "
+                    + CredentialStore.CREDENTIAL_DIRECTORY_CONFIG + " and "
+                    + CachingCredentialStore.CREDENTIAL_SOURCE_CLASS_CONFIG + " can not be combined");
+        }
+        if (source != null) {
+            CachingCredentialStore credentials = CachingCredentialStore.create(options, verifiers, new Runnable() {
+                @Override
+                public void run() {
+                    verificationCache.invalidate();
+                }
+            });
+            return new CredentialSnapshot(withoutUserOptions(jaasContext), credentials, verificationCache);
+        }
+        if (directory != null && !directory.toString().trim().isEmpty()) {
+            ShardedCredentialStore credentials = ShardedCredentialStore.open(Paths.get(directory.toString().trim()), verifiers);
+            return new CredentialSnapshot(withoutUserOptions(jaasContext), credentials, verificationCache, null,
+                    credentials.invalidCredentialCount());
+        }
+        if (file != null && !file.toString().trim().isEmpty()) {
+            Path credentialFile = Paths.get(file.toString().trim());
+            return new CredentialSnapshot(withoutUserOptions(jaasContext), PackedCredentialStore.open(credentialFile, verifiers),
+                    verificationCache, credentialFile, 0);
+        }
+        Map<String, String> configured = configuredCredentials(jaasContext);
+        Object store = options.get(CredentialStore.CREDENTIAL_STORE_CONFIG);
+        String storeType = store == null ? MAP_STORE : store.toString().trim().toLowerCase(Locale.ROOT);
+        CredentialStore credentials;
+        switch (storeType) {
+            case MAP_STORE:
+                credentials = mapStore(configured, verifiers);
+                return new CredentialSnapshot(jaasContext, credentials, verificationCache, null, configured.size() - credentials.size());
+            case PACKED_STORE:
+            case DIRECT_STORE:
+                credentials = PackedCredentialStore.create(configured, verifiers, DIRECT_STORE.equals(storeType));
+                return new CredentialSnapshot(withoutUserOptions(jaasContext), credentials, verificationCache, null,
+                        configured.size() - credentials.size());
+            default:
+                throw new IllegalArgumentException("Unknown credential store " + store + ", supported stores are "
+                        + MAP_STORE + ", " + PACKED_STORE + " and " + DIRECT_STORE);
+        }
+    }
+
+    /**
+     * @return the non-empty credentials of the user options by username
+     */
+    static Map<String, String> configuredCredentials(JaasContext jaasContext) {
+        Map<String, String> configured = new LinkedHashMap<>();
+        // JaasContext.configEntryOption returns the first option of a login module, only if it is empty
+        // the old module name is used as fallback.
+        for (String loginModule : LOGIN_MODULES) {
+            for (Map.Entry<String, String> entry : userOptions(jaasContext, loginModule).entrySet()) {
+                String username = entry.getKey();
+                if (entry.getValue().isEmpty() || configured.containsKey(username)) {
+                    continue;
+                }
+                configured.put(username, entry.getValue());
+            }
+        }
+        return configured;
+    }
+
+    private static CredentialStore mapStore(Map<String, String> configured, PasswordVerifiers verifiers) {
+        Map<String, Credential> credentials = new HashMap<>();
+        for (Map.Entry<String, String> entry : configured.entrySet()) {
+            try {
+                credentials.put(entry.getKey(), verifiers.parse(entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                log.warn("Credential of username {} is ignored: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        return new MapCredentialStore(credentials);
+    }
+
+    /**
+     * @return a JaasContext with the entries of the given context without the user options of the login modules
+     */
+    static JaasContext withoutUserOptions(JaasContext jaasContext) {
+        List<AppConfigurationEntry> entries = jaasContext.configurationEntries();
+        final AppConfigurationEntry[] stripped = new AppConfigurationEntry[entries.size()];
+        for (int i = 0; i < stripped.length; i++) {
+            AppConfigurationEntry entry = entries.get(i);
+            Map<String, Object> options = new HashMap<>();
+            for (Map.Entry<String, ?> option : entry.getOptions().entrySet()) {
+                if (!option.getKey().startsWith(JAAS_USER_PREFIX)) {
+                    options.put(option.getKey(), option.getValue());
+                }
+            }
+            stripped[i] = new AppConfigurationEntry(entry.getLoginModuleName(), entry.getControlFlag(), options);
+        }
+        final String name = jaasContext.name();
+        return new JaasContext(name, jaasContext.type(), new Configuration() {
+            @Override
+            public AppConfigurationEntry[] getAppConfigurationEntry(String contextName) {
+                return name.equals(contextName) ? stripped.clone() : null;
+            }
+        });
+    }
+
+    /**
+     * Options of the login modules, the first occurrence of an option wins.
+     */
+    static Map<String, Object> moduleOptions(JaasContext jaasContext) {
+        Map<String, Object> options = new HashMap<>();
+        for (String loginModule : LOGIN_MODULES) {
+            for (AppConfigurationEntry entry : jaasContext.configurationEntries()) {
+                if (!loginModule.equals(entry.getLoginModuleName())) {
+                    continue;
+                }
+                for (Map.Entry<String, ?> option : entry.getOptions().entrySet()) {
+                    if (!options.containsKey(option.getKey())) {
+                        options.put(option.getKey(), option.getValue());
+                    }
+                }
+            }
+        }
+        return options;
+    }
+
+    private static Map<String, String> userOptions(JaasContext jaasContext, String loginModuleName) {
+        Map<String, String> options = new HashMap<>();
+        for (AppConfigurationEntry entry : jaasContext.configurationEntries()) {
+            if (!loginModuleName.equals(entry.getLoginModuleName())) {
+                continue;
+            }
+            for (Map.Entry<String, ?> option : entry.getOptions().entrySet()) {
+                String key = option.getKey();
+                if (!key.startsWith(JAAS_USER_PREFIX) || !(option.getValue() instanceof String)) {
+                    continue;
+                }
+                String username = key.substring(JAAS_USER_PREFIX.length());
+                if (!options.containsKey(username)) {
+                    options.put(username, (String) option.getValue());
+                }
+            }
+        }
+        return options;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    JaasContext jaasContext() {
+        return jaasContext;
+    }
+
+    /**
+     * @return the credential of the user or null if the user is not configured
+     */
+    Credential credential(String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        return credentials.credential(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return false if the username of the message is certainly not configured
+     */
+    boolean mightContain(PlainSaslMessage message) {
+        return message.mightBeIn(credentials);
+    }
+
+    /**
+     * @return the credential of the username of the message or null if the user is not configured
+     * @throws CredentialSourceException if the credential can not be loaded from a {@link CredentialSource}
+     */
+    Credential credential(PlainSaslMessage message) {
+        return message.lookupCredential(credentials);
+    }
+
+    /**
+     * @return the version of the verification cache, to be read before the credential of a message is looked up
+     */
+    long verificationCacheVersion() {
+        return verificationCache.version();
+    }
+
+    /**
+     * Drops the cached verification results after credentials of this snapshot changed in place.
+     */
+    void invalidateVerificationCache() {
+        verificationCache.invalidate();
+    }
+
+    /**
+     * Verifies the password of the message, the result of an expensive verification is cached.
+     *
+     * @param cacheVersion the {@link #verificationCacheVersion()} read before the credential was looked up
+     * @return true if the credential is not null and the password matches it
+     */
+    boolean verify(PlainSaslMessage message, Credential credential, long cacheVersion) {
+        if (credential == null || !verificationCache.isCacheable(credential)) {
+            return message.verifyPassword(credential);
+        }
+        VerificationCache.Key key = message.verificationCacheKey();
+        Boolean verified = verificationCache.get(key);
+        if (verified == null) {
+            verified = message.verifyPassword(credential);
+            verificationCache.put(key, verified, cacheVersion);
+        }
+        return verified;
+    }
+
+    /**
+     * @see CredentialStore#warmUp()
+     */
+    int warmUp() {
+        return credentials.warmUp();
+    }
+
+    int userCount() {
+        return credentials.size();
+    }
+
+    /**
+     * @return the number of configured credentials which are ignored as they are invalid
+     */
+    int invalidCredentialCount() {
+        return invalidCredentialCount;
+    }
+
+    CredentialStore credentialStore() {
+        return credentials;
+    }
+
+    /**
+     * @return the directory of credential shards or null if the credentials are not read from shards
+     */
+    Path credentialDirectory() {
+        return credentials instanceof ShardedCredentialStore ? ((ShardedCredentialStore) credentials).directory() : null;
+    }
+
+    /**
+     * @return the compiled credential file or null if the credentials are configured by the user options
+     */
+    Path credentialFile() {
+        return credentialFile;
+    }
+}
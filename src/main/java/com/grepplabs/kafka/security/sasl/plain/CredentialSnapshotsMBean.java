@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+/**
+ * Management interface of the credential snapshots of a listener, registered in JMX as
+ * <code>kafka.security.sasl.plain:type=sasl-plain-credential-snapshots,listener=&lt;listener name&gt;</code>.
+ * <p>
+ * A reload keeps the replaced snapshot, so the previous credentials can be restored without a change of the file,
+ * e.g. if an accepted reload still lacks users. The next change of the file is loaded as usual.
+ */
+public interface CredentialSnapshotsMBean {
+
+    /**
+     * @return the generation of the active credentials
+     */
+    long getGeneration();
+
+    /**
+     * @return the generation of the previous credentials or -1 if there are none
+     */
+    long getPreviousGeneration();
+
+    /**
+     * @return the number of users of the active credentials
+     */
+    int getUserCount();
+
+    /**
+     * Replaces the active credentials by the previous credentials. The replaced credentials are dropped,
+     * so only one step can be rolled back.
+     *
+     * @return the generation of the restored credentials
+     * @throws IllegalStateException if there are no previous credentials
+     */
+    long rollback();
+}
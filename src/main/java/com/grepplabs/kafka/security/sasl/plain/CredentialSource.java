@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * External source of the user credentials, e.g. a central credential service. A source is enabled per listener
+ * with the <code>credential.source.class</code> option of the login module, which replaces the user options,
+ * and must have a public no-arg constructor. The credentials are cached by a {@link CachingCredentialStore},
+ * so a source is only called on a cache miss and to refresh the cached credentials.
+ * <p>
+ * {@link HttpCredentialSource} reads the credentials from an HTTP/JSON service.
+ */
+public interface CredentialSource {
+
+    /**
+     * Configures the source with the options of the login module.
+     */
+    void configure(Map<String, ?> options);
+
+    /**
+     * Loads the credential of a user in the format of a user option, i.e. <code>[{SCHEME}]&lt;encoded credential&gt;</code>.
+     * Called concurrently, but at most once at a time for a username.
+     *
+     * @return the credential or null if the user is not known
+     * @throws IOException if the source is not available
+     */
+    String credential(String username) throws IOException;
+}
@@ -0,0 +1,29 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+/**
+ * Thrown by the lookup of a credential if the {@link CredentialSource} times out or fails and no expired credential
+ * can be used instead. The authentication fails without counting as a failure of the user, as the user may be valid.
+ */
+final class CredentialSourceException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    CredentialSourceException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+/**
+ * Immutable credentials of a {@link CredentialSnapshot}, selected with the login module option
+ * <code>credential.store</code>:
+ * <ul>
+ * <li><code>map</code> - a map of parsed credentials, the default</li>
+ * <li><code>packed</code> - a {@link PackedCredentialStore} in a heap byte array</li>
+ * <li><code>direct</code> - a {@link PackedCredentialStore} in a direct (off-heap) buffer</li>
+ * </ul>
+ * If the option <code>credential.file</code> is set, the credentials are a {@link PackedCredentialStore}
+ * memory mapped from that file and the user options are ignored. If the option <code>credential.source.class</code>
+ * is set, the credentials are loaded from that {@link CredentialSource} by a {@link CachingCredentialStore}. If the option
+ * <code>credential.directory</code> is set, the credentials are the shards of that directory in a {@link ShardedCredentialStore}.
+ */
+interface CredentialStore {
+
+    String CREDENTIAL_STORE_CONFIG = "credential.store";
+    String CREDENTIAL_FILE_CONFIG = "credential.file";
+    String CREDENTIAL_DIRECTORY_CONFIG = "credential.directory";
+
+    /**
+     * @return the credential of the UTF-8 encoded username or null if the user is not configured
+     */
+    Credential credential(byte[] username, int offset, int length);
+
+    /**
+     * Fast membership test of the UTF-8 encoded username, which may return true for a user who is not configured.
+     *
+     * @return false if the user is certainly not configured
+     */
+    boolean mightContain(byte[] username, int offset, int length);
+
+    /**
+     * @return the number of users
+     */
+    int size();
+
+    /**
+     * Touches the lookup structures, so the first handshakes neither page them in nor load the classes of a lookup.
+     *
+     * @return a value read from the structures, so the reads are not optimized away
+     */
+    int warmUp();
+}
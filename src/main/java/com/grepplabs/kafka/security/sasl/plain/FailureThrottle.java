@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.utils.Time;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Budgets of failed authentications per username and per listener. A failed authentication takes a token of
+ * the {@link TokenBucket} of its username and of the global bucket of the listener. While the bucket of a username
+ * is empty, its authentications are rejected before the credential lookup, the password verification and the failure
+ * log. While the global bucket is empty, only the usernames with a recent failure are rejected, so a storm of failures
+ * can not lock out the clients which authenticate successfully. Throttled attempts do not take tokens, so a client is
+ * accepted again as soon as the bucket is refilled. Configured with the options of the login module:
+ * <ul>
+ * <li><code>failed.authentication.user.burst</code> - failures of a username before it is throttled, 0 disables the budget</li>
+ * <li><code>failed.authentication.user.rate.per.minute</code> - refill rate of the budget of a username</li>
+ * <li><code>failed.authentication.global.burst</code> - failures of all usernames before the usernames with recent failures
+ * are throttled, 0 disables the budget</li>
+ * <li><code>failed.authentication.global.rate.per.minute</code> - refill rate of the global budget</li>
+ * <li><code>failed.authentication.max.users</code> - maximum number of tracked usernames</li>
+ * </ul>
+ * A failure of a username is recent until the bucket of the username is refilled; without a user budget the bucket of a
+ * username holds a single token with the refill rate of the user budget. The buckets of the usernames are removed once
+ * they are refilled. If the map is full of buckets which are not refilled, further usernames are not throttled.
+ */
+final class FailureThrottle {
+
+    static final String USER_BURST_CONFIG = "failed.authentication.user.burst";
+    static final String USER_RATE_CONFIG = "failed.authentication.user.rate.per.minute";
+    static final String GLOBAL_BURST_CONFIG = "failed.authentication.global.burst";
+    static final String GLOBAL_RATE_CONFIG = "failed.authentication.global.rate.per.minute";
+    static final String MAX_USERS_CONFIG = "failed.authentication.max.users";
+    static final int DEFAULT_USER_RATE = 6;
+    static final int DEFAULT_GLOBAL_RATE = 6000;
+    static final int DEFAULT_MAX_USERS = 100000;
+
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final Time time;
+    private final int userBurst;
+    private final int userRate;
+    private final int globalBurst;
+    private final int globalRate;
+    private final int maxUsers;
+    private final TokenBucket global;
+
+    private final ConcurrentMap<String, TokenBucket> users = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private FailureThrottle(Time time, int userBurst, int userRate, int globalBurst, int globalRate, int maxUsers) {
+        this.time = time;
+        this.userBurst = userBurst;
+        this.userRate = userRate;
+        this.globalBurst = globalBurst;
+        this.globalRate = globalRate;
+        this.maxUsers = maxUsers;
+        this.global = globalBurst > 0 ? new TokenBucket(globalBurst, NANOS_PER_MINUTE / globalRate, time.nanoseconds()) : null;
+    }
+
+    static FailureThrottle create(Map<String, ?> options, Time time) {
+        int userBurst = ModuleOptions.intOption(options, USER_BURST_CONFIG, 0);
+        int userRate = ModuleOptions.intOption(options, USER_RATE_CONFIG, DEFAULT_USER_RATE);
+        int globalBurst = ModuleOptions.intOption(options, GLOBAL_BURST_CONFIG, 0);
+        int globalRate = ModuleOptions.intOption(options, GLOBAL_RATE_CONFIG, DEFAULT_GLOBAL_RATE);
+        int maxUsers = ModuleOptions.intOption(options, MAX_USERS_CONFIG, DEFAULT_MAX_USERS);
+        if (userBurst < 0 || globalBurst < 0 || maxUsers < 0) {
+            throw new IllegalArgumentException("Options " + USER_BURST_CONFIG + ", " + GLOBAL_BURST_CONFIG + " and "
+                    + MAX_USERS_CONFIG + " must not be negative");
+        }
+        if (userRate <= 0 || globalRate <= 0) {
+            throw new IllegalArgumentException("Options " + USER_RATE_CONFIG + " and " + GLOBAL_RATE_CONFIG + " must be positive");
+        }
+        return new FailureThrottle(time, userBurst, userRate, globalBurst, globalRate, maxUsers);
+    }
+
+    /**
+     * @return true if the options configure the budgets of this throttle, so it can be kept on a reload
+     */
+    boolean isConfiguredBy(Map<String, ?> options) {
+        FailureThrottle configured = create(options, time);
+        return configured.userBurst == userBurst && configured.userRate == userRate && configured.globalBurst == globalBurst
+                && configured.globalRate == globalRate && configured.maxUsers == maxUsers;
+    }
+
+    boolean isEnabled() {
+        return userBurst > 0 || global != null;
+    }
+
+    /**
+     * @return true if the budget of the username of the message is exhausted, or if the global budget is exhausted
+     * and the username has a recent failure
+     */
+    boolean isThrottled(PlainSaslMessage message) {
+        if (!isEnabled() || users.isEmpty()) {
+            return false;
+        }
+        TokenBucket bucket = users.get(message.username());
+        if (bucket == null) {
+            return false;
+        }
+        long nowNs = time.nanoseconds();
+        if (userBurst > 0 && bucket.isEmpty(nowNs)) {
+            return true;
+        }
+        return global != null && !bucket.isFull(nowNs) && global.isEmpty(nowNs);
+    }
+
+    /**
+     * Takes a token of the global budget and of the budget of the username of the message.
+     */
+    void recordFailure(PlainSaslMessage message) {
+        if (!isEnabled()) {
+            return;
+        }
+        long nowNs = time.nanoseconds();
+        if (global != null) {
+            global.tryTake(nowNs);
+        }
+        String username = message.username();
+        TokenBucket bucket = users.get(username);
+        if (bucket == null) {
+            if (users.size() >= maxUsers) {
+                sweep(nowNs);
+                if (users.size() >= maxUsers) {
+                    return;
+                }
+            }
+            TokenBucket created = new TokenBucket(Math.max(userBurst, 1), NANOS_PER_MINUTE / userRate, nowNs);
+            bucket = users.putIfAbsent(username, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        bucket.tryTake(nowNs);
+    }
+
+    /**
+     * Removes the refilled buckets, a single thread sweeps at a time.
+     */
+    private void sweep(long nowNs) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Iterator<TokenBucket> iterator = users.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isFull(nowNs)) {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    int trackedUsers() {
+        return users.size();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java Flight Recorder events of handshakes, reloads and watcher wake-ups. The events are implemented by
+ * {@value #IMPLEMENTATION_CLASS}, which is compiled on JDK 11 or newer and loaded if the JVM has the
+ * <code>jdk.jfr</code> module, otherwise the events are not recorded.
+ * <p>
+ * The events are disabled until a recording enables them, e.g. with the <code>sasl-plain.jfc</code> settings
+ * of the module jar. A begin method returns null while its event is disabled, so the caller skips the time
+ * measurements of the event and the commit, and a disabled event costs a check of a flag.
+ */
+abstract class FlightRecorderEvents {
+    private static final Logger log = LoggerFactory.getLogger(FlightRecorderEvents.class);
+
+    static final String IMPLEMENTATION_CLASS = "com.grepplabs.kafka.security.sasl.plain.JfrFlightRecorderEvents";
+
+    static final FlightRecorderEvents INSTANCE = load();
+
+    // triggers and outcomes of reload events
+    static final String CONFIGURATION_TRIGGER = "configuration";
+    static final String CREDENTIAL_SHARD_TRIGGER = "credential-shard";
+    static final String ROLLBACK_TRIGGER = "rollback";
+    static final String RELOADED = "RELOADED";
+    static final String REJECTED = "REJECTED";
+    static final String FAILED = "FAILED";
+
+    /**
+     * @return the handshake event or null if it is disabled
+     */
+    abstract Object beginHandshake();
+
+    /**
+     * Commits a handshake event with the time stamps of the end of the parse, lookup and verify phases,
+     * a time stamp is 0 if the handshake failed before the end of the phase.
+     */
+    abstract void commitHandshake(Object event, String listener, String mechanism, String outcome,
+                                  long startNs, long parsedNs, long lookedUpNs, long verifiedNs);
+
+    /**
+     * @return the reload event of a listener or null if it is disabled
+     */
+    abstract Object beginReload();
+
+    abstract void commitReload(Object event, String listener, String trigger, String outcome, long generation, int userCountDelta);
+
+    /**
+     * @return the event of a change of the JAAS configuration file or null if it is disabled
+     */
+    abstract Object beginConfigurationChange();
+
+    /**
+     * Commits the event of a configuration change after the last listener was notified.
+     */
+    abstract void commitConfigurationChange(Object event, String file, int listeners, long startNs, long parsedNs);
+
+    /**
+     * @return the event of a wake-up of a file watcher or null if it is disabled
+     */
+    abstract Object beginWatcherWakeUp();
+
+    abstract void commitWatcherWakeUp(Object event, String path, String reason, int events, int ignoredEvents, boolean changed);
+
+    private static FlightRecorderEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            FlightRecorderEvents events = (FlightRecorderEvents) Class.forName(IMPLEMENTATION_CLASS).getDeclaredConstructor().newInstance();
+            log.debug("Flight Recorder events {} are available", IMPLEMENTATION_CLASS);
+            return events;
+        } catch (ClassNotFoundException | LinkageError e) {
+            log.debug("Flight Recorder events are not available: {}", e.toString());
+        } catch (Exception e) {
+            log.warn("Flight Recorder events can not be created: {}", e.toString());
+        }
+        return new Disabled();
+    }
+
+    private static final class Disabled extends FlightRecorderEvents {
+        @Override
+        Object beginHandshake() {
+            return null;
+        }
+
+        @Override
+        void commitHandshake(Object event, String listener, String mechanism, String outcome,
+                             long startNs, long parsedNs, long lookedUpNs, long verifiedNs) {
+        }
+
+        @Override
+        Object beginReload() {
+            return null;
+        }
+
+        @Override
+        void commitReload(Object event, String listener, String trigger, String outcome, long generation, int userCountDelta) {
+        }
+
+        @Override
+        Object beginConfigurationChange() {
+            return null;
+        }
+
+        @Override
+        void commitConfigurationChange(Object event, String file, int listeners, long startNs, long parsedNs) {
+        }
+
+        @Override
+        Object beginWatcherWakeUp() {
+            return null;
+        }
+
+        @Override
+        void commitWatcherWakeUp(Object event, String path, String reason, int events, int ignoredEvents, boolean changed) {
+        }
+    }
+}
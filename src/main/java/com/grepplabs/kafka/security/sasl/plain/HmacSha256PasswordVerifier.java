@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * Salted HMAC-SHA256 of the password, <code>{HMAC-SHA256}&lt;base64 salt&gt;$&lt;base64 hmac&gt;</code>.
+ * The salt is used as HMAC key. A single HMAC is cheap, so the scheme suits high connection rates
+ * where the credential file is well protected.
+ */
+final class HmacSha256PasswordVerifier implements PasswordVerifier {
+
+    static final String SCHEME = "HMAC-SHA256";
+    static final String ALGORITHM = "HmacSHA256";
+
+    @Override
+    public String scheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public void configure(Map<String, ?> options) {
+    }
+
+    @Override
+    public Credential parse(String encoded) {
+        String[] parts = encoded.split("\\$");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: expected <salt>$<hmac>");
+        }
+        return new HmacCredential(CredentialEncoding.base64Decode(parts[0]), CredentialEncoding.base64Decode(parts[1]));
+    }
+
+    static String encode(byte[] password, byte[] salt) {
+        return "{" + SCHEME + "}" + CredentialEncoding.base64Encode(salt) + "$" + CredentialEncoding.base64Encode(hmac(salt, password, 0, password.length));
+    }
+
+    static byte[] hmac(byte[] key, byte[] data, int offset, int length) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            mac.update(data, offset, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static final class HmacCredential implements Credential {
+        private final byte[] salt;
+        private final byte[] hmac;
+
+        HmacCredential(byte[] salt, byte[] hmac) {
+            if (salt.length == 0) {
+                throw new IllegalArgumentException("Invalid " + SCHEME + " credential: empty salt");
+            }
+            this.salt = salt;
+            this.hmac = hmac;
+        }
+
+        @Override
+        public String scheme() {
+            return SCHEME;
+        }
+
+        @Override
+        public boolean verify(byte[] password, int offset, int length) {
+            return MessageDigest.isEqual(hmac, hmac(salt, password, offset, length));
+        }
+    }
+}
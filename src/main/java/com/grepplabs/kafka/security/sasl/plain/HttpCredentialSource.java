@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * {@link CredentialSource} reading a credential with an HTTP GET request per user. Configured with the options of the login module:
+ * <ul>
+ * <li><code>credential.source.http.url</code> - URL with the placeholder <code>{username}</code> for the URL encoded username</li>
+ * <li><code>credential.source.http.authorization</code> - value of the Authorization header, optional</li>
+ * <li><code>credential.source.http.connect.timeout.ms</code> - connect timeout (default 1000)</li>
+ * <li><code>credential.source.http.read.timeout.ms</code> - read timeout (default 2000)</li>
+ * </ul>
+ * The response of a known user is a JSON object with the credential, e.g. <code>{"credential": "{PBKDF2-SHA256}..."}</code>,
+ * a user is not known if the response status is 404 or the credential is null.
+ */
+public class HttpCredentialSource implements CredentialSource {
+
+    static final String URL_CONFIG = "credential.source.http.url";
+    static final String AUTHORIZATION_CONFIG = "credential.source.http.authorization";
+    static final String CONNECT_TIMEOUT_MS_CONFIG = "credential.source.http.connect.timeout.ms";
+    static final String READ_TIMEOUT_MS_CONFIG = "credential.source.http.read.timeout.ms";
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = 1000;
+    static final int DEFAULT_READ_TIMEOUT_MS = 2000;
+
+    static final String USERNAME_PLACEHOLDER = "{username}";
+    static final String CREDENTIAL_FIELD = "credential";
+
+    private static final int MAX_RESPONSE_LENGTH = 64 * 1024;
+
+    private String url;
+    private String authorization;
+    private int connectTimeoutMs;
+    private int readTimeoutMs;
+
+    @Override
+    public void configure(Map<String, ?> options) {
+        Object value = options.get(URL_CONFIG);
+        if (value == null || !value.toString().contains(USERNAME_PLACEHOLDER)) {
+            throw new IllegalArgumentException("Option " + URL_CONFIG + " must be an URL with the placeholder " + USERNAME_PLACEHOLDER);
+        }
+        url = value.toString().trim();
+        Object authorizationValue = options.get(AUTHORIZATION_CONFIG);
+        authorization = authorizationValue != null ? authorizationValue.toString() : null;
+        connectTimeoutMs = ModuleOptions.intOption(options, CONNECT_TIMEOUT_MS_CONFIG, DEFAULT_CONNECT_TIMEOUT_MS);
+        readTimeoutMs = ModuleOptions.intOption(options, READ_TIMEOUT_MS_CONFIG, DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    @Override
+    public String credential(String username) throws IOException {
+        String encoded = URLEncoder.encode(username, "UTF-8").replace("+", "%20");
+        HttpURLConnection connection = (HttpURLConnection) new URL(url.replace(USERNAME_PLACEHOLDER, encoded)).openConnection();
+        connection.setConnectTimeout(connectTimeoutMs);
+        connection.setReadTimeout(readTimeoutMs);
+        connection.setUseCaches(false);
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestProperty("Accept", "application/json");
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        // the connection is kept alive for the next request, if its response is read completely
+        int status = connection.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+            drain(connection.getErrorStream());
+            return null;
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            drain(connection.getErrorStream());
+            throw new IOException("Credential request failed with status " + status);
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return JsonField.stringField(read(in), CREDENTIAL_FIELD);
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (out.size() > MAX_RESPONSE_LENGTH) {
+                throw new IOException("Credential response exceeds " + MAX_RESPONSE_LENGTH + " bytes");
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in != null) {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[4096];
+                while (stream.read(buffer) != -1) {
+                    // discarded
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a string field of a JSON object without a JSON library, which is not available in the broker class path.
+     */
+    static final class JsonField {
+        private final String json;
+        private int position;
+
+        private JsonField(String json) {
+            this.json = json;
+        }
+
+        /**
+         * @return the value of the field of the top level object or null if the value is null
+         * @throws IOException if the JSON is malformed, the field is missing or not a string
+         */
+        static String stringField(String json, String field) throws IOException {
+            JsonField parser = new JsonField(json);
+            parser.expect('{');
+            boolean found = false;
+            String value = null;
+            if (!parser.consume('}')) {
+                do {
+                    String name = parser.string();
+                    parser.expect(':');
+                    if (name.equals(field)) {
+                        found = true;
+                        if (parser.consumeLiteral("null")) {
+                            value = null;
+                        } else if (parser.peek() == '"') {
+                            value = parser.string();
+                        } else {
+                            throw new IOException("Field " + field + " is not a string");
+                        }
+                    } else {
+                        parser.skipValue();
+                    }
+                } while (parser.consume(','));
+                parser.expect('}');
+            }
+            if (parser.skipWhitespace() != json.length()) {
+                throw parser.error("end of input");
+            }
+            if (!found) {
+                throw new IOException("Field " + field + " is missing");
+            }
+            return value;
+        }
+
+        private void skipValue() throws IOException {
+            char c = peek();
+            if (c == '"') {
+                string();
+            } else if (c == '{' || c == '[') {
+                char close = c == '{' ? '}' : ']';
+                position++;
+                if (!consume(close)) {
+                    do {
+                        if (close == '}') {
+                            string();
+                            expect(':');
+                        }
+                        skipValue();
+                    } while (consume(','));
+                    expect(close);
+                }
+            } else {
+                int start = position;
+                while (position < json.length() && "{}[],: \t\r\n\"".indexOf(json.charAt(position)) == -1) {
+                    position++;
+                }
+                if (start == position) {
+                    throw error("value");
+                }
+            }
+        }
+
+        private String string() throws IOException {
+            expect('"');
+            StringBuilder builder = new StringBuilder();
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return builder.toString();
+                }
+                if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+                if (position >= json.length()) {
+                    break;
+                }
+                char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        builder.append(escaped);
+                        break;
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > json.length()) {
+                            throw error("unicode escape");
+                        }
+                        try {
+                            builder.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        throw error("escape");
+                }
+            }
+            throw error("end of string");
+        }
+
+        private boolean consumeLiteral(String literal) {
+            skipWhitespace();
+            if (json.startsWith(literal, position)) {
+                position += literal.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean consume(char c) {
+            if (skipWhitespace() < json.length() && json.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) throws IOException {
+            if (!consume(c)) {
+                throw error("'" + c + "'");
+            }
+        }
+
+        private char peek() throws IOException {
+            if (skipWhitespace() >= json.length()) {
+                throw error("value");
+            }
+            return json.charAt(position);
+        }
+
+        private int skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+            return position;
+        }
+
+        private IOException error(String expected) {
+            return new IOException("Invalid JSON response: expected " + expected + " at " + position);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.AppConfigurationEntry.LoginModuleControlFlag;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single pass parser of the JAAS configuration file syntax:
+ * <pre>
+ * Name {
+ *     ModuleClass Flag ModuleOptions;
+ * };
+ * </pre>
+ * Tokens follow the rules of the JDK ConfigFile: <code>//</code> and <code>/* *&#47;</code> comments,
+ * double quoted strings with backslash escapes, unquoted words must not start with a digit or a dot,
+ * and <code>${property}</code> in option values is expanded unless the security property
+ * <code>policy.expandProperties</code> is false.
+ * <p>
+ * Sections rejected by the {@link SectionFilter} are validated but their entries are not created.
+ */
+final class JaasConfigParser {
+
+    interface SectionFilter {
+        boolean accept(String name);
+    }
+
+    private static final int EOF = -1;
+    private static final int WORD = -2;
+    private static final int QUOTED = -3;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private int pushedBack = -2;
+    private int line = 1;
+
+    private final StringBuilder token = new StringBuilder();
+    private final boolean expandProperties;
+
+    private JaasConfigParser(Reader reader) {
+        this.reader = reader;
+        this.expandProperties = !"false".equalsIgnoreCase(Security.getProperty("policy.expandProperties"));
+    }
+
+    /**
+     * @return the entries of the accepted sections by section name
+     * @throws IOException if the configuration is invalid
+     */
+    static Map<String, AppConfigurationEntry[]> parse(Reader reader, SectionFilter filter) throws IOException {
+        return new JaasConfigParser(reader).parse(filter);
+    }
+
+    private Map<String, AppConfigurationEntry[]> parse(SectionFilter filter) throws IOException {
+        Map<String, AppConfigurationEntry[]> sections = new LinkedHashMap<>();
+        Map<String, Boolean> names = new HashMap<>();
+        int type;
+        while ((type = nextToken()) != EOF) {
+            String name = word(type, "login context name");
+            if (names.put(name, Boolean.TRUE) != null) {
+                throw new IOException("Configuration Error: Can not specify multiple entries for " + name);
+            }
+            boolean accepted = filter.accept(name);
+            expect(nextToken(), '{');
+            List<AppConfigurationEntry> entries = accepted ? new ArrayList<AppConfigurationEntry>() : null;
+            while ((type = nextToken()) != '}') {
+                AppConfigurationEntry entry = parseEntry(type, accepted);
+                if (accepted) {
+                    entries.add(entry);
+                }
+            }
+            expect(nextToken(), ';');
+            if (accepted) {
+                sections.put(name, entries.toArray(new AppConfigurationEntry[entries.size()]));
+            }
+        }
+        return sections;
+    }
+
+    private AppConfigurationEntry parseEntry(int type, boolean accepted) throws IOException {
+        String loginModule = word(type, "login module class name");
+        LoginModuleControlFlag flag = controlFlag(word(nextToken(), "control flag"));
+        Map<String, Object> options = accepted ? new HashMap<String, Object>() : null;
+        while ((type = nextToken()) != ';') {
+            String key = value(type, "option key");
+            expect(nextToken(), '=');
+            String value = value(nextToken(), "option value");
+            if (accepted) {
+                options.put(key, expand(value));
+            }
+        }
+        return accepted ? new AppConfigurationEntry(loginModule, flag, options) : null;
+    }
+
+    private LoginModuleControlFlag controlFlag(String flag) throws IOException {
+        if ("REQUIRED".equalsIgnoreCase(flag)) {
+            return LoginModuleControlFlag.REQUIRED;
+        } else if ("REQUISITE".equalsIgnoreCase(flag)) {
+            return LoginModuleControlFlag.REQUISITE;
+        } else if ("SUFFICIENT".equalsIgnoreCase(flag)) {
+            return LoginModuleControlFlag.SUFFICIENT;
+        } else if ("OPTIONAL".equalsIgnoreCase(flag)) {
+            return LoginModuleControlFlag.OPTIONAL;
+        }
+        throw new IOException("Configuration Error: Line " + line + ": Invalid control flag, " + flag);
+    }
+
+    private String word(int type, String expected) throws IOException {
+        if (type != WORD) {
+            throw unexpected(type, expected);
+        }
+        return token.toString();
+    }
+
+    private String value(int type, String expected) throws IOException {
+        if (type != WORD && type != QUOTED) {
+            throw unexpected(type, expected);
+        }
+        return token.toString();
+    }
+
+    private void expect(int type, char expected) throws IOException {
+        if (type != expected) {
+            throw unexpected(type, String.valueOf(expected));
+        }
+    }
+
+    private IOException unexpected(int type, String expected) {
+        String found;
+        switch (type) {
+            case EOF:
+                found = "end of file";
+                break;
+            case WORD:
+            case QUOTED:
+                found = token.toString();
+                break;
+            case '\'':
+                found = "'" + token + "'";
+                break;
+            default:
+                found = String.valueOf((char) type);
+        }
+        return new IOException("Configuration Error: Line " + line + ": expected [" + expected + "], found [" + found + "]");
+    }
+
+    private String expand(String value) throws IOException {
+        if (!expandProperties || value.indexOf("${") < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        int index = 0;
+        while (index < value.length()) {
+            int start = value.indexOf("${", index);
+            int end = start < 0 ? -1 : value.indexOf('}', start + 2);
+            if (end < 0) {
+                builder.append(value, index, value.length());
+                break;
+            }
+            builder.append(value, index, start);
+            String property = value.substring(start + 2, end);
+            String expanded = "/".equals(property) ? File.separator : System.getProperty(property);
+            if (expanded == null) {
+                throw new IOException("Configuration Error: Line " + line + ": Unable to expand property " + property);
+            }
+            builder.append(expanded);
+            index = end + 1;
+        }
+        return builder.toString();
+    }
+
+    private int nextToken() throws IOException {
+        while (true) {
+            int c = read();
+            switch (c) {
+                case EOF:
+                    return EOF;
+                case '{':
+                case '}':
+                case ';':
+                case '=':
+                    return c;
+                case '"':
+                    readQuoted(c);
+                    return QUOTED;
+                case '\'':
+                    // single quoted strings are tokens of the JDK ConfigFile, but never valid
+                    readQuoted(c);
+                    return c;
+                case '/':
+                    skipComment();
+                    continue;
+                default:
+                    if (c <= ' ') {
+                        continue;
+                    }
+                    if (!isWordStart(c)) {
+                        token.setLength(0);
+                        return c;
+                    }
+                    readWord(c);
+                    return WORD;
+            }
+        }
+    }
+
+    private void readWord(int first) throws IOException {
+        token.setLength(0);
+        token.append((char) first);
+        // the word is appended in ranges of the buffer, the terminating character stays in the buffer
+        do {
+            int start = position;
+            while (position < limit && isWordPart(buffer[position])) {
+                position++;
+            }
+            token.append(buffer, start, position - start);
+        } while (position == limit && fill());
+    }
+
+    private void readQuoted(int quote) throws IOException {
+        token.setLength(0);
+        while (true) {
+            int start = position;
+            while (position < limit) {
+                char c = buffer[position];
+                if (c == quote || c == '\\' || c == '\n' || c == '\r') {
+                    break;
+                }
+                position++;
+            }
+            token.append(buffer, start, position - start);
+            if (position == limit) {
+                if (!fill()) {
+                    return;
+                }
+                continue;
+            }
+            char c = buffer[position];
+            if (c == '\n' || c == '\r') {
+                // like StreamTokenizer a line break terminates the string
+                return;
+            }
+            position++;
+            if (c == quote) {
+                return;
+            }
+            int escaped = readEscape();
+            if (escaped == EOF) {
+                return;
+            }
+            token.append((char) escaped);
+        }
+    }
+
+    private int readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'a':
+                return 0x7;
+            case 'b':
+                return '\b';
+            case 'f':
+                return 0xC;
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'v':
+                return 0xB;
+            default:
+                if (c >= '0' && c <= '7') {
+                    // up to three octal digits, at most \377
+                    int value = c - '0';
+                    int digits = c <= '3' ? 2 : 1;
+                    for (int i = 0; i < digits; i++) {
+                        if ((position == limit && !fill()) || buffer[position] < '0' || buffer[position] > '7') {
+                            break;
+                        }
+                        value = value * 8 + buffer[position++] - '0';
+                    }
+                    return value;
+                }
+                return c;
+        }
+    }
+
+    private void skipComment() throws IOException {
+        int c = read();
+        if (c == '*') {
+            int previous = 0;
+            while ((c = read()) != EOF) {
+                if (previous == '*' && c == '/') {
+                    return;
+                }
+                previous = c;
+            }
+            return;
+        }
+        // "//" or a single slash comment up to the end of the line
+        while (c != EOF && c != '\n' && c != '\r') {
+            c = read();
+        }
+        unread(c);
+    }
+
+    private static boolean isWordStart(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '$' || c == '_' || c == '-' || c == '*' || c >= 160;
+    }
+
+    private static boolean isWordPart(int c) {
+        return isWordStart(c) || (c >= '0' && c <= '9') || c == '.';
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != -2) {
+            int c = pushedBack;
+            pushedBack = -2;
+            return c;
+        }
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        char c = buffer[position++];
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private void unread(int c) {
+        pushedBack = c;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.security.JaasContext;
+
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * KafkaServer sections of a JAAS configuration file parsed by {@link JaasConfigParser}. Unlike the JVM wide
+ * {@link Configuration}, an instance is immutable and is created without any global lock, so a reload does
+ * not stall other JAAS logins of the broker.
+ */
+final class JaasFileConfiguration extends Configuration {
+
+    static final String GLOBAL_CONTEXT_NAME_SERVER = "KafkaServer";
+
+    private static final JaasConfigParser.SectionFilter SERVER_SECTIONS = new JaasConfigParser.SectionFilter() {
+        @Override
+        public boolean accept(String name) {
+            return name.equals(GLOBAL_CONTEXT_NAME_SERVER) || name.endsWith("." + GLOBAL_CONTEXT_NAME_SERVER);
+        }
+    };
+
+    private final Path file;
+    private final Map<String, AppConfigurationEntry[]> sections;
+
+    private JaasFileConfiguration(Path file, Map<String, AppConfigurationEntry[]> sections) {
+        this.file = file;
+        this.sections = Collections.unmodifiableMap(sections);
+    }
+
+    /**
+     * @throws IOException if the file can not be read or is invalid
+     */
+    static JaasFileConfiguration load(Path file) throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            return new JaasFileConfiguration(file, JaasConfigParser.parse(reader, SERVER_SECTIONS));
+        }
+    }
+
+    Path file() {
+        return file;
+    }
+
+    @Override
+    public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
+        AppConfigurationEntry[] entries = sections.get(name);
+        return entries == null ? null : entries.clone();
+    }
+
+    /**
+     * @return the names of the sections with an entry of the login module with the options
+     */
+    List<String> serverContextNames(String loginModuleName, Map<String, ?> options) {
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, AppConfigurationEntry[]> section : sections.entrySet()) {
+            for (AppConfigurationEntry entry : section.getValue()) {
+                if (entry.getLoginModuleName().equals(loginModuleName) && entry.getOptions().equals(options)) {
+                    names.add(section.getKey());
+                    break;
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Selects the section of the listener like {@link JaasContext#load(JaasContext.Type, ListenerName, Map)}.
+     * The context is backed by a configuration of that section only, so it does not retain the other sections.
+     *
+     * @return the context of the listener or null if the file has neither a listener nor a global section
+     */
+    JaasContext serverContext(ListenerName listenerName) {
+        String listenerContextName = listenerName.value().toLowerCase(Locale.ROOT) + "." + GLOBAL_CONTEXT_NAME_SERVER;
+        if (sections.containsKey(listenerContextName)) {
+            return section(listenerContextName);
+        }
+        if (sections.containsKey(GLOBAL_CONTEXT_NAME_SERVER)) {
+            return section(GLOBAL_CONTEXT_NAME_SERVER);
+        }
+        return null;
+    }
+
+    private JaasContext section(String name) {
+        JaasFileConfiguration section = new JaasFileConfiguration(file, Collections.singletonMap(name, sections.get(name)));
+        return new JaasContext(name, JaasContext.Type.SERVER, section);
+    }
+}
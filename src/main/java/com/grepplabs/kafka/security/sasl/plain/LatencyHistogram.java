@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, e.g. latencies in nanoseconds. Each power of two is split
+ * into four linear sub-buckets, so a reported percentile is within 12.5% of the recorded value.
+ * The buckets are striped like {@link StripedCounter}; recording is a single atomic add plus the sum
+ * and a rarely contended max update. Values are accumulated since creation.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int STRIDE = BUCKETS + StripedCounter.PADDING;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(StripedCounter.STRIPES * STRIDE);
+    private final StripedCounter sum = new StripedCounter();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.getAndIncrement(StripedCounter.stripe() * STRIDE + bucket(value));
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += bucketCount(i);
+        }
+        return count;
+    }
+
+    double mean() {
+        long count = count();
+        return count == 0 ? 0.0 : (double) sum.sum() / count;
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile between 0.0 and 1.0
+     * @return the midpoint of the bucket holding the quantile, or 0 if nothing was recorded
+     */
+    long percentile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = bucketCount(i);
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long lower = lowerBound(i);
+                long upper = lower + bucketWidth(i) - 1;
+                return Math.min(lower + (upper - lower) / 2, max());
+            }
+        }
+        return max();
+    }
+
+    private long bucketCount(int bucket) {
+        long count = 0;
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+            count += buckets.get(stripe * STRIDE + bucket);
+        }
+        return count;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    private static long bucketWidth(int bucket) {
+        return bucket < SUB_BUCKETS ? 1L : 1L << (bucket / SUB_BUCKETS - 1);
+    }
+}
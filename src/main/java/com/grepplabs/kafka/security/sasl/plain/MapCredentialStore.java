@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Credentials parsed once per reload and kept in a map by username. Unknown usernames are rejected by the
+ * {@link BloomFilter} of {@link #mightContain} before they are decoded for the map lookup, the lookup itself does
+ * not probe the filter again.
+ */
+final class MapCredentialStore implements CredentialStore {
+
+    private final Map<String, Credential> credentials;
+    private final BloomFilter usernames;
+
+    MapCredentialStore(Map<String, Credential> credentials) {
+        this.credentials = Collections.unmodifiableMap(credentials);
+        this.usernames = BloomFilter.create(credentials.keySet());
+    }
+
+    @Override
+    public boolean mightContain(byte[] username, int offset, int length) {
+        return usernames.mightContain(username, offset, length);
+    }
+
+    @Override
+    public Credential credential(byte[] username, int offset, int length) {
+        return credentials.get(new String(username, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int size() {
+        return credentials.size();
+    }
+
+    /**
+     * The map and the filter are on the heap, a lookup of the empty username loads the classes of the lookup.
+     */
+    @Override
+    public int warmUp() {
+        return credential(new byte[0], 0, 0) == null ? 0 : 1;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsing of the options of the login module, a missing option takes the default value.
+ */
+final class ModuleOptions {
+
+    private ModuleOptions() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the option is not a number
+     */
+    static int intOption(Map<String, ?> options, String name, int defaultValue) {
+        Object value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + name + " must be a number, but it is: " + value);
+        }
+    }
+
+    /**
+     * @return the trimmed, non-empty items of the comma separated option
+     */
+    static List<String> listOption(Map<String, ?> options, String name, List<String> defaultValue) {
+        Object value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        List<String> result = new ArrayList<>();
+        for (String item : value.toString().split(",")) {
+            if (!item.trim().isEmpty()) {
+                result.add(item.trim());
+            }
+        }
+        return result;
+    }
+}
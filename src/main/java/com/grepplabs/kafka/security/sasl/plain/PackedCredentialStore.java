@@ -0,0 +1,394 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Credentials packed into a single {@link ByteBuffer}, on heap or direct, so the garbage collector
+ * does not trace objects per user. The buffer starts with an open addressing table of record offsets
+ * followed by the records:
+ * <pre>
+ * record = verifier (1 byte) username length (1 byte) username (UTF-8) credential length (2 bytes) credential (UTF-8)
+ * </pre>
+ * A username is looked up directly from the bytes of the SASL/PLAIN message. Cleartext passwords are
+ * verified in place; credentials of other schemes are stored without the scheme prefix and parsed by their
+ * {@link PasswordVerifier} on lookup, which is cheap compared to verifying them.
+ * <p>
+ * A store is written to a credential file by {@link CredentialFileCompiler} and memory mapped from it read-only,
+ * so opening the file does not parse it and the processes of a host share its pages in the page cache:
+ * <pre>
+ * file   = magic "KSPC" (4 bytes) version (4 bytes) size (4 bytes) slots (4 bytes) in place credentials (4 bytes)
+ *          scheme count (1 byte) schemes (scheme length (1 byte) scheme (ASCII))* store
+ * </pre>
+ * The verifier of a record is the index of its scheme in the header plus one, the schemes are resolved by the
+ * {@link PasswordVerifiers} of the listener when the file is opened. The offsets of the table and the extents of
+ * the records are checked once when the file is opened, so a lookup never reads outside of the mapped file.
+ */
+final class PackedCredentialStore implements CredentialStore {
+    private static final Logger log = LoggerFactory.getLogger(PackedCredentialStore.class);
+
+    // verifier index of cleartext passwords compared in place
+    private static final int IN_PLACE = 0;
+    private static final int MAX_CREDENTIAL_LENGTH = 0xffff;
+    private static final int SLOT_SIZE = 4;
+    private static final int PAGE_SIZE = 4096;
+
+    private static final int MAGIC = 0x4b535043;
+    private static final int VERSION = 1;
+
+    private final ByteBuffer buffer;
+    private final int mask;
+    private final int size;
+    private final int inPlaceCount;
+    private final PasswordVerifier[] verifiers;
+
+    private PackedCredentialStore(ByteBuffer buffer, int mask, int size, int inPlaceCount, PasswordVerifier[] verifiers) {
+        this.buffer = buffer;
+        this.mask = mask;
+        this.size = size;
+        this.inPlaceCount = inPlaceCount;
+        this.verifiers = verifiers;
+    }
+
+    /**
+     * Packs the configured credentials, malformed credentials and usernames which exceed the
+     * SASL/PLAIN token length are ignored.
+     */
+    static PackedCredentialStore create(Map<String, String> configured, PasswordVerifiers passwordVerifiers, boolean direct) {
+        List<PasswordVerifier> verifiers = new ArrayList<>();
+        verifiers.add(null);
+        List<byte[]> usernames = new ArrayList<>(configured.size());
+        List<byte[]> credentials = new ArrayList<>(configured.size());
+        List<Integer> verifierIndexes = new ArrayList<>(configured.size());
+        long recordsLength = 0;
+        int inPlaceCount = 0;
+        for (Map.Entry<String, String> entry : configured.entrySet()) {
+            String username = entry.getKey();
+            byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+            if (usernameBytes.length > PlainSaslMessage.MAX_TOKEN_LENGTH) {
+                log.warn("Credential of username {} is ignored: username exceeds {} octets", username, PlainSaslMessage.MAX_TOKEN_LENGTH);
+                continue;
+            }
+            byte[] credential;
+            int verifierIndex;
+            try {
+                String scheme = passwordVerifiers.scheme(entry.getValue());
+                String encoded = passwordVerifiers.encoded(entry.getValue());
+                PasswordVerifier verifier = passwordVerifiers.verifier(scheme);
+                // validates the credential once per reload
+                verifier.parse(encoded);
+                credential = encoded.getBytes(StandardCharsets.UTF_8);
+                if (verifier instanceof PlainPasswordVerifier) {
+                    verifierIndex = IN_PLACE;
+                } else {
+                    verifierIndex = verifiers.indexOf(verifier);
+                    if (verifierIndex == -1) {
+                        verifierIndex = verifiers.size();
+                        verifiers.add(verifier);
+                    }
+                }
+                if (credential.length > MAX_CREDENTIAL_LENGTH) {
+                    throw new IllegalArgumentException("credential exceeds " + MAX_CREDENTIAL_LENGTH + " octets");
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("Credential of username {} is ignored: {}", username, e.getMessage());
+                continue;
+            }
+            usernames.add(usernameBytes);
+            credentials.add(credential);
+            verifierIndexes.add(verifierIndex);
+            if (verifierIndex == IN_PLACE) {
+                inPlaceCount++;
+            }
+            recordsLength += 4 + usernameBytes.length + credential.length;
+        }
+
+        int size = usernames.size();
+        // load factor of at most 0.5 keeps the probe sequences short
+        int slots = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+        long capacity = (long) slots * SLOT_SIZE + recordsLength;
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Credentials exceed " + Integer.MAX_VALUE + " bytes");
+        }
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect((int) capacity) : ByteBuffer.allocate((int) capacity);
+        int mask = slots - 1;
+        int position = slots * SLOT_SIZE;
+        for (int i = 0; i < size; i++) {
+            byte[] username = usernames.get(i);
+            byte[] credential = credentials.get(i);
+            int slot = hash(username, 0, username.length) & mask;
+            while (buffer.getInt(slot * SLOT_SIZE) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            buffer.putInt(slot * SLOT_SIZE, position);
+            buffer.put(position++, verifierIndexes.get(i).byteValue());
+            buffer.put(position++, (byte) username.length);
+            for (byte b : username) {
+                buffer.put(position++, b);
+            }
+            buffer.putShort(position, (short) credential.length);
+            position += 2;
+            for (byte b : credential) {
+                buffer.put(position++, b);
+            }
+        }
+        return new PackedCredentialStore(buffer, mask, size, inPlaceCount, verifiers.toArray(new PasswordVerifier[verifiers.size()]));
+    }
+
+    /**
+     * Maps the credential file read-only. The mapping stays valid when the file is replaced by a rename.
+     *
+     * @throws IllegalArgumentException if the file can not be read, is not a credential file or uses a scheme
+     *                                  which is not enabled
+     */
+    static PackedCredentialStore open(Path file, PasswordVerifiers passwordVerifiers) {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Credential file " + file + " exceeds " + Integer.MAX_VALUE + " bytes");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Credential file " + file + " can not be read: " + e.getMessage(), e);
+        }
+        try {
+            if (mapped.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Credential file " + file + " is not a credential file");
+            }
+            int version = mapped.getInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Credential file " + file + " has unsupported version " + version);
+            }
+            int size = mapped.getInt();
+            int slots = mapped.getInt();
+            int inPlaceCount = mapped.getInt();
+            PasswordVerifier[] verifiers = new PasswordVerifier[(mapped.get() & 0xff) + 1];
+            if (inPlaceCount > 0) {
+                // cleartext passwords are verified in place, but only if the listener enables them
+                passwordVerifiers.verifier(PlainPasswordVerifier.SCHEME);
+            }
+            for (int i = 1; i < verifiers.length; i++) {
+                byte[] scheme = new byte[mapped.get() & 0xff];
+                mapped.get(scheme);
+                verifiers[i] = passwordVerifiers.verifier(new String(scheme, StandardCharsets.US_ASCII));
+            }
+            if (Integer.bitCount(slots) != 1 || (long) slots * SLOT_SIZE > mapped.remaining() || size < 0 || size >= slots) {
+                throw new IllegalArgumentException("Credential file " + file + " is corrupted");
+            }
+            ByteBuffer store = mapped.slice();
+            if (!isValid(store, slots, size, verifiers.length)) {
+                throw new IllegalArgumentException("Credential file " + file + " is corrupted");
+            }
+            return new PackedCredentialStore(store, slots - 1, size, inPlaceCount, verifiers);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Credential file " + file + " is truncated");
+        }
+    }
+
+    /**
+     * Checks that each used slot of the table points to a record within the store and that the number of
+     * used slots is the size, which is less than the number of slots, so every probe sequence ends.
+     */
+    private static boolean isValid(ByteBuffer store, int slots, int size, int verifierCount) {
+        int tableEnd = slots * SLOT_SIZE;
+        int capacity = store.capacity();
+        int used = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            int record = store.getInt(slot * SLOT_SIZE);
+            if (record == 0) {
+                continue;
+            }
+            used++;
+            if (record < tableEnd || record > capacity - 4) {
+                return false;
+            }
+            int verifierIndex = store.get(record);
+            int usernameLength = store.get(record + 1) & 0xff;
+            if (verifierIndex < 0 || verifierIndex >= verifierCount || record + 4L + usernameLength > capacity) {
+                return false;
+            }
+            int credentialLength = store.getShort(record + 2 + usernameLength) & 0xffff;
+            if (record + 4L + usernameLength + credentialLength > capacity) {
+                return false;
+            }
+        }
+        return used == size;
+    }
+
+    /**
+     * Writes the store in the format of a credential file.
+     */
+    void writeTo(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(21 + (verifiers.length - 1) * 256);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(size);
+        header.putInt(mask + 1);
+        header.putInt(inPlaceCount);
+        header.put((byte) (verifiers.length - 1));
+        for (int i = 1; i < verifiers.length; i++) {
+            byte[] scheme = verifiers[i].scheme().toUpperCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII);
+            header.put((byte) scheme.length);
+            header.put(scheme);
+        }
+        header.flip();
+        ByteBuffer store = buffer.duplicate();
+        store.clear();
+        while (header.hasRemaining() || store.hasRemaining()) {
+            channel.write(new ByteBuffer[]{header, store});
+        }
+    }
+
+    @Override
+    public Credential credential(byte[] username, int offset, int length) {
+        int record = find(username, offset, length);
+        if (record == -1) {
+            return null;
+        }
+        int verifierIndex = buffer.get(record);
+        int credentialStart = record + 2 + length + 2;
+        int credentialLength = buffer.getShort(record + 2 + length) & 0xffff;
+        if (verifierIndex == IN_PLACE) {
+            return new InPlaceCredential(credentialStart, credentialLength);
+        }
+        byte[] credential = new byte[credentialLength];
+        for (int i = 0; i < credentialLength; i++) {
+            credential[i] = buffer.get(credentialStart + i);
+        }
+        return verifiers[verifierIndex].parse(new String(credential, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The probes of the table are an exact membership test, which does not allocate.
+     */
+    @Override
+    public boolean mightContain(byte[] username, int offset, int length) {
+        return find(username, offset, length) != -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reads a byte of every page, so the pages of a mapped credential file are loaded before the first handshake
+     * and not by its table probes.
+     */
+    @Override
+    public int warmUp() {
+        int sum = 0;
+        for (int i = 0; i < buffer.capacity(); i += PAGE_SIZE) {
+            sum += buffer.get(i);
+        }
+        return mightContain(new byte[0], 0, 0) ? sum + 1 : sum;
+    }
+
+    /**
+     * @return the number of bytes of the table and the records
+     */
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    boolean isDirect() {
+        return buffer.isDirect();
+    }
+
+    private int find(byte[] username, int offset, int length) {
+        int slot = hash(username, offset, length) & mask;
+        // the table has an empty slot, the bound only guards against a table without one
+        for (int probes = 0; probes <= mask; probes++) {
+            int record = buffer.getInt(slot * SLOT_SIZE);
+            if (record == 0) {
+                return -1;
+            }
+            if ((buffer.get(record + 1) & 0xff) == length && usernameEquals(record + 2, username, offset, length)) {
+                return record;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean usernameEquals(int start, byte[] username, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != username[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a with a final avalanche, so usernames with a common prefix spread over the table.
+     */
+    static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    /**
+     * Cleartext password verified against the bytes of the store.
+     */
+    private final class InPlaceCredential implements Credential {
+        private final int start;
+        private final int length;
+
+        InPlaceCredential(int start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public String scheme() {
+            return PlainPasswordVerifier.SCHEME;
+        }
+
+        @Override
+        public boolean verify(byte[] password, int offset, int length) {
+            if (this.length != length) {
+                return false;
+            }
+            int result = 0;
+            for (int i = 0; i < length; i++) {
+                result |= buffer.get(start + i) ^ password[offset + i];
+            }
+            return result == 0;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Locale;
+
+/**
+ * Command line tool encoding a password for the JAAS configuration file.
+ * <pre>
+ * java -cp kafka-sasl-plain.jar com.grepplabs.kafka.security.sasl.plain.PasswordEncoder [--scheme SCHEME] [--iterations N] [--cost N]
+ * </pre>
+ * The password is read from the console or from the standard input. A cleartext password starting with <code>{</code>
+ * is printed with the <code>{PLAIN}</code> prefix.
+ */
+public class PasswordEncoder {
+
+    static final int SALT_LENGTH = 16;
+
+    public static void main(String[] args) throws IOException {
+        String scheme = Pbkdf2PasswordVerifier.SCHEME;
+        int iterations = Pbkdf2PasswordVerifier.DEFAULT_ITERATIONS;
+        int cost = BcryptPasswordVerifier.DEFAULT_COST;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                usage("Missing value of " + arg);
+            }
+            switch (arg) {
+                case "--scheme":
+                    scheme = args[++i].toUpperCase(Locale.ROOT);
+                    break;
+                case "--iterations":
+                    iterations = intArgument(arg, args[++i]);
+                    break;
+                case "--cost":
+                    cost = intArgument(arg, args[++i]);
+                    break;
+                default:
+                    usage("Unknown argument " + arg);
+            }
+        }
+        String password = readPassword();
+        if (password == null || password.isEmpty()) {
+            usage("Password not specified");
+        }
+        System.out.println(encode(scheme, password.getBytes(StandardCharsets.UTF_8), iterations, cost));
+    }
+
+    static String encode(String scheme, byte[] password, int iterations, int cost) {
+        switch (scheme) {
+            case PlainPasswordVerifier.SCHEME:
+                String plain = new String(password, StandardCharsets.UTF_8);
+                // a cleartext password starting with a brace is escaped, so it is not parsed as a scheme prefix
+                return plain.startsWith("{") ? "{" + PlainPasswordVerifier.SCHEME + "}" + plain : plain;
+            case Pbkdf2PasswordVerifier.SCHEME:
+                return Pbkdf2PasswordVerifier.encode(password, salt(), iterations);
+            case HmacSha256PasswordVerifier.SCHEME:
+                return HmacSha256PasswordVerifier.encode(password, salt());
+            case BcryptPasswordVerifier.SCHEME:
+                return BcryptPasswordVerifier.encode(password, cost);
+            default:
+                throw new IllegalArgumentException("Unknown scheme " + scheme);
+        }
+    }
+
+    private static int intArgument(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            usage("Invalid value of " + name + ": " + value);
+            return 0;
+        }
+    }
+
+    private static byte[] salt() {
+        byte[] salt = new byte[SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+        return salt;
+    }
+
+    private static String readPassword() throws IOException {
+        Console console = System.console();
+        if (console != null) {
+            char[] password = console.readPassword("Password: ");
+            return password == null ? null : new String(password);
+        }
+        return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).readLine();
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: PasswordEncoder [--scheme PBKDF2-SHA256|HMAC-SHA256|BCRYPT|PLAIN] [--iterations N] [--cost N]");
+        System.exit(1);
+    }
+}
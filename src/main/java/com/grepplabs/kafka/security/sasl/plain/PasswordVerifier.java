@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.util.Map;
+
+/**
+ * Verification scheme of the configured user credentials. A credential encoded with a scheme
+ * is configured as <code>user_&lt;username&gt;="{SCHEME}&lt;encoded credential&gt;"</code>,
+ * credentials without a known scheme prefix are cleartext passwords.
+ * <p>
+ * Custom verifiers are enabled per listener with the <code>password.verifier.classes</code> option
+ * of the login module and must have a public no-arg constructor.
+ */
+public interface PasswordVerifier {
+
+    /**
+     * @return the scheme name used as credential prefix
+     */
+    String scheme();
+
+    /**
+     * Configures the verifier with the options of the login module.
+     */
+    void configure(Map<String, ?> options);
+
+    /**
+     * Parses the encoded credential without the scheme prefix. Called once per reload.
+     *
+     * @throws IllegalArgumentException if the credential is malformed
+     */
+    Credential parse(String encoded);
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Password verifiers of a listener, configured with the options of the login module:
+ * <ul>
+ * <li><code>password.verifiers</code> - comma separated list of the enabled schemes, all built-in schemes by default</li>
+ * <li><code>password.verifier.classes</code> - comma separated list of custom {@link PasswordVerifier} classes</li>
+ * </ul>
+ * Credentials with the prefix of a scheme which is not enabled are rejected, so that e.g. cleartext
+ * passwords can be disallowed with <code>password.verifiers="PBKDF2-SHA256,BCRYPT"</code>.
+ */
+final class PasswordVerifiers {
+
+    static final String PASSWORD_VERIFIERS_CONFIG = "password.verifiers";
+    static final String PASSWORD_VERIFIER_CLASSES_CONFIG = "password.verifier.classes";
+
+    private static final List<String> BUILT_IN_SCHEMES = Arrays.asList(PlainPasswordVerifier.SCHEME,
+            Pbkdf2PasswordVerifier.SCHEME, HmacSha256PasswordVerifier.SCHEME, BcryptPasswordVerifier.SCHEME);
+
+    private final Map<String, PasswordVerifier> verifiers;
+
+    private PasswordVerifiers(Map<String, PasswordVerifier> verifiers) {
+        this.verifiers = verifiers;
+    }
+
+    static PasswordVerifiers create(Map<String, ?> options) {
+        List<PasswordVerifier> candidates = new ArrayList<>();
+        for (String scheme : ModuleOptions.listOption(options, PASSWORD_VERIFIERS_CONFIG, BUILT_IN_SCHEMES)) {
+            candidates.add(builtInVerifier(scheme.toUpperCase(Locale.ROOT)));
+        }
+        for (String className : ModuleOptions.listOption(options, PASSWORD_VERIFIER_CLASSES_CONFIG, new ArrayList<String>())) {
+            try {
+                candidates.add(Utils.newInstance(className, PasswordVerifier.class));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Password verifier class " + className + " not found", e);
+            }
+        }
+        Map<String, PasswordVerifier> verifiers = new HashMap<>();
+        for (PasswordVerifier verifier : candidates) {
+            verifier.configure(options);
+            verifiers.put(verifier.scheme().toUpperCase(Locale.ROOT), verifier);
+        }
+        return new PasswordVerifiers(verifiers);
+    }
+
+    private static PasswordVerifier builtInVerifier(String scheme) {
+        switch (scheme) {
+            case PlainPasswordVerifier.SCHEME:
+                return new PlainPasswordVerifier();
+            case Pbkdf2PasswordVerifier.SCHEME:
+                return new Pbkdf2PasswordVerifier();
+            case HmacSha256PasswordVerifier.SCHEME:
+                return new HmacSha256PasswordVerifier();
+            case BcryptPasswordVerifier.SCHEME:
+                return new BcryptPasswordVerifier();
+            default:
+                throw new IllegalArgumentException("Unknown password verifier scheme " + scheme + ", built-in schemes are " + BUILT_IN_SCHEMES);
+        }
+    }
+
+    /**
+     * Parses the configured credential <code>[{SCHEME}]&lt;encoded credential&gt;</code>.
+     *
+     * @throws IllegalArgumentException if the credential is malformed or its scheme is not enabled
+     */
+    Credential parse(String configured) {
+        return verifier(scheme(configured)).parse(encoded(configured));
+    }
+
+    /**
+     * @return the scheme of the configured credential, {@value PlainPasswordVerifier#SCHEME} if it has no known scheme prefix
+     */
+    String scheme(String configured) {
+        int length = prefixLength(configured);
+        return length == 0 ? PlainPasswordVerifier.SCHEME : configured.substring(1, length - 1).toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the configured credential without the scheme prefix
+     */
+    String encoded(String configured) {
+        return configured.substring(prefixLength(configured));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the scheme is not enabled
+     */
+    PasswordVerifier verifier(String scheme) {
+        PasswordVerifier verifier = verifiers.get(scheme);
+        if (verifier == null) {
+            throw new IllegalArgumentException("Password verifier scheme " + scheme + " is not enabled");
+        }
+        return verifier;
+    }
+
+    private int prefixLength(String configured) {
+        if (configured.startsWith("{")) {
+            int end = configured.indexOf('}');
+            if (end != -1) {
+                String prefix = configured.substring(1, end).toUpperCase(Locale.ROOT);
+                if (verifiers.containsKey(prefix) || BUILT_IN_SCHEMES.contains(prefix)) {
+                    return end + 1;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * PBKDF2 with HMAC-SHA256 (RFC 2898), <code>{PBKDF2-SHA256}&lt;iterations&gt;$&lt;base64 salt&gt;$&lt;base64 hash&gt;</code>.
+ * <p>
+ * The iteration count is part of the stored credential. The accepted range is configured with the
+ * <code>pbkdf2.min.iterations</code> and <code>pbkdf2.max.iterations</code> options, so that a weak
+ * or a denial-of-service credential is rejected at reload time.
+ * PBKDF2WithHmacSHA256 is not available in Java 7, the derivation is implemented with javax.crypto.Mac.
+ */
+final class Pbkdf2PasswordVerifier implements PasswordVerifier {
+
+    static final String SCHEME = "PBKDF2-SHA256";
+    static final String MIN_ITERATIONS_CONFIG = "pbkdf2.min.iterations";
+    static final String MAX_ITERATIONS_CONFIG = "pbkdf2.max.iterations";
+    static final int DEFAULT_MIN_ITERATIONS = 1000;
+    static final int DEFAULT_MAX_ITERATIONS = 1000000;
+    static final int DEFAULT_ITERATIONS = 10000;
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private int minIterations = DEFAULT_MIN_ITERATIONS;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+    @Override
+    public String scheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public void configure(Map<String, ?> options) {
+        minIterations = ModuleOptions.intOption(options, MIN_ITERATIONS_CONFIG, DEFAULT_MIN_ITERATIONS);
+        maxIterations = ModuleOptions.intOption(options, MAX_ITERATIONS_CONFIG, DEFAULT_MAX_ITERATIONS);
+    }
+
+    @Override
+    public Credential parse(String encoded) {
+        String[] parts = encoded.split("\\$");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: expected <iterations>$<salt>$<hash>");
+        }
+        int iterations;
+        try {
+            iterations = Integer.parseInt(parts[0]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: iterations " + parts[0] + " is not a number");
+        }
+        if (iterations < minIterations || iterations > maxIterations) {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: iterations " + iterations
+                    + " outside of the range [" + minIterations + ", " + maxIterations + "]");
+        }
+        byte[] salt = CredentialEncoding.base64Decode(parts[1]);
+        byte[] hash = CredentialEncoding.base64Decode(parts[2]);
+        if (hash.length == 0) {
+            throw new IllegalArgumentException("Invalid " + SCHEME + " credential: empty hash");
+        }
+        return new Pbkdf2Credential(iterations, salt, hash);
+    }
+
+    static String encode(byte[] password, byte[] salt, int iterations) {
+        byte[] hash = pbkdf2(password, 0, password.length, salt, iterations, 32);
+        return "{" + SCHEME + "}" + iterations + "$" + CredentialEncoding.base64Encode(salt) + "$" + CredentialEncoding.base64Encode(hash);
+    }
+
+    static byte[] pbkdf2(byte[] password, int offset, int length, byte[] salt, int iterations, int keyLength) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(password, offset, length, ALGORITHM));
+            int hLen = mac.getMacLength();
+            byte[] result = new byte[keyLength];
+            byte[] u = new byte[hLen];
+            byte[] t = new byte[hLen];
+            for (int block = 1, pos = 0; pos < keyLength; block++, pos += hLen) {
+                mac.update(salt);
+                mac.update((byte) (block >>> 24));
+                mac.update((byte) (block >>> 16));
+                mac.update((byte) (block >>> 8));
+                mac.update((byte) block);
+                mac.doFinal(u, 0);
+                System.arraycopy(u, 0, t, 0, hLen);
+                for (int i = 1; i < iterations; i++) {
+                    mac.update(u);
+                    mac.doFinal(u, 0);
+                    for (int j = 0; j < hLen; j++) {
+                        t[j] ^= u[j];
+                    }
+                }
+                System.arraycopy(t, 0, result, pos, Math.min(hLen, keyLength - pos));
+            }
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static final class Pbkdf2Credential implements Credential {
+        private final int iterations;
+        private final byte[] salt;
+        private final byte[] hash;
+
+        Pbkdf2Credential(int iterations, byte[] salt, byte[] hash) {
+            this.iterations = iterations;
+            this.salt = salt;
+            this.hash = hash;
+        }
+
+        @Override
+        public String scheme() {
+            return SCHEME;
+        }
+
+        @Override
+        public boolean verify(byte[] password, int offset, int length) {
+            return MessageDigest.isEqual(hash, pbkdf2(password, offset, length, salt, iterations, hash.length));
+        }
+    }
+}
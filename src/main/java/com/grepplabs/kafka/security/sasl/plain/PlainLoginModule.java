@@ -16,6 +16,9 @@
  */
 package com.grepplabs.kafka.security.sasl.plain;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.security.auth.Subject;
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.login.LoginException;
@@ -23,12 +26,18 @@ import javax.security.auth.spi.LoginModule;
 import java.util.Map;
 
 /**
+ * With the option <code>warmup="true"</code> the credentials of the listeners configured with the options of
+ * the module are loaded, watched and touched when the broker logs in at startup, instead of by the first
+ * authentication of each listener.
+ *
  * @see org.apache.kafka.common.security.plain.PlainLoginModule
  */
 public class PlainLoginModule implements LoginModule {
+    private static final Logger log = LoggerFactory.getLogger(PlainLoginModule.class);
 
     private static final String USERNAME_CONFIG = "username";
     private static final String PASSWORD_CONFIG = "password";
+    static final String WARMUP_CONFIG = "warmup";
 
     static {
         PlainSaslServerProvider.initialize();
@@ -42,6 +51,16 @@ public class PlainLoginModule implements LoginModule {
         String password = (String) options.get(PASSWORD_CONFIG);
         if (password != null)
             subject.getPrivateCredentials().add(password);
+        if (Boolean.parseBoolean(String.valueOf(options.get(WARMUP_CONFIG))))
+            warmUp(options);
+    }
+
+    private static void warmUp(Map<String, ?> options) {
+        try {
+            PlainSaslServer.PlainSaslServerFactory.warmUpJaasContextProviders(options);
+        } catch (Exception e) {
+            log.warn("Warm-up failed, the credentials are loaded by the first authentication: {}", e.toString());
+        }
     }
 
     @Override
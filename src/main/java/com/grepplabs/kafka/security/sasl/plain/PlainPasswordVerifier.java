@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Cleartext passwords, used for credentials without a scheme prefix.
+ */
+final class PlainPasswordVerifier implements PasswordVerifier {
+
+    static final String SCHEME = "PLAIN";
+
+    @Override
+    public String scheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public void configure(Map<String, ?> options) {
+    }
+
+    @Override
+    public Credential parse(String encoded) {
+        return new PlainCredential(encoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class PlainCredential implements Credential {
+        private final byte[] password;
+
+        PlainCredential(byte[] password) {
+            this.password = password;
+        }
+
+        @Override
+        public String scheme() {
+            return SCHEME;
+        }
+
+        @Override
+        public boolean verify(byte[] password, int offset, int length) {
+            return CredentialEncoding.constantTimeEquals(this.password, password, offset, length);
+        }
+    }
+}
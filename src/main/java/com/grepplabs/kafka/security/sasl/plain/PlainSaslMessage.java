@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import javax.security.sasl.SaslException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SASL/PLAIN message parsed in place. Only the offsets of the NUL separators are stored,
+ * the tokens are compared and verified as bytes and decoded on demand. The parsed response holds
+ * the cleartext password, so it is released by {@link #clear()} when the message is evaluated.
+ * <p>
+ * Message format (from https://tools.ietf.org/html/rfc4616):
+ * <pre>
+ * message   = [authzid] UTF8NUL authcid UTF8NUL passwd
+ * authcid   = 1*SAFE ; MUST accept up to 255 octets
+ * authzid   = 1*SAFE ; MUST accept up to 255 octets
+ * passwd    = 1*SAFE ; MUST accept up to 255 octets
+ * UTF8NUL   = %x00 ; UTF-8 encoded NUL character
+ *
+ * SAFE      = UTF1 / UTF2 / UTF3 / UTF4
+ *                ;; any UTF-8 encoded Unicode character except NUL
+ * </pre>
+ */
+final class PlainSaslMessage {
+
+    static final int MAX_TOKEN_LENGTH = 255;
+    static final int MAX_MESSAGE_LENGTH = 3 * MAX_TOKEN_LENGTH + 2;
+
+    private static final byte UTF8NUL = 0;
+
+    private byte[] message;
+    private int authcidStart;
+    private int passwordStart;
+
+    void parse(byte[] response) throws SaslException {
+        if (response.length > MAX_MESSAGE_LENGTH)
+            throw new SaslException("Invalid SASL/PLAIN response: message exceeds " + MAX_MESSAGE_LENGTH + " octets");
+
+        int firstNul = indexOfNul(response, 0);
+        int secondNul = firstNul == -1 ? -1 : indexOfNul(response, firstNul + 1);
+        if (secondNul == -1 || indexOfNul(response, secondNul + 1) != -1)
+            throw new SaslException("Invalid SASL/PLAIN response: expected 3 tokens, got " + countTokens(response));
+
+        if (firstNul > MAX_TOKEN_LENGTH)
+            throw new SaslException("Invalid SASL/PLAIN response: authorization id exceeds " + MAX_TOKEN_LENGTH + " octets");
+        if (secondNul - firstNul - 1 > MAX_TOKEN_LENGTH)
+            throw new SaslException("Invalid SASL/PLAIN response: username exceeds " + MAX_TOKEN_LENGTH + " octets");
+        if (response.length - secondNul - 1 > MAX_TOKEN_LENGTH)
+            throw new SaslException("Invalid SASL/PLAIN response: password exceeds " + MAX_TOKEN_LENGTH + " octets");
+
+        this.message = response;
+        this.authcidStart = firstNul + 1;
+        this.passwordStart = secondNul + 1;
+    }
+
+    /**
+     * Releases the parsed response, so a reused message does not retain the password.
+     */
+    void clear() {
+        this.message = null;
+        this.authcidStart = 0;
+        this.passwordStart = 0;
+    }
+
+    int authorizationIdLength() {
+        return authcidStart - 1;
+    }
+
+    int usernameLength() {
+        return passwordStart - authcidStart - 1;
+    }
+
+    int passwordLength() {
+        return message.length - passwordStart;
+    }
+
+    String username() {
+        return new String(message, authcidStart, usernameLength(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true if the authorization id is not specified or equals the username
+     */
+    boolean authorizationIdMatchesUsername() {
+        int length = authorizationIdLength();
+        if (length == 0) {
+            return true;
+        }
+        if (length != usernameLength()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (message[i] != message[authcidStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the credential is not null and the password matches it
+     */
+    boolean verifyPassword(Credential credential) {
+        return credential != null && credential.verify(message, passwordStart, passwordLength());
+    }
+
+    /**
+     * @return false if the username is certainly not in the store
+     */
+    boolean mightBeIn(CredentialStore store) {
+        return store.mightContain(message, authcidStart, usernameLength());
+    }
+
+    /**
+     * @return the credential of the username looked up without decoding it or null if the user is not configured
+     */
+    Credential lookupCredential(CredentialStore store) {
+        return store.credential(message, authcidStart, usernameLength());
+    }
+
+    VerificationCache.Key verificationCacheKey() {
+        return VerificationCache.key(message, authcidStart, usernameLength(), passwordStart, passwordLength());
+    }
+
+    private static int indexOfNul(byte[] bytes, int fromIndex) {
+        for (int i = fromIndex; i < bytes.length; i++) {
+            if (bytes[i] == UTF8NUL) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int countTokens(byte[] bytes) {
+        int tokens = 1;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == UTF8NUL) {
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+}
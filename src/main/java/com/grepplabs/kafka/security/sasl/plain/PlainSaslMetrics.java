@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.MetricsReporter;
+import org.apache.kafka.common.utils.Time;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metrics registry shared by all JaasContextProviders. The metrics are registered in JMX under the
+ * {@value #JMX_PREFIX} domain and reported to the <code>metric.reporters</code> of the broker configs
+ * passed to the first SaslServer.
+ */
+final class PlainSaslMetrics {
+    private static final Logger log = LoggerFactory.getLogger(PlainSaslMetrics.class);
+
+    static final String JMX_PREFIX = "kafka.security.sasl.plain";
+    static final String CONFIG_FILE_GROUP = "sasl-plain-config-file-metrics";
+    static final String CREDENTIAL_SNAPSHOTS_TYPE = "sasl-plain-credential-snapshots";
+
+    private static Metrics metrics;
+
+    private PlainSaslMetrics() {
+    }
+
+    static synchronized Metrics metrics(Map<String, ?> configs) {
+        if (metrics == null) {
+            List<MetricsReporter> reporters = reporters(configs != null ? configs : Collections.<String, Object>emptyMap());
+            reporters.add(new JmxReporter(JMX_PREFIX));
+            metrics = new Metrics(new MetricConfig(), reporters, Time.SYSTEM);
+            metrics.addMetric(metrics.metricName("listener-count", CONFIG_FILE_GROUP,
+                    "The number of listeners notified on a change of the JAAS configuration file"), new Measurable() {
+                @Override
+                public double measure(MetricConfig config, long now) {
+                    return PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount();
+                }
+            });
+        }
+        return metrics;
+    }
+
+    /**
+     * Registers the MBean of a listener in the platform MBean server under the {@value #JMX_PREFIX} domain.
+     *
+     * @return the name of the MBean or null if it is not registered
+     */
+    static <T> ObjectName registerMBean(String type, String listener, T mbean, Class<T> mbeanInterface) {
+        try {
+            ObjectName name = new ObjectName(JMX_PREFIX + ":type=" + type + ",listener=" + listener);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(mbean, mbeanInterface), name);
+            return name;
+        } catch (JMException e) {
+            log.warn("MBean {} of listener {} is not registered: {}", type, listener, e.toString());
+            return null;
+        }
+    }
+
+    static void unregisterMBean(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            log.warn("MBean {} is not unregistered: {}", name, e.toString());
+        }
+    }
+
+    private static List<MetricsReporter> reporters(Map<String, ?> configs) {
+        List<MetricsReporter> reporters = new ArrayList<>();
+        Object value = configs.get(CommonClientConfigs.METRIC_REPORTER_CLASSES_CONFIG);
+        // broker configs hold a parsed list, login module options a comma separated string
+        Collection<?> classes = value instanceof Collection ? (Collection<?>) value
+                : ModuleOptions.listOption(configs, CommonClientConfigs.METRIC_REPORTER_CLASSES_CONFIG, Collections.<String>emptyList());
+        for (Object reporterClass : classes) {
+            try {
+                MetricsReporter reporter = reporterClass instanceof Class
+                        ? MetricsReporter.class.cast(Utils.newInstance((Class<?>) reporterClass))
+                        : Utils.newInstance(reporterClass.toString().trim(), MetricsReporter.class);
+                reporter.configure(configs);
+                reporters.add(reporter);
+            } catch (Exception e) {
+                log.warn("Metrics reporter {} is not used: {}", reporterClass, e.toString());
+            }
+        }
+        return reporters;
+    }
+}
@@ -16,21 +16,31 @@
  */
 package com.grepplabs.kafka.security.sasl.plain;
 
+import org.apache.kafka.common.config.SaslConfigs;
 import org.apache.kafka.common.network.ListenerName;
 import org.apache.kafka.common.security.JaasContext;
 import org.apache.kafka.common.security.authenticator.SaslServerCallbackHandler;
+import org.apache.kafka.common.utils.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.sasl.Sasl;
 import javax.security.sasl.SaslException;
 import javax.security.sasl.SaslServer;
 import javax.security.sasl.SaslServerFactory;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -42,8 +52,8 @@ import java.util.concurrent.atomic.AtomicReference;
  * is specified with user &lt;username&gt; as key and &lt;password&gt; as value. This is consistent
  * with Zookeeper Digest-MD5 implementation.
  * <p>
- * To avoid storing clear passwords on disk or to integrate with external authentication
- * servers in production systems, this module can be replaced with a different implementation.
+ * To avoid storing clear passwords on disk, the value can be a hashed credential with a scheme
+ * prefix, see {@link PasswordVerifier} and {@link PasswordEncoder}.
  *
  * @see org.apache.kafka.common.security.plain.PlainSaslServer
  */
@@ -51,11 +61,12 @@ public class PlainSaslServer implements SaslServer {
     private static final Logger log = LoggerFactory.getLogger(PlainSaslServer.class);
 
     public static final String PLAIN_MECHANISM = "PLAIN";
-    private static final String JAAS_USER_PREFIX = "user_";
+    private static final byte[] EMPTY_CHALLENGE = new byte[0];
 
     final static ConfigFileWatchService CONFIG_FILE_WATCH_SERVICE = new ConfigFileWatchService();
 
     private final JaasContextProvider jaasContextProvider;
+    private final PlainSaslMessage message = new PlainSaslMessage();
 
     private boolean complete;
     private String authorizationId;
@@ -66,63 +77,91 @@ public class PlainSaslServer implements SaslServer {
 
     @Override
     public byte[] evaluateResponse(byte[] response) throws SaslException {
-        /*
-         * Message format (from https://tools.ietf.org/html/rfc4616):
-         *
-         * message   = [authzid] UTF8NUL authcid UTF8NUL passwd
-         * authcid   = 1*SAFE ; MUST accept up to 255 octets
-         * authzid   = 1*SAFE ; MUST accept up to 255 octets
-         * passwd    = 1*SAFE ; MUST accept up to 255 octets
-         * UTF8NUL   = %x00 ; UTF-8 encoded NUL character
-         *
-         * SAFE      = UTF1 / UTF2 / UTF3 / UTF4
-         *                ;; any UTF-8 encoded Unicode character except NUL
-         */
-
-        String[] tokens;
+        AuthenticatorMetrics metrics = jaasContextProvider.metrics();
+        long startNs = metrics.nanoseconds();
+        AuthenticatorMetrics.Outcome outcome = AuthenticatorMetrics.Outcome.FAILED;
+        // the phases are only timed while the handshake event is recorded
+        Object event = FlightRecorderEvents.INSTANCE.beginHandshake();
+        long eventStartNs = event != null ? System.nanoTime() : 0L;
+        long parsedNs = 0L;
+        long lookedUpNs = 0L;
+        long verifiedNs = 0L;
         try {
-            tokens = new String(response, "UTF-8").split("\u0000");
-        } catch (UnsupportedEncodingException e) {
-            throw new SaslException("UTF-8 encoding not supported", e);
-        }
-        if (tokens.length != 3)
-            throw new SaslException("Invalid SASL/PLAIN response: expected 3 tokens, got " + tokens.length);
-        String authorizationIdFromClient = tokens[0];
-        String username = tokens[1];
-        String password = tokens[2];
+            message.parse(response);
 
-        if (username.isEmpty()) {
-            throw new SaslException("Authentication failed: username not specified");
-        }
-        if (password.isEmpty()) {
-            throw new SaslException("Authentication failed: password not specified");
-        }
+            if (message.usernameLength() == 0) {
+                throw new SaslException("Authentication failed: username not specified");
+            }
+            if (message.passwordLength() == 0) {
+                throw new SaslException("Authentication failed: password not specified");
+            }
+            if (event != null) {
+                parsedNs = System.nanoTime();
+            }
 
-        String expectedPassword = jaasContextProvider.get().configEntryOption(JAAS_USER_PREFIX + username,
-                PlainLoginModule.class.getName());
+            FailureThrottle failureThrottle = jaasContextProvider.failureThrottle();
+            if (failureThrottle.isThrottled(message)) {
+                outcome = AuthenticatorMetrics.Outcome.THROTTLED;
+                log.debug("Authentication throttled: Too many failed authentications");
+                throw new SaslException("Authentication failed: Too many failed authentications");
+            }
 
-        if (expectedPassword == null || expectedPassword.isEmpty()) {
-            // Fallback to old module name.
-            expectedPassword = jaasContextProvider.get().configEntryOption(JAAS_USER_PREFIX + username,
-                    org.apache.kafka.common.security.plain.PlainLoginModule.class.getName());
-        }
+            CredentialSnapshot snapshot = jaasContextProvider.snapshot();
+            if (!snapshot.mightContain(message)) {
+                outcome = AuthenticatorMetrics.Outcome.REJECTED_USERNAME;
+                jaasContextProvider.failureLog().record(AuthenticationFailureLog.Failure.INVALID_USERNAME, message.username());
+                failureThrottle.recordFailure(message);
+                throw new SaslException("Authentication failed: Invalid username or password");
+            }
 
-        if (!password.equals(expectedPassword)) {
-            if (expectedPassword == null || expectedPassword.isEmpty()) {
-                log.info("Authentication failed: Invalid username {}", username);
-            } else {
-                log.info("Authentication failed: Invalid password for username {}", username);
+            String username = message.username();
+            // a credential changed after the lookup must not leave its result in the verification cache
+            long cacheVersion = snapshot.verificationCacheVersion();
+            Credential credential;
+            try {
+                credential = snapshot.credential(message);
+            } catch (CredentialSourceException e) {
+                // an outage of the source is no failure of the user, it is neither logged as one nor throttled
+                outcome = AuthenticatorMetrics.Outcome.SOURCE_UNAVAILABLE;
+                throw new SaslException("Authentication failed: " + e.getMessage());
+            }
+            if (event != null) {
+                lookedUpNs = System.nanoTime();
             }
-            throw new SaslException("Authentication failed: Invalid username or password");
-        }
 
-        if (!authorizationIdFromClient.isEmpty() && !authorizationIdFromClient.equals(username)) {
-            throw new SaslException("Authentication failed: Client requested an authorization id that is different from username");
-        }
-        this.authorizationId = username;
+            boolean verified = snapshot.verify(message, credential, cacheVersion);
+            if (event != null) {
+                verifiedNs = System.nanoTime();
+            }
+            if (!verified) {
+                if (credential == null) {
+                    outcome = AuthenticatorMetrics.Outcome.INVALID_USERNAME;
+                    jaasContextProvider.failureLog().record(AuthenticationFailureLog.Failure.INVALID_USERNAME, username);
+                } else {
+                    outcome = AuthenticatorMetrics.Outcome.INVALID_PASSWORD;
+                    jaasContextProvider.failureLog().record(AuthenticationFailureLog.Failure.INVALID_PASSWORD, username);
+                }
+                failureThrottle.recordFailure(message);
+                throw new SaslException("Authentication failed: Invalid username or password");
+            }
 
-        complete = true;
-        return new byte[0];
+            if (!message.authorizationIdMatchesUsername()) {
+                throw new SaslException("Authentication failed: Client requested an authorization id that is different from username");
+            }
+            this.authorizationId = username;
+
+            complete = true;
+            outcome = AuthenticatorMetrics.Outcome.SUCCESSFUL;
+            return EMPTY_CHALLENGE;
+        } finally {
+            // the response holds the cleartext password, it is not retained for the lifetime of the connection
+            message.clear();
+            metrics.recordAuthentication(outcome, startNs);
+            if (event != null) {
+                FlightRecorderEvents.INSTANCE.commitHandshake(event, jaasContextProvider.listener(), PLAIN_MECHANISM,
+                        outcome.name(), eventStartNs, parsedNs, lookedUpNs, verifiedNs);
+            }
+        }
     }
 
     @Override
@@ -166,11 +205,95 @@ public class PlainSaslServer implements SaslServer {
     @Override
     public void dispose() throws SaslException {
         log.debug("Disposing SaslServer");
-        jaasContextProvider.dispose();
     }
 
     public static class PlainSaslServerFactory implements SaslServerFactory {
 
+        /**
+         * The protocol passed by the Kafka SaslServerAuthenticator, the listener name of the global KafkaServer section.
+         */
+        static final String KAFKA_SASL_PROTOCOL = "kafka";
+
+        /**
+         * JaasContextProviders shared by all SaslServers of the same context type and listener name.
+         * A provider is created and registered for reloads once, so the handshake cost does not depend
+         * on the number of open connections.
+         */
+        private static final ConcurrentMap<JaasContextKey, JaasContextProvider> JAAS_CONTEXT_PROVIDERS = new ConcurrentHashMap<>();
+
+        static JaasContextProvider getJaasContextProvider(JaasContext.Type contextType, ListenerName listenerName, Map<String, ?> configs) {
+            final JaasContextKey key = new JaasContextKey(contextType, listenerName);
+            JaasContextProvider provider = JAAS_CONTEXT_PROVIDERS.get(key);
+            if (provider == null) {
+                synchronized (JAAS_CONTEXT_PROVIDERS) {
+                    provider = JAAS_CONTEXT_PROVIDERS.get(key);
+                    if (provider == null) {
+                        // the provider is published only after it is registered for reloads
+                        provider = new JaasContextProvider(contextType, listenerName, configs);
+                        provider.init();
+                        JAAS_CONTEXT_PROVIDERS.put(key, provider);
+                        log.debug("Created JaasContextProvider: contextType {}, listenerName {}", contextType, listenerName);
+                    }
+                }
+            }
+            // a provider created by the warm-up is configured by the first SaslServer with the broker configs
+            provider.configure(configs);
+            return provider;
+        }
+
+        /**
+         * Creates and starts the providers of the server sections of the JAAS configuration file which configure
+         * the login module with the options, before the first SaslServer of their listener is created. The login
+         * module has no access to the broker configs, so the first SaslServer of a listener passes them to
+         * {@link JaasContextProvider#configure(Map)}, which registers the metrics and applies the listener settings.
+         *
+         * @return the providers of the sections, empty if the configuration is not read from a file
+         */
+        static List<JaasContextProvider> warmUpJaasContextProviders(Map<String, ?> options) {
+            JaasFileConfiguration configuration;
+            try {
+                configuration = CONFIG_FILE_WATCH_SERVICE.loadJaasConfiguration();
+            } catch (IOException e) {
+                log.warn("JAAS configuration file can not be parsed, the credentials are not warmed up: {}", e.getMessage());
+                return Collections.emptyList();
+            }
+            if (configuration == null) {
+                log.info("JAAS configuration is not read from a file, the credentials are not warmed up");
+                return Collections.emptyList();
+            }
+            List<JaasContextProvider> providers = new ArrayList<>();
+            for (String contextName : configuration.serverContextNames(PlainLoginModule.class.getName(), options)) {
+                ListenerName listenerName = getListenerName(JaasContext.Type.SERVER, contextName, KAFKA_SASL_PROTOCOL);
+                providers.add(warmUpJaasContextProvider(JaasContext.Type.SERVER, listenerName));
+            }
+            return providers;
+        }
+
+        static JaasContextProvider warmUpJaasContextProvider(JaasContext.Type contextType, ListenerName listenerName) {
+            final long startNs = Time.SYSTEM.nanoseconds();
+            final JaasContextKey key = new JaasContextKey(contextType, listenerName);
+            JaasContextProvider provider = JAAS_CONTEXT_PROVIDERS.get(key);
+            if (provider == null) {
+                synchronized (JAAS_CONTEXT_PROVIDERS) {
+                    provider = JAAS_CONTEXT_PROVIDERS.get(key);
+                    if (provider == null) {
+                        provider = new JaasContextProvider(contextType, listenerName, null);
+                        provider.start();
+                        provider.warmUp(startNs);
+                        JAAS_CONTEXT_PROVIDERS.put(key, provider);
+                    }
+                }
+            }
+            return provider;
+        }
+
+        static void clearJaasContextProviders() {
+            for (JaasContextProvider provider : JAAS_CONTEXT_PROVIDERS.values()) {
+                provider.dispose();
+            }
+            JAAS_CONTEXT_PROVIDERS.clear();
+        }
+
         static ListenerName getListenerName(JaasContext.Type contextType, String contextName, String defaultListenerName) {
             if (contextType == JaasContext.Type.CLIENT) {
                 return null;
@@ -197,8 +320,7 @@ public class PlainSaslServer implements SaslServer {
                 throw new SaslException("CallbackHandler must be of type SaslServerCallbackHandler, but it is: " + cbh.getClass());
 
             final JaasContext oldJaasContext = ((SaslServerCallbackHandler) cbh).jaasContext();
-            final JaasContextProvider jaasContextProvider = new JaasContextProvider(oldJaasContext.type(), getListenerName(oldJaasContext.type(), oldJaasContext.name(), protocol), props);
-            jaasContextProvider.init();
+            final JaasContextProvider jaasContextProvider = getJaasContextProvider(oldJaasContext.type(), getListenerName(oldJaasContext.type(), oldJaasContext.name(), protocol), props);
             return new PlainSaslServer(jaasContextProvider);
         }
 
@@ -211,57 +333,400 @@ public class PlainSaslServer implements SaslServer {
             else
                 return new String[]{PLAIN_MECHANISM};
         }
+
+        private static final class JaasContextKey {
+            private final JaasContext.Type contextType;
+            private final ListenerName listenerName;
+
+            JaasContextKey(JaasContext.Type contextType, ListenerName listenerName) {
+                this.contextType = contextType;
+                this.listenerName = listenerName;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (o == null || getClass() != o.getClass()) return false;
+                JaasContextKey that = (JaasContextKey) o;
+                return contextType == that.contextType &&
+                        (listenerName != null ? listenerName.equals(that.listenerName) : that.listenerName == null);
+            }
+
+            @Override
+            public int hashCode() {
+                int result = contextType != null ? contextType.hashCode() : 0;
+                result = 31 * result + (listenerName != null ? listenerName.hashCode() : 0);
+                return result;
+            }
+        }
     }
 
-    public static class JaasContextProvider implements ConfigFileChangeListener{
+    /**
+     * Credentials of a context, reloaded on a change of the JAAS configuration file. A reload builds a new
+     * snapshot on the reload executor and publishes it only if the {@link ReloadPolicy} of the active snapshot
+     * accepts it. The replaced snapshot is kept for a {@link #rollback()}. A change of the shards of a credential
+     * directory updates the active snapshot in place, shard by shard; a snapshot rolled back to reads its shards again.
+     */
+    public static class JaasContextProvider implements ConfigFileChangeListener, CredentialShardListener, CredentialSnapshotsMBean {
         private static final Logger log = LoggerFactory.getLogger(JaasContextProvider.class);
 
         private final JaasContext.Type contextType;
         private final ListenerName listenerName;
-        private final Map<String, ?> configs;
+        // empty until a provider created by the warm-up is configured with the broker configs
+        private volatile Map<String, ?> configs;
+        private volatile boolean configured;
+        // the version of the JAAS configuration file the initial snapshot is loaded from
+        private final long configurationVersion;
 
         private volatile boolean running;
 
-        private final AtomicReference<JaasContext> jaasContextRef;
-
+        private final AtomicReference<CredentialSnapshot> snapshotRef;
+        private volatile CredentialSnapshot previousSnapshot;
+        private final VerificationCache.Stats verificationCacheStats = new VerificationCache.Stats();
+        private final AuthenticatorMetrics metrics = new AuthenticatorMetrics(Time.SYSTEM);
+        private volatile FailureThrottle failureThrottle;
+        private volatile AuthenticationFailureLog failureLog;
+        private final AtomicBoolean metricsRegistered = new AtomicBoolean();
+        private volatile ObjectName mbeanName;
+
+        /**
+         * @param configs the broker configs or null if the provider is created by the warm-up
+         */
         JaasContextProvider(JaasContext.Type contextType, ListenerName listenerName, Map<String, ?> configs) {
             this.contextType = contextType;
             this.listenerName = listenerName;
-            this.configs = configs;
-            this.jaasContextRef = new AtomicReference<>(JaasContext.load(contextType, listenerName, configs));
+            this.configs = configs != null ? configs : Collections.<String, Object>emptyMap();
+            this.configured = configs != null;
+            this.configurationVersion = CONFIG_FILE_WATCH_SERVICE.configurationVersion();
+            this.snapshotRef = new AtomicReference<>(CredentialSnapshot.create(loadJaasContext(initialJaasConfiguration()), verificationCacheStats));
+            this.metrics.snapshotLoaded(snapshotRef.get());
+            updateFailureHandling(snapshotRef.get());
         }
 
         JaasContextProvider(JaasContext jaasContext) {
             this.contextType = null;
             this.listenerName = null;
             this.configs = Collections.emptyMap();
-            this.jaasContextRef = new AtomicReference<>(jaasContext);
+            this.configured = true;
+            this.configurationVersion = CONFIG_FILE_WATCH_SERVICE.configurationVersion();
+            this.snapshotRef = new AtomicReference<>(CredentialSnapshot.create(jaasContext, verificationCacheStats));
+            this.metrics.snapshotLoaded(snapshotRef.get());
+            updateFailureHandling(snapshotRef.get());
+        }
+
+        private static JaasFileConfiguration initialJaasConfiguration() {
+            try {
+                return CONFIG_FILE_WATCH_SERVICE.loadJaasConfiguration();
+            } catch (IOException e) {
+                log.warn("JAAS configuration file can not be parsed, the installed configuration is used: {}", e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Selects the context from the parsed JAAS configuration file. Client contexts, the sasl.jaas.config
+         * property and configurations not read from a file are loaded by {@link JaasContext#load}.
+         */
+        private JaasContext loadJaasContext(JaasFileConfiguration configuration) {
+            if (configuration != null && contextType == JaasContext.Type.SERVER && listenerName != null
+                    && configs.get(SaslConfigs.SASL_JAAS_CONFIG) == null) {
+                JaasContext jaasContext = configuration.serverContext(listenerName);
+                if (jaasContext != null) {
+                    return jaasContext;
+                }
+            }
+            return JaasContext.load(contextType, listenerName, configs);
         }
 
         JaasContext get() {
-            return jaasContextRef.get();
+            return snapshotRef.get().jaasContext();
+        }
+
+        /**
+         * @return the name of the listener or an empty string for a client context
+         */
+        String listener() {
+            return listenerName != null ? listenerName.value() : "";
+        }
+
+        CredentialSnapshot snapshot() {
+            return snapshotRef.get();
+        }
+
+        VerificationCache.Stats verificationCacheStats() {
+            return verificationCacheStats;
+        }
+
+        AuthenticatorMetrics metrics() {
+            return metrics;
+        }
+
+        FailureThrottle failureThrottle() {
+            return failureThrottle;
+        }
+
+        AuthenticationFailureLog failureLog() {
+            return failureLog;
+        }
+
+        /**
+         * Keeps the failure budgets and the failure log across reloads unless their options change.
+         */
+        private void updateFailureHandling(CredentialSnapshot snapshot) {
+            Map<String, Object> options = CredentialSnapshot.moduleOptions(snapshot.jaasContext());
+            FailureThrottle currentThrottle = failureThrottle;
+            if (currentThrottle == null || !currentThrottle.isConfiguredBy(options)) {
+                failureThrottle = FailureThrottle.create(options, Time.SYSTEM);
+            }
+            AuthenticationFailureLog currentLog = failureLog;
+            if (currentLog == null || !currentLog.isConfiguredBy(options)) {
+                AuthenticationFailureLog createdLog = AuthenticationFailureLog.create(options, Time.SYSTEM);
+                createdLog.scheduleSummaries();
+                failureLog = createdLog;
+                if (currentLog != null) {
+                    currentLog.close();
+                }
+            }
         }
 
         void init() {
+            start();
+            registerMetrics(configs);
+        }
+
+        /**
+         * Registers the provider for reloads and starts the watchers of its files. A change of the JAAS
+         * configuration file notified before the registration is reloaded at once.
+         */
+        void start() {
             running = true;
             CONFIG_FILE_WATCH_SERVICE.addListener(this);
             CONFIG_FILE_WATCH_SERVICE.startWatcher();
+            watchCredentialFile(snapshotRef.get());
+            if (CONFIG_FILE_WATCH_SERVICE.configurationVersion() != configurationVersion) {
+                log.debug("JAAS configuration file changed while the provider was created");
+                configFileChanged();
+            }
+        }
+
+        /**
+         * Applies the broker configs to a provider created by the warm-up without them. The credentials are
+         * loaded again if the configs select another JAAS configuration, e.g. by {@value SaslConfigs#SASL_JAAS_CONFIG}.
+         * The metrics are registered with the metric reporters of the configs.
+         */
+        void configure(Map<String, ?> configs) {
+            if (!configured) {
+                synchronized (this) {
+                    if (!configured) {
+                        this.configs = configs;
+                        if (configs.get(SaslConfigs.SASL_JAAS_CONFIG) != null) {
+                            CredentialSnapshot snapshot = CredentialSnapshot.create(loadJaasContext(null), verificationCacheStats);
+                            updateFailureHandling(snapshot);
+                            snapshotRef.set(snapshot);
+                            watchCredentialFile(snapshot);
+                            metrics.snapshotLoaded(snapshot);
+                        }
+                        configured = true;
+                    }
+                }
+            }
+            registerMetrics(configs);
+        }
+
+        /**
+         * Registers the metrics once, with the metric reporters of the configs.
+         */
+        void registerMetrics(Map<String, ?> configs) {
+            if (!metricsRegistered.get() && metricsRegistered.compareAndSet(false, true)) {
+                String listener = listener();
+                metrics.register(PlainSaslMetrics.metrics(configs), listener);
+                mbeanName = PlainSaslMetrics.registerMBean(PlainSaslMetrics.CREDENTIAL_SNAPSHOTS_TYPE, listener,
+                        this, CredentialSnapshotsMBean.class);
+            }
+        }
+
+        /**
+         * Touches the credentials of the started provider and records the time since the start of the warm-up.
+         */
+        void warmUp(long startNs) {
+            CredentialSnapshot snapshot = snapshotRef.get();
+            snapshot.warmUp();
+            double timeMs = metrics.recordWarmUp(startNs);
+            log.info("Warmed up {} credentials of listener {} in {} ms", snapshot.userCount(),
+                    listener(), String.format("%.1f", timeMs));
         }
 
         void dispose() {
             running = false;
             CONFIG_FILE_WATCH_SERVICE.removeListener(this);
+            metrics.unregister();
+            ObjectName name = mbeanName;
+            if (name != null) {
+                PlainSaslMetrics.unregisterMBean(name);
+                mbeanName = null;
+            }
+            metricsRegistered.set(false);
+        }
+
+        /**
+         * Replaces the active snapshot, which becomes the previous snapshot.
+         */
+        private void publish(CredentialSnapshot snapshot) {
+            updateFailureHandling(snapshot);
+            previousSnapshot = snapshotRef.getAndSet(snapshot);
+            watchCredentialFile(snapshot);
         }
 
         @Override
-        public void configFileChanged() {
+        public long getGeneration() {
+            return snapshotRef.get().generation();
+        }
+
+        @Override
+        public long getPreviousGeneration() {
+            CredentialSnapshot previous = previousSnapshot;
+            return previous != null ? previous.generation() : -1L;
+        }
+
+        @Override
+        public int getUserCount() {
+            return snapshotRef.get().userCount();
+        }
+
+        @Override
+        public synchronized long rollback() {
+            CredentialSnapshot previous = previousSnapshot;
+            if (previous == null) {
+                throw new IllegalStateException("No previous credentials to roll back to");
+            }
+            Object event = FlightRecorderEvents.INSTANCE.beginReload();
+            updateFailureHandling(previous);
+            CredentialSnapshot replaced = snapshotRef.getAndSet(previous);
+            previousSnapshot = null;
+            watchCredentialFile(previous);
+            if (previous.credentialDirectory() != null) {
+                // the shards changed while the snapshot was replaced were only merged into the replacing one
+                rescanShards(previous);
+            }
+            metrics.snapshotLoaded(previous);
+            if (event != null) {
+                FlightRecorderEvents.INSTANCE.commitReload(event, listener(), FlightRecorderEvents.ROLLBACK_TRIGGER,
+                        FlightRecorderEvents.RELOADED, previous.generation(), previous.userCount() - replaced.userCount());
+            }
+            log.info("Credentials rolled back from generation {} to generation {}", replaced.generation(), previous.generation());
+            return previous.generation();
+        }
+
+        private static void watchCredentialFile(CredentialSnapshot snapshot) {
+            if (snapshot.credentialFile() != null) {
+                CONFIG_FILE_WATCH_SERVICE.watchFile(snapshot.credentialFile());
+            }
+            if (snapshot.credentialDirectory() != null) {
+                CONFIG_FILE_WATCH_SERVICE.watchDirectory(snapshot.credentialDirectory());
+            }
+        }
+
+        /**
+         * Merges the current and the removed shards of the directory of the snapshot into its credentials.
+         */
+        private void rescanShards(CredentialSnapshot snapshot) {
+            ShardedCredentialStore store = (ShardedCredentialStore) snapshot.credentialStore();
+            Set<Path> files = store.shardPaths();
+            try {
+                files.addAll(ShardedCredentialStore.shardFiles(snapshot.credentialDirectory()));
+            } catch (IOException e) {
+                log.warn("Credential directory {} can not be read again: {}", snapshot.credentialDirectory(), e.toString());
+                return;
+            }
+            mergeShards(snapshot, files);
+        }
+
+        /**
+         * Merges the changed shards into the credentials of the active snapshot, if they are read from the directory.
+         */
+        @Override
+        public synchronized void credentialShardsChanged(Path directory, Set<Path> files) {
+            CredentialSnapshot snapshot = snapshotRef.get();
+            if (running && directory.equals(snapshot.credentialDirectory())) {
+                mergeShards(snapshot, files);
+            }
+        }
+
+        /**
+         * Each shard is validated by the {@link ReloadPolicy} on its own.
+         */
+        private void mergeShards(CredentialSnapshot snapshot, Set<Path> files) {
+            ShardedCredentialStore store = (ShardedCredentialStore) snapshot.credentialStore();
+            ReloadPolicy policy = ReloadPolicy.create(CredentialSnapshot.moduleOptions(snapshot.jaasContext()));
+            for (Path file : files) {
+                long startNs = metrics.nanoseconds();
+                Object event = FlightRecorderEvents.INSTANCE.beginReload();
+                String outcome = FlightRecorderEvents.FAILED;
+                int userCountDelta = 0;
+                try {
+                    ShardedCredentialStore.Shard shard = store.read(file);
+                    int users = store.size();
+                    String violation = policy.violation(users, users - store.shardSize(file) + shard.size(), shard.invalidCredentialCount());
+                    if (violation != null) {
+                        outcome = FlightRecorderEvents.REJECTED;
+                        metrics.recordReloadRejected(startNs);
+                        log.warn("Credential shard {} reload rejected: {}", file.getFileName(), violation);
+                        continue;
+                    }
+                    int previousUsers = store.update(shard);
+                    // the cached results are keyed by username and password, so the old password would still be accepted
+                    snapshot.invalidateVerificationCache();
+                    outcome = FlightRecorderEvents.RELOADED;
+                    userCountDelta = store.size() - users;
+                    metrics.recordReload(snapshot, startNs);
+                    log.info("Credential shard {} reloaded with {} users, previously {} users", file.getFileName(), shard.size(), previousUsers);
+                } catch (Exception e) {
+                    metrics.recordReloadFailure(startNs);
+                    log.warn("Credential shard {} reload failed {}", file.getFileName(), e.toString());
+                } finally {
+                    if (event != null) {
+                        FlightRecorderEvents.INSTANCE.commitReload(event, listener(), FlightRecorderEvents.CREDENTIAL_SHARD_TRIGGER,
+                                outcome, snapshot.generation(), userCountDelta);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reloads are serialized, so a reload reading an older configuration can not replace a newer snapshot.
+         */
+        @Override
+        public synchronized void configFileChanged() {
             if (running) {
+                long startNs = metrics.nanoseconds();
+                Object event = FlightRecorderEvents.INSTANCE.beginReload();
+                String outcome = FlightRecorderEvents.FAILED;
+                CredentialSnapshot active = snapshotRef.get();
+                CredentialSnapshot loaded = active;
                 try {
                     log.debug("JaasContext will be reloaded");
-                    JaasContext newContext = JaasContext.load(contextType, listenerName, configs);
-                    jaasContextRef.set(newContext);
+                    JaasContext newContext = loadJaasContext(CONFIG_FILE_WATCH_SERVICE.jaasConfiguration());
+                    // the verification cache of the previous snapshot is dropped with it
+                    CredentialSnapshot snapshot = CredentialSnapshot.create(newContext, verificationCacheStats);
+                    String violation = ReloadPolicy.create(CredentialSnapshot.moduleOptions(active.jaasContext())).violation(active, snapshot);
+                    if (violation != null) {
+                        outcome = FlightRecorderEvents.REJECTED;
+                        metrics.recordReloadRejected(startNs);
+                        log.warn("JaasContext reload rejected, generation {} is kept: {}", active.generation(), violation);
+                        return;
+                    }
+                    publish(snapshot);
+                    outcome = FlightRecorderEvents.RELOADED;
+                    loaded = snapshot;
+                    metrics.recordReload(snapshot, startNs);
                 } catch (Exception e) {
+                    metrics.recordReloadFailure(startNs);
                     log.warn("JaasContext reload failed {}", e.getMessage());
+                } finally {
+                    if (event != null) {
+                        FlightRecorderEvents.INSTANCE.commitReload(event, listener(), FlightRecorderEvents.CONFIGURATION_TRIGGER,
+                                outcome, loaded.generation(), loaded.userCount() - active.userCount());
+                    }
                 }
             }
         }
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Validation of reloaded credentials before they replace the active credentials of a listener, so that a truncated
+ * or half-written file does not lock out the clients. Configured with the options of the login module of the
+ * active credentials, so a reload can not disable its own validation:
+ * <ul>
+ * <li><code>reload.min.users</code> - minimum number of users of reloaded credentials (default 0)</li>
+ * <li><code>reload.max.removed.percent</code> - maximum percentage by which a reload may decrease the number of users (default 100)</li>
+ * <li><code>reload.invalid.credentials</code> - <code>ignore</code> skips invalid credentials with a warning,
+ * <code>reject</code> rejects the reload (default <code>ignore</code>)</li>
+ * </ul>
+ * The numbers of users are not checked for the credentials of a {@link CredentialSource}, which are loaded on demand.
+ * A JAAS file with a syntax error is never loaded.
+ */
+final class ReloadPolicy {
+
+    static final String MIN_USERS_CONFIG = "reload.min.users";
+    static final String MAX_REMOVED_PERCENT_CONFIG = "reload.max.removed.percent";
+    static final String INVALID_CREDENTIALS_CONFIG = "reload.invalid.credentials";
+    static final String IGNORE_INVALID_CREDENTIALS = "ignore";
+    static final String REJECT_INVALID_CREDENTIALS = "reject";
+
+    private final int minUsers;
+    private final int maxRemovedPercent;
+    private final boolean rejectInvalidCredentials;
+
+    private ReloadPolicy(int minUsers, int maxRemovedPercent, boolean rejectInvalidCredentials) {
+        this.minUsers = minUsers;
+        this.maxRemovedPercent = maxRemovedPercent;
+        this.rejectInvalidCredentials = rejectInvalidCredentials;
+    }
+
+    static ReloadPolicy create(Map<String, ?> options) {
+        int minUsers = ModuleOptions.intOption(options, MIN_USERS_CONFIG, 0);
+        int maxRemovedPercent = ModuleOptions.intOption(options, MAX_REMOVED_PERCENT_CONFIG, 100);
+        if (minUsers < 0 || maxRemovedPercent < 0 || maxRemovedPercent > 100) {
+            throw new IllegalArgumentException("Option " + MIN_USERS_CONFIG + " must not be negative, "
+                    + MAX_REMOVED_PERCENT_CONFIG + " must be between 0 and 100");
+        }
+        Object invalidCredentials = options.get(INVALID_CREDENTIALS_CONFIG);
+        String policy = invalidCredentials == null ? IGNORE_INVALID_CREDENTIALS : invalidCredentials.toString().trim().toLowerCase(Locale.ROOT);
+        if (!IGNORE_INVALID_CREDENTIALS.equals(policy) && !REJECT_INVALID_CREDENTIALS.equals(policy)) {
+            throw new IllegalArgumentException("Option " + INVALID_CREDENTIALS_CONFIG + " must be " + IGNORE_INVALID_CREDENTIALS
+                    + " or " + REJECT_INVALID_CREDENTIALS + ", but it is: " + invalidCredentials);
+        }
+        return new ReloadPolicy(minUsers, maxRemovedPercent, REJECT_INVALID_CREDENTIALS.equals(policy));
+    }
+
+    /**
+     * @return the reason why the reloaded credentials must not replace the active credentials or null if they are valid
+     */
+    String violation(CredentialSnapshot active, CredentialSnapshot reloaded) {
+        if (reloaded.credentialStore() instanceof CachingCredentialStore) {
+            return violation(-1, -1, reloaded.invalidCredentialCount());
+        }
+        int activeUsers = active.credentialStore() instanceof CachingCredentialStore ? -1 : active.userCount();
+        return violation(activeUsers, reloaded.userCount(), reloaded.invalidCredentialCount());
+    }
+
+    /**
+     * @param activeUsers users of the active credentials, -1 if unknown
+     * @param reloadedUsers users of the reloaded credentials, -1 if unknown
+     * @return the reason why the reloaded credentials must not replace the active credentials or null if they are valid
+     */
+    String violation(int activeUsers, int reloadedUsers, int invalidCredentials) {
+        if (rejectInvalidCredentials && invalidCredentials > 0) {
+            return invalidCredentials + " credentials are invalid";
+        }
+        if (reloadedUsers < 0) {
+            return null;
+        }
+        if (reloadedUsers < minUsers) {
+            return reloadedUsers + " users are less than the minimum of " + minUsers;
+        }
+        long removed = activeUsers - reloadedUsers;
+        if (activeUsers >= 0 && removed * 100 > (long) maxRemovedPercent * activeUsers) {
+            return "the number of users decreases from " + activeUsers + " to " + reloadedUsers
+                    + ", more than " + maxRemovedPercent + "%";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches a directory of credential shards and notifies the listener of the shard files which changed.
+ * <p>
+ * An event in the directory, including the swap of the <code>..data</code> link of a Kubernetes Secret, starts
+ * the quiet period of {@link ConfigFileWatcher}. After it the shard files are listed and only the files whose
+ * identity, size or modification time differ from the last scan are read; a file is reported if the SHA-256
+ * checksum of its content changed, or if it was created or removed. A file modified shortly before the last scan is
+ * always read, as a further write within the resolution of the modification time would not change its attributes.
+ */
+final class ShardDirectoryWatcher implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(ShardDirectoryWatcher.class);
+
+    // interval of retries to register a missing directory
+    private static final long RETRY_MS = 1000L;
+    // files modified within this time before a scan are read by the next scan
+    private static final long RACY_MS = 2000L;
+
+    private final Path directory;
+    private final CredentialShardListener listener;
+    private final long quietPeriodMs;
+
+    private Map<Path, ShardState> states = new HashMap<>();
+    private long scanTimeMs;
+
+    private volatile boolean stop;
+
+    ShardDirectoryWatcher(Path directory, CredentialShardListener listener) {
+        this(directory, listener, Long.getLong(ConfigFileWatcher.QUIET_PERIOD_MS_PROP, ConfigFileWatcher.DEFAULT_QUIET_PERIOD_MS));
+    }
+
+    ShardDirectoryWatcher(Path directory, CredentialShardListener listener, long quietPeriodMs) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.listener = listener;
+        this.quietPeriodMs = Math.max(0L, quietPeriodMs);
+    }
+
+    @Override
+    public void run() {
+        log.info("Starting watching credential directory {}", directory);
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            scan();
+            WatchKey registration = register(watchService);
+            // deadline of the pending scan, 0 if no scan is pending
+            long scanDeadlineNs = 0L;
+
+            while (!stop) {
+                WatchKey key;
+                try {
+                    if (scanDeadlineNs != 0L) {
+                        long timeoutMs = TimeUnit.NANOSECONDS.toMillis(scanDeadlineNs - System.nanoTime());
+                        if (timeoutMs <= 0L) {
+                            Object event = FlightRecorderEvents.INSTANCE.beginWatcherWakeUp();
+                            scanDeadlineNs = 0L;
+                            if (registration == null) {
+                                registration = register(watchService);
+                            }
+                            Set<Path> changed = scan();
+                            if (!changed.isEmpty()) {
+                                listener.credentialShardsChanged(directory, changed);
+                            }
+                            if (event != null) {
+                                FlightRecorderEvents.INSTANCE.commitWatcherWakeUp(event, directory.toString(),
+                                        ConfigFileWatcher.QUIET_PERIOD_WAKE_UP, 0, 0, !changed.isEmpty());
+                            }
+                            continue;
+                        }
+                        key = watchService.poll(timeoutMs, TimeUnit.MILLISECONDS);
+                    } else if (registration == null) {
+                        key = watchService.poll(RETRY_MS, TimeUnit.MILLISECONDS);
+                        if (key == null && (registration = register(watchService)) != null) {
+                            scanDeadlineNs = System.nanoTime();
+                        }
+                    } else {
+                        key = watchService.take();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (key == null) {
+                    continue;
+                }
+                Object event = FlightRecorderEvents.INSTANCE.beginWatcherWakeUp();
+                int events = 0;
+                for (WatchEvent<?> watchEvent : key.pollEvents()) {
+                    log.debug("Change {} on credential shard {}", watchEvent.kind(), watchEvent.context());
+                    events++;
+                    // every event extends the quiet period
+                    scanDeadlineNs = deadline();
+                }
+                if (event != null) {
+                    FlightRecorderEvents.INSTANCE.commitWatcherWakeUp(event, directory.toString(),
+                            ConfigFileWatcher.FILE_EVENT_WAKE_UP, events, 0, false);
+                }
+                if (!key.reset()) {
+                    log.debug("Credential directory {} is no longer watched", directory);
+                    registration = null;
+                    scanDeadlineNs = deadline();
+                }
+            }
+        } catch (Throwable t) {
+            log.error("Unexpected error while watching the credential directory {}", directory, t);
+        } finally {
+            log.info("Credential directory watcher will be stopped");
+        }
+    }
+
+    private long deadline() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(quietPeriodMs);
+        return deadline == 0L ? 1L : deadline;
+    }
+
+    private WatchKey register(WatchService watchService) {
+        try {
+            WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            log.debug("Watching credential directory {}", directory);
+            return key;
+        } catch (IOException e) {
+            log.debug("Credential directory {} can not be watched: {}", directory, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @return the shard files which were created, removed or whose content changed since the last scan
+     */
+    Set<Path> scan() {
+        long startMs = System.currentTimeMillis();
+        Set<Path> changed = new TreeSet<>();
+        Map<Path, ShardState> current = new HashMap<>();
+        List<Path> files;
+        try {
+            files = ShardedCredentialStore.shardFiles(directory);
+        } catch (IOException e) {
+            log.warn("Credential directory {} can not be listed: {}", directory, e.toString());
+            return changed;
+        }
+        for (Path file : files) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // removed since it was listed
+                continue;
+            }
+            List<Object> version = Arrays.asList(attributes.fileKey(), attributes.size(), attributes.lastModifiedTime());
+            ShardState previous = states.get(file);
+            if (previous != null && previous.version.equals(version)
+                    && attributes.lastModifiedTime().toMillis() + RACY_MS < scanTimeMs) {
+                current.put(file, previous);
+                continue;
+            }
+            byte[] checksum = ConfigFileWatcher.checksum(file);
+            if (checksum == null) {
+                continue;
+            }
+            current.put(file, new ShardState(version, checksum));
+            if (previous == null || !Arrays.equals(previous.checksum, checksum)) {
+                changed.add(file);
+            }
+        }
+        for (Path file : states.keySet()) {
+            if (!current.containsKey(file)) {
+                changed.add(file);
+            }
+        }
+        states = current;
+        scanTimeMs = startMs;
+        return changed;
+    }
+
+    /**
+     * Stops the watcher, the watcher thread must be interrupted to stop waiting for events.
+     */
+    void stop() {
+        this.stop = true;
+    }
+
+    private static final class ShardState {
+        private final List<Object> version;
+        private final byte[] checksum;
+
+        ShardState(List<Object> version, byte[] checksum) {
+            this.version = version;
+            this.checksum = checksum;
+        }
+    }
+}
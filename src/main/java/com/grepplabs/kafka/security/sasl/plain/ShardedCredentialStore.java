@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Credentials of a directory of shards, e.g. a file per tenant or a Kubernetes Secret with a key per team.
+ * Each regular file of the directory is a users file with a line <code>username=credential</code> per user
+ * in the properties format, hidden files like the <code>..data</code> link of a mounted Secret are ignored.
+ * <p>
+ * The users of all shards are merged into one concurrent index. A changed shard is parsed and merged into the
+ * index on its own, so the cost of its reload depends on the size of the shard and not on the number of users of
+ * the directory; lookups are not blocked meanwhile. A username configured by several shards is taken from the
+ * shard whose file name sorts first.
+ */
+final class ShardedCredentialStore implements CredentialStore {
+    private static final Logger log = LoggerFactory.getLogger(ShardedCredentialStore.class);
+
+    private final Path directory;
+    private final PasswordVerifiers verifiers;
+    private final ConcurrentMap<String, Owned> index = new ConcurrentHashMap<>();
+    // parsed shards sorted by file name, guarded by this
+    private final Map<Path, Map<String, Credential>> shards = new TreeMap<>();
+    private int invalidCredentialCount;
+
+    private ShardedCredentialStore(Path directory, PasswordVerifiers verifiers) {
+        this.directory = directory;
+        this.verifiers = verifiers;
+    }
+
+    /**
+     * Reads all shards of the directory.
+     *
+     * @throws IllegalArgumentException if the directory can not be read
+     */
+    static ShardedCredentialStore open(Path directory, PasswordVerifiers verifiers) {
+        ShardedCredentialStore store = new ShardedCredentialStore(directory.toAbsolutePath().normalize(), verifiers);
+        try {
+            for (Path file : shardFiles(store.directory)) {
+                Shard shard = store.read(file);
+                store.invalidCredentialCount += shard.invalidCredentialCount;
+                store.update(shard);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Credential directory " + directory + " can not be read: " + e);
+        }
+        return store;
+    }
+
+    /**
+     * @return the regular files of the directory which are not hidden, sorted by name
+     */
+    static List<Path> shardFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (!file.getFileName().toString().startsWith(".") && Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Parses a shard, a missing file is an empty shard. Invalid credentials are ignored with a warning.
+     */
+    Shard read(Path file) throws IOException {
+        Map<String, String> configured;
+        try {
+            configured = CredentialFileCompiler.readUsersFile(file);
+        } catch (NoSuchFileException e) {
+            configured = Collections.emptyMap();
+        }
+        Map<String, Credential> credentials = new HashMap<>();
+        int invalid = 0;
+        for (Map.Entry<String, String> entry : configured.entrySet()) {
+            try {
+                credentials.put(entry.getKey(), verifiers.parse(entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                invalid++;
+                log.warn("Credential of username {} in {} is ignored: {}", entry.getKey(), file.getFileName(), e.getMessage());
+            }
+        }
+        return new Shard(file, credentials, invalid);
+    }
+
+    /**
+     * Replaces the users of the shard in the index, an empty shard removes the shard.
+     *
+     * @return the number of users of the previous shard
+     */
+    synchronized int update(Shard shard) {
+        Path file = shard.file;
+        Map<String, Credential> previous = shards.get(file);
+        if (shard.credentials.isEmpty()) {
+            shards.remove(file);
+        } else {
+            shards.put(file, shard.credentials);
+        }
+        if (previous != null) {
+            for (String username : previous.keySet()) {
+                Owned owned = index.get(username);
+                if (!shard.credentials.containsKey(username) && owned != null && owned.shard.equals(file)) {
+                    reassign(username);
+                }
+            }
+        }
+        for (Map.Entry<String, Credential> entry : shard.credentials.entrySet()) {
+            Owned owned = index.get(entry.getKey());
+            if (owned == null || owned.shard.compareTo(file) >= 0) {
+                index.put(entry.getKey(), new Owned(file, entry.getValue()));
+            }
+        }
+        return previous == null ? 0 : previous.size();
+    }
+
+    /**
+     * Assigns a username removed from its shard to the first other shard which configures it.
+     */
+    private void reassign(String username) {
+        for (Map.Entry<Path, Map<String, Credential>> entry : shards.entrySet()) {
+            Credential credential = entry.getValue().get(username);
+            if (credential != null) {
+                index.put(username, new Owned(entry.getKey(), credential));
+                return;
+            }
+        }
+        index.remove(username);
+    }
+
+    /**
+     * @return the files of the shards with users
+     */
+    synchronized Set<Path> shardPaths() {
+        return new TreeSet<>(shards.keySet());
+    }
+
+    /**
+     * @return the number of users of the shard
+     */
+    synchronized int shardSize(Path file) {
+        Map<String, Credential> shard = shards.get(file);
+        return shard == null ? 0 : shard.size();
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of credentials ignored as they are invalid when the directory was opened
+     */
+    int invalidCredentialCount() {
+        return invalidCredentialCount;
+    }
+
+    @Override
+    public Credential credential(byte[] username, int offset, int length) {
+        Owned owned = index.get(new String(username, offset, length, StandardCharsets.UTF_8));
+        return owned == null ? null : owned.credential;
+    }
+
+    /**
+     * The index is a map which changes in place, so the membership test is exact.
+     */
+    @Override
+    public boolean mightContain(byte[] username, int offset, int length) {
+        return index.containsKey(new String(username, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public int warmUp() {
+        return credential(new byte[0], 0, 0) == null ? 0 : 1;
+    }
+
+    /**
+     * Parsed users of a shard file.
+     */
+    static final class Shard {
+        private final Path file;
+        private final Map<String, Credential> credentials;
+        private final int invalidCredentialCount;
+
+        Shard(Path file, Map<String, Credential> credentials, int invalidCredentialCount) {
+            this.file = file;
+            this.credentials = credentials;
+            this.invalidCredentialCount = invalidCredentialCount;
+        }
+
+        Path file() {
+            return file;
+        }
+
+        int size() {
+            return credentials.size();
+        }
+
+        int invalidCredentialCount() {
+            return invalidCredentialCount;
+        }
+    }
+
+    private static final class Owned {
+        private final Path shard;
+        private final Credential credential;
+
+        Owned(Path shard, Credential credential) {
+            this.shard = shard;
+            this.credential = credential;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter striped over padded cells, so concurrent handshakes on different threads do not
+ * contend on a single cache line. The sum is only consistent when no update is in progress.
+ */
+final class StripedCounter {
+
+    static final int STRIPES = stripes();
+    // 16 longs are 128 bytes, which keeps two cells off the same (adjacent) cache line
+    static final int PADDING = 16;
+
+    private static final int STRIPE_SHIFT = 32 - Integer.numberOfTrailingZeros(STRIPES);
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    void increment() {
+        add(1L);
+    }
+
+    void add(long value) {
+        cells.getAndAdd(stripe() * PADDING, value);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the stripe of the current thread
+     */
+    static int stripe() {
+        if (STRIPES == 1) {
+            return 0;
+        }
+        long id = Thread.currentThread().getId();
+        // Fibonacci hashing spreads the sequential thread ids over the stripes
+        return ((int) (id ^ (id >>> 32)) * 0x9E3779B9) >>> STRIPE_SHIFT;
+    }
+
+    private static int stripes() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        // next power of two of the processors, at most 16
+        return processors <= 1 ? 1 : Math.min(Integer.highestOneBit(processors - 1) << 1, 16);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket implemented as a generic cell rate algorithm: a single theoretical arrival time,
+ * advanced by the emission interval for every taken token and compared with the current time, replaces
+ * the token count and the refill timestamp, so a token is taken with one compare-and-set.
+ */
+final class TokenBucket {
+
+    private final long intervalNs;
+    private final long toleranceNs;
+    private final AtomicLong arrivalNs;
+
+    /**
+     * @param burst      number of tokens of a full bucket
+     * @param intervalNs time to refill one token in nanoseconds
+     * @param nowNs      current time, the bucket starts full
+     */
+    TokenBucket(int burst, long intervalNs, long nowNs) {
+        this.intervalNs = intervalNs;
+        this.toleranceNs = burst * intervalNs;
+        this.arrivalNs = new AtomicLong(nowNs);
+    }
+
+    /**
+     * @return true if no token is left
+     */
+    boolean isEmpty(long nowNs) {
+        return Math.max(arrivalNs.get(), nowNs) + intervalNs - nowNs > toleranceNs;
+    }
+
+    /**
+     * Takes a token if one is left.
+     *
+     * @return false if no token is left
+     */
+    boolean tryTake(long nowNs) {
+        while (true) {
+            long current = arrivalNs.get();
+            long next = Math.max(current, nowNs) + intervalNs;
+            if (next - nowNs > toleranceNs) {
+                return false;
+            }
+            if (arrivalNs.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if all tokens are refilled, a full bucket is equivalent to a new one
+     */
+    boolean isFull(long nowNs) {
+        return arrivalNs.get() - nowNs <= 0;
+    }
+}
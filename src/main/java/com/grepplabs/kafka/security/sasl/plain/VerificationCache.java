@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.utils.Time;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of recent password verification results, so that reconnecting clients do not pay
+ * for an expensive password hash on every handshake. Successful and failed verifications are cached.
+ * <p>
+ * Entries are keyed by an HMAC-SHA256 of username and password with a random per-process key, the password
+ * itself is never stored. A cache belongs to a {@link CredentialSnapshot}, so every reload starts with an
+ * empty cache; a change of the credentials of the snapshot in place {@link #invalidate() invalidates} it. Configured with the options of the login module:
+ * <ul>
+ * <li><code>credential.cache.max.entries</code> - maximum number of entries, 0 disables the cache</li>
+ * <li><code>credential.cache.ttl.ms</code> - time to live of an entry</li>
+ * </ul>
+ * Cheap schemes (PLAIN, HMAC-SHA256) are not cached.
+ */
+final class VerificationCache {
+
+    static final String MAX_ENTRIES_CONFIG = "credential.cache.max.entries";
+    static final String TTL_MS_CONFIG = "credential.cache.ttl.ms";
+    static final int DEFAULT_MAX_ENTRIES = 10000;
+    static final int DEFAULT_TTL_MS = 60000;
+
+    private static final int SEGMENTS = 16;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte[] KEY = new byte[32];
+    private static final ThreadLocal<Mac> MAC = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(new SecretKeySpec(KEY, ALGORITHM));
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(ALGORITHM + " is not available", e);
+            }
+        }
+    };
+
+    static {
+        new SecureRandom().nextBytes(KEY);
+    }
+
+    private final Time time;
+    private final long ttlNanos;
+    private final Segment[] segments;
+    private final Stats stats;
+    private final AtomicLong version = new AtomicLong();
+
+    VerificationCache(int maxEntries, long ttlMs, Time time, Stats stats) {
+        this.time = time;
+        this.ttlNanos = ttlMs * 1000000L;
+        this.stats = stats;
+        if (maxEntries > 0) {
+            int segmentCount = Math.min(SEGMENTS, maxEntries);
+            this.segments = new Segment[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = new Segment((maxEntries + segmentCount - 1) / segmentCount, stats);
+            }
+        } else {
+            this.segments = new Segment[0];
+        }
+    }
+
+    static VerificationCache create(Map<String, ?> options, Stats stats) {
+        return new VerificationCache(ModuleOptions.intOption(options, MAX_ENTRIES_CONFIG, DEFAULT_MAX_ENTRIES),
+                ModuleOptions.intOption(options, TTL_MS_CONFIG, DEFAULT_TTL_MS), Time.SYSTEM, stats);
+    }
+
+    boolean isCacheable(Credential credential) {
+        if (segments.length == 0) {
+            return false;
+        }
+        String scheme = credential.scheme();
+        return !PlainPasswordVerifier.SCHEME.equals(scheme) && !HmacSha256PasswordVerifier.SCHEME.equals(scheme);
+    }
+
+    /**
+     * @return the cached verification result or null
+     */
+    Boolean get(Key key) {
+        Segment segment = segment(key);
+        synchronized (segment) {
+            CachedResult entry = segment.get(key);
+            if (entry != null) {
+                if (time.nanoseconds() - entry.createdNanos < ttlNanos) {
+                    stats.hits.incrementAndGet();
+                    return entry.verified;
+                }
+                segment.remove(key);
+                stats.evictions.incrementAndGet();
+            }
+        }
+        stats.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the result unless the cache was invalidated since the version was read.
+     *
+     * @param version the {@link #version()} read before the credential was looked up
+     */
+    void put(Key key, boolean verified, long version) {
+        Segment segment = segment(key);
+        synchronized (segment) {
+            if (version == this.version.get()) {
+                segment.put(key, new CachedResult(verified, time.nanoseconds()));
+            }
+        }
+    }
+
+    /**
+     * @return the number of invalidations, read before a credential is looked up
+     */
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * Removes all results after a credential changed. A result of a credential looked up before is not cached any more.
+     */
+    void invalidate() {
+        version.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segment(Key key) {
+        return segments[(key.hashCode() & Integer.MAX_VALUE) % segments.length];
+    }
+
+    static Key key(byte[] bytes, int usernameOffset, int usernameLength, int passwordOffset, int passwordLength) {
+        Mac mac = MAC.get();
+        mac.update(bytes, usernameOffset, usernameLength);
+        // the username cannot contain NUL
+        mac.update((byte) 0);
+        mac.update(bytes, passwordOffset, passwordLength);
+        return new Key(mac.doFinal());
+    }
+
+    static final class Key {
+        private final byte[] digest;
+        private final int hash;
+
+        Key(byte[] digest) {
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return Arrays.equals(digest, ((Key) o).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Counters shared by the caches of all snapshots of a JaasContextProvider.
+     */
+    static final class Stats {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+
+        long hits() {
+            return hits.get();
+        }
+
+        long misses() {
+            return misses.get();
+        }
+
+        long evictions() {
+            return evictions.get();
+        }
+    }
+
+    private static final class CachedResult {
+        private final boolean verified;
+        private final long createdNanos;
+
+        CachedResult(boolean verified, long createdNanos) {
+            this.verified = verified;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<Key, CachedResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+        private final transient Stats stats;
+
+        Segment(int maxEntries, Stats stats) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+            this.stats = stats;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+            if (size() > maxEntries) {
+                stats.evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events of the module, compiled on JDK 11 or newer and loaded by {@link FlightRecorderEvents}.
+ * The events are disabled by default and do not record stack traces.
+ */
+final class JfrFlightRecorderEvents extends FlightRecorderEvents {
+    private static final String CATEGORY = "Kafka SASL/PLAIN";
+
+    private final EventType handshakeType = EventType.getEventType(HandshakeEvent.class);
+    private final EventType reloadType = EventType.getEventType(ReloadEvent.class);
+    private final EventType configurationChangeType = EventType.getEventType(ConfigurationChangeEvent.class);
+    private final EventType watcherWakeUpType = EventType.getEventType(WatcherWakeUpEvent.class);
+
+    @Name("com.grepplabs.kafka.sasl.plain.Handshake")
+    @Label("SASL/PLAIN Handshake")
+    @Description("Evaluation of a SASL/PLAIN response")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class HandshakeEvent extends Event {
+        @Label("Listener")
+        String listener;
+        @Label("Mechanism")
+        String mechanism;
+        @Label("Outcome")
+        String outcome;
+        @Label("Parse Duration")
+        @Timespan
+        long parseDuration;
+        @Label("Lookup Duration")
+        @Description("Username filter and credential lookup")
+        @Timespan
+        long lookupDuration;
+        @Label("Verify Duration")
+        @Timespan
+        long verifyDuration;
+    }
+
+    @Name("com.grepplabs.kafka.sasl.plain.Reload")
+    @Label("SASL/PLAIN Credential Reload")
+    @Description("Reload of the credentials of a listener, the duration is the time of reading and parsing them")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ReloadEvent extends Event {
+        @Label("Listener")
+        String listener;
+        @Label("Trigger")
+        String trigger;
+        @Label("Outcome")
+        String outcome;
+        @Label("Generation")
+        long generation;
+        @Label("User Count Delta")
+        int userCountDelta;
+    }
+
+    @Name("com.grepplabs.kafka.sasl.plain.ConfigurationChange")
+    @Label("SASL/PLAIN Configuration Change")
+    @Description("Change of the JAAS configuration file until the last listener reloaded")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ConfigurationChangeEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Listeners")
+        int listeners;
+        @Label("Parse Duration")
+        @Timespan
+        long parseDuration;
+        @Label("Fan-out Duration")
+        @Description("Time from the parsed file until the last listener reloaded")
+        @Timespan
+        long fanOutDuration;
+    }
+
+    @Name("com.grepplabs.kafka.sasl.plain.WatcherWakeUp")
+    @Label("SASL/PLAIN Watcher Wake-up")
+    @Description("Wake-up of a file watcher by file events or by the end of the quiet period")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class WatcherWakeUpEvent extends Event {
+        @Label("Path")
+        String path;
+        @Label("Reason")
+        String reason;
+        @Label("Events")
+        int events;
+        @Label("Ignored Events")
+        @Description("Events of other files of the watched directories")
+        int ignoredEvents;
+        @Label("Changed")
+        boolean changed;
+    }
+
+    @Override
+    Object beginHandshake() {
+        if (!handshakeType.isEnabled()) {
+            return null;
+        }
+        HandshakeEvent event = new HandshakeEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void commitHandshake(Object event, String listener, String mechanism, String outcome,
+                         long startNs, long parsedNs, long lookedUpNs, long verifiedNs) {
+        HandshakeEvent handshake = (HandshakeEvent) event;
+        handshake.end();
+        if (handshake.shouldCommit()) {
+            handshake.listener = listener;
+            handshake.mechanism = mechanism;
+            handshake.outcome = outcome;
+            handshake.parseDuration = duration(startNs, parsedNs);
+            handshake.lookupDuration = duration(parsedNs, lookedUpNs);
+            handshake.verifyDuration = duration(lookedUpNs, verifiedNs);
+            handshake.commit();
+        }
+    }
+
+    @Override
+    Object beginReload() {
+        if (!reloadType.isEnabled()) {
+            return null;
+        }
+        ReloadEvent event = new ReloadEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void commitReload(Object event, String listener, String trigger, String outcome, long generation, int userCountDelta) {
+        ReloadEvent reload = (ReloadEvent) event;
+        reload.end();
+        if (reload.shouldCommit()) {
+            reload.listener = listener;
+            reload.trigger = trigger;
+            reload.outcome = outcome;
+            reload.generation = generation;
+            reload.userCountDelta = userCountDelta;
+            reload.commit();
+        }
+    }
+
+    @Override
+    Object beginConfigurationChange() {
+        if (!configurationChangeType.isEnabled()) {
+            return null;
+        }
+        ConfigurationChangeEvent event = new ConfigurationChangeEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void commitConfigurationChange(Object event, String file, int listeners, long startNs, long parsedNs) {
+        long endNs = System.nanoTime();
+        ConfigurationChangeEvent change = (ConfigurationChangeEvent) event;
+        change.end();
+        if (change.shouldCommit()) {
+            change.file = file;
+            change.listeners = listeners;
+            change.parseDuration = duration(startNs, parsedNs);
+            change.fanOutDuration = duration(parsedNs, endNs);
+            change.commit();
+        }
+    }
+
+    @Override
+    Object beginWatcherWakeUp() {
+        if (!watcherWakeUpType.isEnabled()) {
+            return null;
+        }
+        WatcherWakeUpEvent event = new WatcherWakeUpEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void commitWatcherWakeUp(Object event, String path, String reason, int events, int ignoredEvents, boolean changed) {
+        WatcherWakeUpEvent wakeUp = (WatcherWakeUpEvent) event;
+        wakeUp.end();
+        if (wakeUp.shouldCommit()) {
+            wakeUp.path = path;
+            wakeUp.reason = reason;
+            wakeUp.events = events;
+            wakeUp.ignoredEvents = ignoredEvents;
+            wakeUp.changed = changed;
+            wakeUp.commit();
+        }
+    }
+
+    private static long duration(long startNs, long endNs) {
+        return startNs != 0L && endNs != 0L ? endNs - startNs : 0L;
+    }
+}
@@ -50,6 +50,7 @@ public class AbstractJaasContextTest {
         jaasConfigFile.deleteOnExit();
         System.setProperty(JaasUtils.JAVA_LOGIN_CONFIG_PARAM, jaasConfigFile.toString());
         Configuration.setConfiguration(null);
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
     }
 
     @After
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.kafka.common.security.JaasContext;
+import org.apache.kafka.common.security.authenticator.SaslServerCallbackHandler;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bytes allocated per handshake of createSaslServer, evaluateResponse and dispose, measured with
+ * com.sun.management.ThreadMXBean. The tests fail when a scenario exceeds its allocation budget and are
+ * skipped if the JVM does not measure the allocated bytes of a thread. The module logs at INFO like a broker
+ * does, the DEBUG level of the test logging configuration would measure the formatting of the log lines.
+ */
+public class AllocationBudgetTest extends AbstractJaasContextTest {
+
+    // budgets in bytes per handshake, about twice the allocation measured after the warm-up
+    private static final long SUCCESS_BUDGET = 400;
+    private static final long WRONG_PASSWORD_BUDGET = 1800;
+    private static final long UNKNOWN_USER_BUDGET = 1800;
+    private static final long MALFORMED_BUDGET = 2300;
+
+    private static final int USERS = 1000;
+    private static final int WARMUP_HANDSHAKES = 20000;
+    private static final int MEASURED_HANDSHAKES = 10000;
+
+    private final PlainSaslServer.PlainSaslServerFactory factory = new PlainSaslServer.PlainSaslServerFactory();
+    private final Map<String, Object> props = Collections.emptyMap();
+    private final Logger moduleLogger = Logger.getLogger(PlainSaslServer.class.getPackage().getName());
+    private Level moduleLevel;
+    private com.sun.management.ThreadMXBean threadMXBean;
+    private SaslServerCallbackHandler callbackHandler;
+
+    @Before
+    @Override
+    public void setUp() throws IOException {
+        super.setUp();
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        moduleLevel = moduleLogger.getLevel();
+        moduleLogger.setLevel(Level.INFO);
+
+        List<String> lines = new ArrayList<>();
+        lines.add("KafkaServer {");
+        lines.add(PlainLoginModule.class.getName() + " required");
+        for (int i = 0; i < USERS; i++) {
+            lines.add("user_user" + i + "=\"user" + i + "-secret\"");
+        }
+        lines.add(";};");
+        writeConfiguration(lines);
+        JaasContext jaasContext = JaasContext.load(JaasContext.Type.SERVER, new ListenerName("allocation"), props);
+        callbackHandler = new SaslServerCallbackHandler(jaasContext, null);
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        moduleLogger.setLevel(moduleLevel);
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+        PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+        super.tearDown();
+    }
+
+    @Test
+    public void testSuccess() throws Exception {
+        assertBudget("success", saslMessage("user500", "user500-secret"), SUCCESS_BUDGET);
+    }
+
+    @Test
+    public void testWrongPassword() throws Exception {
+        assertBudget("wrong password", saslMessage("user500", "wrong-secret"), WRONG_PASSWORD_BUDGET);
+    }
+
+    @Test
+    public void testUnknownUser() throws Exception {
+        assertBudget("unknown user", saslMessage("unknown", "unknown-secret"), UNKNOWN_USER_BUDGET);
+    }
+
+    @Test
+    public void testMalformedFrame() throws Exception {
+        assertBudget("malformed frame", "user500-secret".getBytes(StandardCharsets.UTF_8), MALFORMED_BUDGET);
+    }
+
+    private void assertBudget(String scenario, byte[] response, long budget) throws SaslException {
+        handshakes(response, WARMUP_HANDSHAKES);
+        long threadId = Thread.currentThread().getId();
+        long start = threadMXBean.getThreadAllocatedBytes(threadId);
+        handshakes(response, MEASURED_HANDSHAKES);
+        long perHandshake = (threadMXBean.getThreadAllocatedBytes(threadId) - start) / MEASURED_HANDSHAKES;
+        System.out.printf("Allocation of a handshake with %s: %d bytes%n", scenario, perHandshake);
+        assertTrue("Allocation of a handshake with " + scenario + " is " + perHandshake + " bytes, budget " + budget,
+                perHandshake <= budget);
+    }
+
+    private void handshakes(byte[] response, int count) throws SaslException {
+        for (int i = 0; i < count; i++) {
+            SaslServer server = factory.createSaslServer(PlainSaslServer.PLAIN_MECHANISM,
+                    PlainSaslServer.PlainSaslServerFactory.KAFKA_SASL_PROTOCOL, "localhost", props, callbackHandler);
+            try {
+                server.evaluateResponse(response);
+            } catch (SaslException ignore) {
+                // expected for the failure scenarios
+            } finally {
+                server.dispose();
+            }
+        }
+    }
+
+    private static byte[] saslMessage(String username, String password) {
+        return ("\u0000" + username + "\u0000" + password).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AuthenticationFailureLogTest {
+
+    private final VerificationCacheTest.MockTime time = new VerificationCacheTest.MockTime();
+    private final CapturingAppender appender = new CapturingAppender();
+
+    @Before
+    public void setUp() {
+        Logger.getLogger(AuthenticationFailureLog.class).addAppender(appender);
+    }
+
+    @After
+    public void tearDown() {
+        Logger.getLogger(AuthenticationFailureLog.class).removeAppender(appender);
+    }
+
+    @Test
+    public void testFirstOccurrencesAreLogged() {
+        AuthenticationFailureLog failureLog = AuthenticationFailureLog.create(Collections.<String, Object>emptyMap(), time);
+
+        for (int i = 0; i < 100; i++) {
+            failureLog.record(AuthenticationFailureLog.Failure.INVALID_PASSWORD, "alice");
+        }
+        failureLog.record(AuthenticationFailureLog.Failure.INVALID_USERNAME, "bob");
+
+        assertEquals(AuthenticationFailureLog.DEFAULT_FIRST_OCCURRENCES + 1, appender.messages.size());
+        assertEquals("Authentication failed: Invalid password for username alice", appender.messages.get(0));
+        assertEquals("Authentication failed: Invalid username bob", appender.messages.get(AuthenticationFailureLog.DEFAULT_FIRST_OCCURRENCES));
+        assertArrayEquals(new long[]{1, 100, 95}, failureLog.counts());
+    }
+
+    @Test
+    public void testSummary() {
+        AuthenticationFailureLog failureLog = AuthenticationFailureLog.create(options(AuthenticationFailureLog.FIRST_OCCURRENCES_CONFIG, "1"), time);
+        for (int i = 0; i < 10; i++) {
+            failureLog.record(AuthenticationFailureLog.Failure.INVALID_PASSWORD, "alice");
+        }
+        for (int i = 0; i < 3; i++) {
+            failureLog.record(AuthenticationFailureLog.Failure.INVALID_USERNAME, "bob");
+        }
+        assertEquals(2, appender.messages.size());
+
+        time.sleep(AuthenticationFailureLog.DEFAULT_INTERVAL_MS);
+        failureLog.record(AuthenticationFailureLog.Failure.INVALID_USERNAME, "bob");
+
+        assertEquals(4, appender.messages.size());
+        assertEquals("Authentication failed 13 times in the last 60000 ms: 3 invalid usernames, 10 invalid passwords, 11 not logged; "
+                + "most failed usernames of 2: alice=10, bob=3", appender.messages.get(2));
+        assertEquals("Authentication failed: Invalid username bob", appender.messages.get(3));
+        assertArrayEquals(new long[]{1, 0, 0}, failureLog.counts());
+    }
+
+    @Test
+    public void testScheduledSummary() {
+        Map<String, Object> options = options(AuthenticationFailureLog.FIRST_OCCURRENCES_CONFIG, "0");
+        options.put(AuthenticationFailureLog.INTERVAL_MS_CONFIG, "100");
+        AuthenticationFailureLog failureLog = AuthenticationFailureLog.create(options, time);
+        failureLog.scheduleSummaries();
+        try {
+            for (int i = 0; i < 3; i++) {
+                failureLog.record(AuthenticationFailureLog.Failure.INVALID_PASSWORD, "alice");
+            }
+            time.sleep(1000);
+
+            // the summary does not wait for a later failure and reports at most the interval
+            await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return appender.messages.contains("Authentication failed 3 times in the last 100 ms: 0 invalid usernames, "
+                            + "3 invalid passwords, 3 not logged; most failed usernames of 1: alice=3");
+                }
+            });
+            assertArrayEquals(new long[]{0, 0, 0}, failureLog.counts());
+        } finally {
+            failureLog.close();
+        }
+    }
+
+    @Test
+    public void testCloseLogsSummary() {
+        AuthenticationFailureLog failureLog = AuthenticationFailureLog.create(options(AuthenticationFailureLog.FIRST_OCCURRENCES_CONFIG, "0"), time);
+        failureLog.record(AuthenticationFailureLog.Failure.INVALID_USERNAME, "bob");
+        time.sleep(10);
+        failureLog.close();
+
+        assertEquals(1, appender.messages.size());
+        assertEquals("Authentication failed 1 times in the last 10 ms: 1 invalid usernames, 0 invalid passwords, 1 not logged; "
+                + "most failed usernames of 1: bob=1", appender.messages.get(0));
+    }
+
+    @Test
+    public void testNoSummaryIfAllFailuresAreLogged() {
+        AuthenticationFailureLog failureLog = AuthenticationFailureLog.create(Collections.<String, Object>emptyMap(), time);
+        failureLog.record(AuthenticationFailureLog.Failure.INVALID_PASSWORD, "alice");
+        time.sleep(AuthenticationFailureLog.DEFAULT_INTERVAL_MS);
+        failureLog.record(AuthenticationFailureLog.Failure.INVALID_PASSWORD, "alice");
+
+        assertEquals(2, appender.messages.size());
+    }
+
+    @Test
+    public void testSampling() {
+        Map<String, Object> options = options(AuthenticationFailureLog.FIRST_OCCURRENCES_CONFIG, "0");
+        options.put(AuthenticationFailureLog.SAMPLE_RATE_CONFIG, "0.1");
+        AuthenticationFailureLog failureLog = AuthenticationFailureLog.create(options, time);
+
+        for (int i = 0; i < 10000; i++) {
+            failureLog.record(AuthenticationFailureLog.Failure.INVALID_USERNAME, "user-" + i);
+        }
+
+        assertTrue("sampled " + appender.messages.size(), appender.messages.size() > 800 && appender.messages.size() < 1200);
+        assertTrue(appender.messages.get(0).endsWith(" (sampled)"));
+    }
+
+    @Test
+    public void testMaxUsernames() {
+        AuthenticationFailureLog failureLog = AuthenticationFailureLog.create(options(AuthenticationFailureLog.MAX_USERNAMES_CONFIG, "10"), time);
+
+        for (int i = 0; i < 100; i++) {
+            failureLog.record(AuthenticationFailureLog.Failure.INVALID_USERNAME, "user-" + i);
+        }
+
+        assertEquals(10, appender.messages.size());
+        assertArrayEquals(new long[]{100, 0, 90}, failureLog.counts());
+    }
+
+    @Test
+    public void testIsConfiguredBy() {
+        Map<String, Object> options = options(AuthenticationFailureLog.SAMPLE_RATE_CONFIG, "0.5");
+        AuthenticationFailureLog failureLog = AuthenticationFailureLog.create(options, time);
+
+        assertTrue(failureLog.isConfiguredBy(options));
+        assertFalse(failureLog.isConfiguredBy(Collections.<String, Object>emptyMap()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSampleRate() {
+        AuthenticationFailureLog.create(options(AuthenticationFailureLog.SAMPLE_RATE_CONFIG, "2"), time);
+    }
+
+    private static Map<String, Object> options(String name, String value) {
+        Map<String, Object> options = new HashMap<>();
+        options.put(name, value);
+        return options;
+    }
+
+    private static final class CapturingAppender extends AppenderSkeleton {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        protected void append(LoggingEvent event) {
+            messages.add(event.getRenderedMessage());
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import com.grepplabs.kafka.security.sasl.authenticator.TestJaasConfig;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.security.JaasContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.security.sasl.SaslException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AuthenticatorMetricsTest {
+
+    private static final String LISTENER = "TEST_LISTENER";
+
+    private final Metrics metrics = new Metrics();
+    private final VerificationCacheTest.MockTime time = new VerificationCacheTest.MockTime();
+    private CredentialSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        Map<String, Object> options = new HashMap<>();
+        options.put("user_alice", "alice-secret");
+        options.put("user_bob", "bob-secret");
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+        snapshot = CredentialSnapshot.create(new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+    }
+
+    @After
+    public void tearDown() {
+        metrics.close();
+    }
+
+    @Test
+    public void testAuthenticationOutcomes() throws Exception {
+        PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(snapshot.jaasContext());
+        provider.metrics().register(metrics, LISTENER);
+
+        new PlainSaslServer(provider).evaluateResponse(saslMessage("alice", "alice-secret"));
+        new PlainSaslServer(provider).evaluateResponse(saslMessage("bob", "bob-secret"));
+        assertFails(provider, saslMessage("carol", "carol-secret"));
+        assertFails(provider, saslMessage("alice", "wrong"));
+        assertFails(provider, saslMessage("alice", ""));
+
+        assertEquals(2.0, value("successful-authentication-total"), 0.0);
+        assertEquals(3.0, value("failed-authentication-total"), 0.0);
+        assertEquals(1.0, value("invalid-username-total"), 0.0);
+        assertEquals(1.0, value("rejected-username-total"), 0.0);
+        assertEquals(1.0, value("invalid-password-total"), 0.0);
+        assertTrue(value("handshake-time-max-ns") > 0.0);
+        assertTrue(value("handshake-time-p99-ns") <= value("handshake-time-max-ns"));
+        assertEquals(2.0, value("user-count"), 0.0);
+    }
+
+    @Test
+    public void testThrottledAuthentications() throws Exception {
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        Map<String, Object> options = new HashMap<>();
+        options.put("user_alice", "alice-secret");
+        options.put(FailureThrottle.USER_BURST_CONFIG, "2");
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+        PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(
+                new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+        provider.metrics().register(metrics, LISTENER);
+
+        assertFails(provider, saslMessage("alice", "wrong"));
+        assertFails(provider, saslMessage("alice", "wrong"));
+        // the budget is exhausted, the valid password is not verified
+        assertFails(provider, saslMessage("alice", "alice-secret"));
+
+        assertEquals(3.0, value("failed-authentication-total"), 0.0);
+        assertEquals(2.0, value("invalid-password-total"), 0.0);
+        assertEquals(1.0, value("throttled-authentication-total"), 0.0);
+    }
+
+    @Test
+    public void testSourceUnavailable() throws Exception {
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        Map<String, Object> options = new HashMap<>();
+        options.put(CachingCredentialStore.CREDENTIAL_SOURCE_CLASS_CONFIG, FailingSource.class.getName());
+        options.put(FailureThrottle.USER_BURST_CONFIG, "1");
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+        PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(
+                new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+        provider.metrics().register(metrics, LISTENER);
+
+        assertFails(provider, saslMessage("alice", "alice-secret"));
+        assertFails(provider, saslMessage("alice", "alice-secret"));
+
+        assertEquals(2.0, value("source-unavailable-total"), 0.0);
+        assertEquals(2.0, value("failed-authentication-total"), 0.0);
+        assertEquals(0.0, value("invalid-username-total"), 0.0);
+        assertEquals(0.0, value("throttled-authentication-total"), 0.0);
+        assertEquals("an outage is not a failure of the user", 0, provider.failureThrottle().trackedUsers());
+        assertArrayEquals(new long[]{0, 0, 0}, provider.failureLog().counts());
+    }
+
+    public static class FailingSource implements CredentialSource {
+        @Override
+        public void configure(Map<String, ?> options) {
+        }
+
+        @Override
+        public String credential(String username) throws IOException {
+            throw new IOException("source unavailable");
+        }
+    }
+
+    @Test
+    public void testReloadMetrics() {
+        AuthenticatorMetrics authenticatorMetrics = new AuthenticatorMetrics(time);
+        authenticatorMetrics.snapshotLoaded(snapshot);
+        authenticatorMetrics.register(metrics, LISTENER);
+
+        long startNs = authenticatorMetrics.nanoseconds();
+        time.sleep(20);
+        authenticatorMetrics.recordReload(snapshot, startNs);
+        startNs = authenticatorMetrics.nanoseconds();
+        time.sleep(10);
+        authenticatorMetrics.recordReloadFailure(startNs);
+
+        assertEquals(2.0, value("reload-total"), 0.0);
+        assertEquals(1.0, value("reload-failure-total"), 0.0);
+        assertEquals(15.0, value("reload-time-avg-ms"), 0.0);
+        assertEquals(20.0, value("reload-time-max-ms"), 0.0);
+        assertEquals(2.0, value("user-count"), 0.0);
+        assertTrue(metrics.metrics().get(metricName("snapshot-age-ms")).value() >= 0.0);
+
+        authenticatorMetrics.unregister();
+        assertFalse(metrics.metrics().containsKey(metricName("reload-total")));
+    }
+
+    @Test
+    public void testJmxRegistration() throws Exception {
+        PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(snapshot.jaasContext());
+        provider.metrics().register(PlainSaslMetrics.metrics(Collections.<String, Object>emptyMap()), LISTENER);
+        try {
+            new PlainSaslServer(provider).evaluateResponse(saslMessage("alice", "alice-secret"));
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(PlainSaslMetrics.JMX_PREFIX + ":type=" + AuthenticatorMetrics.GROUP + ",listener=" + LISTENER);
+            assertEquals(1.0, (Double) server.getAttribute(objectName, "successful-authentication-total"), 0.0);
+            assertTrue(server.isRegistered(new ObjectName(PlainSaslMetrics.JMX_PREFIX + ":type=" + PlainSaslMetrics.CONFIG_FILE_GROUP)));
+
+            provider.metrics().unregister();
+            assertFalse(server.isRegistered(objectName));
+        } finally {
+            provider.metrics().unregister();
+        }
+    }
+
+    private double value(String name) {
+        return metrics.metrics().get(metricName(name)).value();
+    }
+
+    private MetricName metricName(String name) {
+        return metrics.metricName(name, AuthenticatorMetrics.GROUP, "", Collections.singletonMap(AuthenticatorMetrics.LISTENER_TAG, LISTENER));
+    }
+
+    private static void assertFails(PlainSaslServer.JaasContextProvider provider, byte[] response) {
+        try {
+            new PlainSaslServer(provider).evaluateResponse(response);
+            fail("SaslException expected");
+        } catch (SaslException e) {
+            // expected
+        }
+    }
+
+    private static byte[] saslMessage(String username, String password) {
+        return ("\u0000" + username + "\u0000" + password).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testNoFalseNegatives() {
+        List<String> usernames = usernames("user-", 10000);
+        BloomFilter filter = BloomFilter.create(usernames);
+
+        for (String username : usernames) {
+            assertTrue(username, mightContain(filter, username));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        BloomFilter filter = BloomFilter.create(usernames("user-", 10000));
+
+        int falsePositives = 0;
+        for (String username : usernames("unknown-", 100000)) {
+            if (mightContain(filter, username)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives " + falsePositives, falsePositives < 2000);
+    }
+
+    @Test
+    public void testLookupInMessageBytes() {
+        BloomFilter filter = BloomFilter.create(Collections.singletonList("alice"));
+        byte[] message = "\u0000alice\u0000alice-secret".getBytes(StandardCharsets.UTF_8);
+
+        assertTrue(filter.mightContain(message, 1, 5));
+    }
+
+    @Test
+    public void testEmptyFilter() {
+        BloomFilter filter = BloomFilter.create(Collections.<String>emptyList());
+
+        assertEquals(64, filter.bitCount());
+        assertFalse(mightContain(filter, "alice"));
+        assertFalse(mightContain(filter, ""));
+    }
+
+    @Test
+    public void testSize() {
+        assertEquals(131072, BloomFilter.create(usernames("user-", 10000)).bitCount());
+        assertEquals(128, BloomFilter.create(usernames("user-", 10)).bitCount());
+    }
+
+    private static boolean mightContain(BloomFilter filter, String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        return filter.mightContain(bytes, 0, bytes.length);
+    }
+
+    private static List<String> usernames(String prefix, int count) {
+        List<String> usernames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            usernames.add(prefix + i);
+        }
+        return usernames;
+    }
+}
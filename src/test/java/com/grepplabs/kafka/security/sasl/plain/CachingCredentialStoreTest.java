@@ -0,0 +1,393 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import com.grepplabs.kafka.security.sasl.authenticator.TestJaasConfig;
+import org.apache.kafka.common.security.JaasContext;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CachingCredentialStoreTest {
+
+    private static final PasswordVerifiers VERIFIERS = PasswordVerifiers.create(Collections.<String, Object>emptyMap());
+
+    private final VerificationCacheTest.MockTime time = new VerificationCacheTest.MockTime();
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private Executor loadExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private final Executor refreshExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            refreshes.add(command);
+        }
+    };
+    private final StubSource source = new StubSource();
+    private final AtomicInteger credentialChanges = new AtomicInteger();
+    private final Runnable credentialChanged = new Runnable() {
+        @Override
+        public void run() {
+            credentialChanges.incrementAndGet();
+        }
+    };
+
+    @Test
+    public void testCachedCredentials() {
+        source.credentials.put("alice", "alice-secret");
+        CachingCredentialStore store = store(Collections.<String, Object>emptyMap());
+
+        assertTrue(verify(store, "alice", "alice-secret"));
+        assertTrue(verify(store, "alice", "alice-secret"));
+        assertNull(store.credential("bob"));
+        assertNull(store.credential("bob"));
+        assertEquals(2, source.requests.get());
+        assertEquals(2, store.size());
+
+        // a fresh entry of an unknown user rejects the username
+        assertFalse(mightContain(store, "bob"));
+        assertTrue(mightContain(store, "alice"));
+        assertTrue(mightContain(store, "carol"));
+    }
+
+    @Test
+    public void testExpiry() {
+        source.credentials.put("alice", "alice-secret");
+        CachingCredentialStore store = store(Collections.<String, Object>emptyMap());
+        assertTrue(verify(store, "alice", "alice-secret"));
+
+        source.credentials.put("alice", "changed-secret");
+        time.sleep(CachingCredentialStore.DEFAULT_TTL_MS);
+
+        assertTrue(verify(store, "alice", "changed-secret"));
+        assertEquals(2, source.requests.get());
+        assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    public void testRefreshAhead() {
+        source.credentials.put("alice", "alice-secret");
+        CachingCredentialStore store = store(Collections.<String, Object>emptyMap());
+        assertTrue(verify(store, "alice", "alice-secret"));
+
+        source.credentials.put("alice", "changed-secret");
+        time.sleep(CachingCredentialStore.DEFAULT_TTL_MS - CachingCredentialStore.DEFAULT_REFRESH_AHEAD_MS);
+        // the cached credential is used while it is refreshed
+        assertTrue(verify(store, "alice", "alice-secret"));
+        assertTrue(verify(store, "alice", "alice-secret"));
+        assertEquals("a single refresh", 1, refreshes.size());
+        assertEquals(1, source.requests.get());
+
+        refreshes.remove(0).run();
+        assertEquals(2, source.requests.get());
+        time.sleep(CachingCredentialStore.DEFAULT_REFRESH_AHEAD_MS);
+        assertTrue(verify(store, "alice", "changed-secret"));
+        assertEquals(2, source.requests.get());
+    }
+
+    @Test
+    public void testFailedRefreshIsRetried() {
+        source.credentials.put("alice", "alice-secret");
+        CachingCredentialStore store = store(Collections.<String, Object>emptyMap());
+        store.credential("alice");
+
+        time.sleep(CachingCredentialStore.DEFAULT_TTL_MS - CachingCredentialStore.DEFAULT_REFRESH_AHEAD_MS);
+        source.failing = true;
+        store.credential("alice");
+        refreshes.remove(0).run();
+        store.credential("alice");
+
+        assertEquals(1, refreshes.size());
+    }
+
+    @Test
+    public void testStaleOnError() {
+        source.credentials.put("alice", "alice-secret");
+        Map<String, Object> options = new HashMap<>();
+        options.put(CachingCredentialStore.STALE_MS_CONFIG, "60000");
+        CachingCredentialStore store = store(options);
+        assertTrue(verify(store, "alice", "alice-secret"));
+
+        source.failing = true;
+        time.sleep(CachingCredentialStore.DEFAULT_TTL_MS + 59000);
+        assertTrue("the expired credential is used", verify(store, "alice", "alice-secret"));
+        time.sleep(1000);
+        assertUnavailable(store, "alice");
+        assertUnavailable(store, "bob");
+    }
+
+    @Test
+    public void testChangedCredentialIsNotified() {
+        source.credentials.put("alice", "alice-secret");
+        CachingCredentialStore store = store(Collections.<String, Object>emptyMap());
+        store.credential("alice");
+
+        time.sleep(CachingCredentialStore.DEFAULT_TTL_MS);
+        store.credential("alice");
+        assertEquals("the same credential is reloaded", 0, credentialChanges.get());
+
+        source.credentials.put("alice", "changed-secret");
+        time.sleep(CachingCredentialStore.DEFAULT_TTL_MS - CachingCredentialStore.DEFAULT_REFRESH_AHEAD_MS);
+        store.credential("alice");
+        refreshes.remove(0).run();
+        assertEquals(1, credentialChanges.get());
+    }
+
+    @Test
+    public void testEvictionOfKnownUserIsNotified() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(CachingCredentialStore.MAX_ENTRIES_CONFIG, "10");
+        CachingCredentialStore store = store(options);
+        for (int i = 0; i < 10; i++) {
+            source.credentials.put("user-" + i, "secret-" + i);
+            store.credential("user-" + i);
+        }
+        assertEquals(0, credentialChanges.get());
+        source.credentials.put("user-10", "secret-10");
+        store.credential("user-10");
+        assertEquals("a later change of an evicted user can not be detected", 1, credentialChanges.get());
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        source.credentials.put("alice", "alice-secret");
+        source.blocked = new CountDownLatch(1);
+        final CachingCredentialStore store = store(Collections.<String, Object>emptyMap());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Credential>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<Credential>() {
+                    @Override
+                    public Credential call() {
+                        return store.credential("alice");
+                    }
+                }));
+            }
+            assertTrue(source.entered.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            source.blocked.countDown();
+            for (Future<Credential> future : futures) {
+                assertNotNull(future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, source.requests.get());
+    }
+
+    @Test
+    public void testMaxEntries() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(CachingCredentialStore.MAX_ENTRIES_CONFIG, "10");
+        CachingCredentialStore store = store(options);
+        for (int i = 0; i < 100; i++) {
+            source.credentials.put("user-" + i, "secret-" + i);
+            assertTrue(verify(store, "user-" + i, "secret-" + i));
+        }
+        assertTrue(store.size() <= 10);
+    }
+
+    @Test
+    public void testBatchEviction() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(CachingCredentialStore.MAX_ENTRIES_CONFIG, "100");
+        CachingCredentialStore store = store(options);
+        for (int i = 0; i < 110; i++) {
+            source.credentials.put("user-" + i, "secret-" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            store.credential("user-" + i);
+        }
+        assertEquals(100, store.size());
+
+        store.credential("user-100");
+        assertEquals("evicted down to 90%", 91, store.size());
+        for (int i = 101; i < 110; i++) {
+            store.credential("user-" + i);
+        }
+        assertEquals(100, store.size());
+    }
+
+    @Test
+    public void testUnknownUsersDoNotDisplaceKnownUsers() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(CachingCredentialStore.MAX_ENTRIES_CONFIG, "10");
+        CachingCredentialStore store = store(options);
+        for (int i = 0; i < 5; i++) {
+            source.credentials.put("user-" + i, "secret-" + i);
+            assertTrue(verify(store, "user-" + i, "secret-" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertNull(store.credential("unknown-" + i));
+        }
+        assertEquals(10, store.size());
+        for (int i = 5; i < 10; i++) {
+            source.credentials.put("user-" + i, "secret-" + i);
+            assertTrue(verify(store, "user-" + i, "secret-" + i));
+        }
+        assertNull(store.credential("unknown-100"));
+
+        int requests = source.requests.get();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(verify(store, "user-" + i, "secret-" + i));
+        }
+        assertEquals("the known users are cached", requests, source.requests.get());
+    }
+
+    @Test
+    public void testSourceTimeout() throws Exception {
+        source.credentials.put("alice", "alice-secret");
+        source.blocked = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        loadExecutor = executor;
+        try {
+            Map<String, Object> options = new HashMap<>();
+            options.put(CachingCredentialStore.TIMEOUT_MS_CONFIG, "100");
+            final CachingCredentialStore store = store(options);
+
+            assertUnavailable(store, "alice");
+            assertEquals(0, store.size());
+
+            source.blocked.countDown();
+            await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return store.size() == 1;
+                }
+            });
+            assertTrue("the request is cached in the background", verify(store, "alice", "alice-secret"));
+            assertEquals(1, source.requests.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInvalidCredentialIsUnknown() {
+        source.credentials.put("alice", "{PBKDF2-SHA256}malformed");
+        CachingCredentialStore store = store(Collections.<String, Object>emptyMap());
+
+        assertNull(store.credential("alice"));
+    }
+
+    @Test
+    public void testSnapshotWithSource() {
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        Map<String, Object> options = new HashMap<>();
+        options.put(CachingCredentialStore.CREDENTIAL_SOURCE_CLASS_CONFIG, StaticSource.class.getName());
+        options.put("user_bob", "bob-secret");
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+
+        CredentialSnapshot snapshot = CredentialSnapshot.create(new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+
+        assertTrue(snapshot.credentialStore() instanceof CachingCredentialStore);
+        byte[] password = "alice-secret".getBytes(StandardCharsets.UTF_8);
+        assertTrue(snapshot.credential("alice").verify(password, 0, password.length));
+        assertNull("user options are ignored", snapshot.credential("bob"));
+    }
+
+    private CachingCredentialStore store(Map<String, Object> options) {
+        return new CachingCredentialStore(source, VERIFIERS, options, time, loadExecutor, refreshExecutor, credentialChanged);
+    }
+
+    private static boolean verify(CachingCredentialStore store, String username, String password) {
+        byte[] bytes = password.getBytes(StandardCharsets.UTF_8);
+        Credential credential = store.credential(username);
+        return credential != null && credential.verify(bytes, 0, bytes.length);
+    }
+
+    private static void assertUnavailable(CachingCredentialStore store, String username) {
+        try {
+            store.credential(username);
+            fail("The credential of " + username + " is available");
+        } catch (CredentialSourceException e) {
+            // expected
+        }
+    }
+
+    private static boolean mightContain(CachingCredentialStore store, String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        return store.mightContain(bytes, 0, bytes.length);
+    }
+
+    private static final class StubSource implements CredentialSource {
+        final Map<String, String> credentials = new ConcurrentHashMap<>();
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch blocked;
+        volatile boolean failing;
+
+        @Override
+        public void configure(Map<String, ?> options) {
+        }
+
+        @Override
+        public String credential(String username) throws IOException {
+            requests.incrementAndGet();
+            entered.countDown();
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (failing) {
+                throw new IOException("source unavailable");
+            }
+            return credentials.get(username);
+        }
+    }
+
+    public static class StaticSource implements CredentialSource {
+        @Override
+        public void configure(Map<String, ?> options) {
+        }
+
+        @Override
+        public String credential(String username) {
+            return "alice".equals(username) ? "alice-secret" : null;
+        }
+    }
+}
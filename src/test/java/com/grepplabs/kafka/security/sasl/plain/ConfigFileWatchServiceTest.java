@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import com.grepplabs.kafka.security.sasl.authenticator.TestJaasConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.security.auth.login.Configuration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigFileWatchServiceTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @After
+    public void tearDown() {
+        Configuration.setConfiguration(null);
+    }
+
+    @Test
+    public void testAddRemoveListener() {
+        ConfigFileWatchService service = new ConfigFileWatchService(DIRECT_EXECUTOR);
+        CountingListener first = new CountingListener();
+        CountingListener second = new CountingListener();
+        service.addListener(first);
+        service.addListener(first);
+        service.addListener(second);
+        assertEquals(2, service.getListenersCount());
+
+        service.notifyChangeListeners();
+        assertEquals(1, first.changes.get());
+        assertEquals(1, second.changes.get());
+
+        service.removeListener(first);
+        service.removeListener(first);
+        assertEquals(1, service.getListenersCount());
+        service.notifyChangeListeners();
+        assertEquals(1, first.changes.get());
+        assertEquals(2, second.changes.get());
+    }
+
+    @Test
+    public void testFailingListener() {
+        ConfigFileWatchService service = new ConfigFileWatchService(DIRECT_EXECUTOR);
+        CountingListener listener = new CountingListener();
+        ConfigFileChangeListener failing = new ConfigFileChangeListener() {
+            @Override
+            public void configFileChanged() {
+                throw new IllegalStateException("reload failed");
+            }
+        };
+        service.addListener(failing);
+        service.addListener(listener);
+        service.notifyChangeListenersAsync();
+        assertEquals(1, listener.changes.get());
+    }
+
+    @Test
+    public void testWeakListener() {
+        final ConfigFileWatchService service = new ConfigFileWatchService(DIRECT_EXECUTOR);
+        CountingListener listener = new CountingListener();
+        service.addListener(listener);
+        service.addListener(new CountingListener());
+        await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                System.gc();
+                return service.getListenersCount() == 1;
+            }
+        });
+        service.notifyChangeListeners();
+        assertEquals(1, listener.changes.get());
+    }
+
+    @Test
+    public void testAddListenerDuringNotification() throws Exception {
+        final ConfigFileWatchService service = new ConfigFileWatchService();
+        final CountDownLatch notified = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ConfigFileChangeListener slow = new ConfigFileChangeListener() {
+            @Override
+            public void configFileChanged() {
+                notified.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        service.addListener(slow);
+        Configuration.setConfiguration(new TestJaasConfig());
+        service.configFileChanged();
+        assertTrue(notified.await(5, TimeUnit.SECONDS));
+
+        // the slow listener holds no lock of the service
+        List<CountingListener> added = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            CountingListener listener = new CountingListener();
+            added.add(listener);
+            service.addListener(listener);
+        }
+        assertEquals(101, service.getListenersCount());
+        release.countDown();
+
+        service.configFileChanged();
+        final List<CountingListener> listeners = added;
+        await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                for (CountingListener listener : listeners) {
+                    if (listener.changes.get() != 1) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+    }
+
+    static class CountingListener implements ConfigFileChangeListener {
+        final AtomicInteger changes = new AtomicInteger();
+
+        @Override
+        public void configFileChanged() {
+            changes.incrementAndGet();
+        }
+    }
+}
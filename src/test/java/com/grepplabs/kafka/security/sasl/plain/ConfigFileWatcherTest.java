@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigFileWatcherTest {
+
+    private static final long QUIET_PERIOD_MS = 200L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ConfigFileWatchServiceTest.CountingListener listener = new ConfigFileWatchServiceTest.CountingListener();
+    private File jaasConfigFile;
+    private ConfigFileWatcher watcher;
+    private Thread watcherThread;
+
+    @Before
+    public void setUp() throws Exception {
+        jaasConfigFile = folder.newFile("kafka_server_jaas.conf");
+        write(jaasConfigFile, "initial");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (watcherThread != null) {
+            watcher.stop();
+            watcherThread.interrupt();
+            watcherThread.join(5000);
+            assertFalse(watcherThread.isAlive());
+        }
+    }
+
+    @Test
+    public void testBurstIsCoalesced() throws Exception {
+        startWatcher(jaasConfigFile.toPath());
+        for (int i = 0; i < 5; i++) {
+            write(jaasConfigFile, "change " + i);
+        }
+        awaitChanges(1);
+        Thread.sleep(3 * QUIET_PERIOD_MS);
+        assertEquals(1, listener.changes.get());
+
+        write(jaasConfigFile, "another change");
+        awaitChanges(2);
+    }
+
+    @Test
+    public void testUnchangedContentIsIgnored() throws Exception {
+        startWatcher(jaasConfigFile.toPath());
+        write(jaasConfigFile, "initial");
+        jaasConfigFile.setLastModified(System.currentTimeMillis() + 10000);
+        Thread.sleep(3 * QUIET_PERIOD_MS);
+        assertEquals(0, listener.changes.get());
+    }
+
+    @Test
+    public void testOtherFilesAreIgnored() throws Exception {
+        startWatcher(jaasConfigFile.toPath());
+        write(folder.newFile("other.conf"), "other");
+        Thread.sleep(3 * QUIET_PERIOD_MS);
+        assertEquals(0, listener.changes.get());
+
+        write(jaasConfigFile, "changed");
+        awaitChanges(1);
+    }
+
+    @Test
+    public void testAtomicSymbolicLinkSwap() throws Exception {
+        Path configMap = folder.newFolder("configmap").toPath();
+        Path dataLink = createDataVersion(configMap, "..2017_11_01_10_00_00.1", "version 1");
+        Path link = Files.createSymbolicLink(configMap.resolve("kafka_server_jaas.conf"), Paths.get("..data", "kafka_server_jaas.conf"));
+        startWatcher(link);
+
+        Path oldVersion = configMap.resolve("..2017_11_01_10_00_00.1");
+        createDataVersion(configMap, "..2017_11_01_10_05_00.2", "version 2");
+        deleteRecursively(oldVersion);
+        awaitChanges(1);
+        assertEquals("version 2", new String(Files.readAllBytes(link), StandardCharsets.UTF_8));
+
+        createDataVersion(configMap, "..2017_11_01_10_10_00.3", "version 3");
+        awaitChanges(2);
+
+        // in-place change of the real file
+        write(dataLink.resolve("kafka_server_jaas.conf").toRealPath().toFile(), "version 3 edited");
+        awaitChanges(3);
+    }
+
+    @Test
+    public void testReplacedDirectory() throws Exception {
+        Path directory = folder.newFolder("config").toPath();
+        Path file = directory.resolve("kafka_server_jaas.conf");
+        write(file.toFile(), "initial");
+        startWatcher(file);
+
+        deleteRecursively(directory);
+        Files.createDirectory(directory);
+        write(file.toFile(), "replaced");
+        awaitChanges(1);
+
+        write(file.toFile(), "changed");
+        awaitChanges(2);
+    }
+
+    @Test
+    public void testSymbolicLinkChain() throws Exception {
+        Path configMap = folder.newFolder("chain").toPath();
+        createDataVersion(configMap, "..v1", "content");
+        Path link = Files.createSymbolicLink(configMap.resolve("kafka_server_jaas.conf"), Paths.get("..data", "kafka_server_jaas.conf"));
+
+        Set<Path> chain = ConfigFileWatcher.symbolicLinkChain(link);
+
+        assertTrue(chain.contains(link));
+        assertTrue(chain.contains(configMap.resolve("..data")));
+        assertTrue(chain.contains(configMap.resolve("..v1").resolve("kafka_server_jaas.conf")));
+        assertEquals(Collections.singleton(jaasConfigFile.toPath()), ConfigFileWatcher.symbolicLinkChain(jaasConfigFile.toPath()));
+    }
+
+    /**
+     * Creates a data directory and swaps the ..data link like the Kubernetes AtomicWriter.
+     */
+    private static Path createDataVersion(Path configMap, String version, String content) throws IOException {
+        Path dataDirectory = Files.createDirectory(configMap.resolve(version));
+        write(dataDirectory.resolve("kafka_server_jaas.conf").toFile(), content);
+        Path tmpLink = Files.createSymbolicLink(configMap.resolve("..data_tmp"), Paths.get(version));
+        return Files.move(tmpLink, configMap.resolve("..data"), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private void startWatcher(Path path) throws InterruptedException {
+        watcher = new ConfigFileWatcher(path.toString(), listener, QUIET_PERIOD_MS);
+        watcherThread = new Thread(watcher, "test-config-file-watcher");
+        watcherThread.start();
+        // let the watcher register before the first change
+        Thread.sleep(200);
+    }
+
+    private void awaitChanges(final int changes) {
+        await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return listener.changes.get() == changes;
+            }
+        });
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.security.JaasContext;
+import org.apache.kafka.common.security.JaasUtils;
+import org.apache.kafka.common.security.authenticator.SaslServerCallbackHandler;
+
+import javax.security.auth.login.Configuration;
+import javax.security.sasl.SaslServer;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load harness reproducing a connection storm during reloads: worker threads run
+ * <code>createSaslServer</code>, <code>evaluateResponse</code> and <code>dispose</code> through the
+ * {@link PlainSaslServer.PlainSaslServerFactory} as fast as they can, while the JAAS file is rewritten and reloaded
+ * by the {@link ConfigFileWatcher}. Each rewrite adds a new user; the time from the write until the new user
+ * authenticates is the visibility delay of the reload.
+ * <p>
+ * The handshake latencies are recorded in a {@link LatencyHistogram} for the phases before, during and after
+ * each reload. The during phase lasts from the write until the new user is visible. Configured with the
+ * system properties <code>harness.threads</code>, <code>harness.users</code>, <code>harness.reloads</code> and
+ * <code>harness.phase.ms</code>, the duration of the before and after phases.
+ */
+public final class ConnectionStormHarness {
+
+    private static final String PROTOCOL = "SASL_PLAINTEXT";
+    private static final String[] PHASES = {"before", "during", "after"};
+    private static final long VISIBILITY_TIMEOUT_MS = 30000L;
+
+    private final int threads;
+    private final int users;
+    private final int reloads;
+    private final long phaseMs;
+
+    private final PlainSaslServer.PlainSaslServerFactory factory = new PlainSaslServer.PlainSaslServerFactory();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile LatencyHistogram current = new LatencyHistogram();
+    private volatile boolean stop;
+
+    ConnectionStormHarness(int threads, int users, int reloads, long phaseMs) {
+        this.threads = threads;
+        this.users = users;
+        this.reloads = reloads;
+        this.phaseMs = phaseMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConnectionStormHarness harness = new ConnectionStormHarness(Integer.getInteger("harness.threads", 8),
+                Integer.getInteger("harness.users", 10000), Integer.getInteger("harness.reloads", 3),
+                Long.getLong("harness.phase.ms", 2000L));
+        harness.run().print(System.out);
+    }
+
+    /**
+     * Runs the harness against a temporary JAAS file set as the JVM wide login configuration.
+     */
+    Result run() throws Exception {
+        Path jaasFile = Files.createTempFile("storm_jaas", ".conf");
+        String previousConfig = System.getProperty(JaasUtils.JAVA_LOGIN_CONFIG_PARAM);
+        writeConfiguration(jaasFile, 0);
+        System.setProperty(JaasUtils.JAVA_LOGIN_CONFIG_PARAM, jaasFile.toString());
+        Configuration.setConfiguration(null);
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+        final JaasContext jaasContext = JaasContext.load(JaasContext.Type.SERVER, new ListenerName(PROTOCOL),
+                Collections.<String, Object>emptyMap());
+        List<Thread> workers = new ArrayList<>();
+        Result result = new Result();
+        try {
+            // the first handshake creates the provider and starts the watcher
+            handshake(jaasContext, "user0");
+            // let the watcher register before the first write
+            Thread.sleep(200);
+            for (int i = 0; i < threads; i++) {
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        while (!stop) {
+                            long startNs = System.nanoTime();
+                            boolean authenticated = handshake(jaasContext, "user" + random.nextInt(users));
+                            current.record(System.nanoTime() - startNs);
+                            if (!authenticated) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                }, "storm-worker-" + i);
+                worker.start();
+                workers.add(worker);
+            }
+            for (int reload = 1; reload <= reloads; reload++) {
+                LatencyHistogram[] histograms = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+                current = histograms[0];
+                Thread.sleep(phaseMs);
+
+                current = histograms[1];
+                long writeNs = System.nanoTime();
+                writeConfiguration(jaasFile, reload);
+                long visibleNs = awaitVisible(jaasContext, "reload" + reload, writeNs);
+
+                current = histograms[2];
+                Thread.sleep(phaseMs);
+                result.add(histograms, visibleNs - writeNs);
+            }
+        } finally {
+            stop = true;
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+            PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+            if (previousConfig != null) {
+                System.setProperty(JaasUtils.JAVA_LOGIN_CONFIG_PARAM, previousConfig);
+            } else {
+                System.clearProperty(JaasUtils.JAVA_LOGIN_CONFIG_PARAM);
+            }
+            Configuration.setConfiguration(null);
+            Files.delete(jaasFile);
+        }
+        result.failures = failures.get();
+        return result;
+    }
+
+    /**
+     * @return the time when the user authenticated first, or the timeout
+     */
+    private long awaitVisible(JaasContext jaasContext, String username, long writeNs) throws InterruptedException {
+        long timeoutNs = writeNs + TimeUnit.MILLISECONDS.toNanos(VISIBILITY_TIMEOUT_MS);
+        while (!handshake(jaasContext, username)) {
+            if (System.nanoTime() > timeoutNs) {
+                return -1L;
+            }
+            Thread.sleep(1);
+        }
+        return System.nanoTime();
+    }
+
+    private boolean handshake(JaasContext jaasContext, String username) {
+        try {
+            SaslServer server = factory.createSaslServer(PlainSaslServer.PLAIN_MECHANISM, PROTOCOL, "storm-broker",
+                    Collections.<String, Object>emptyMap(), new SaslServerCallbackHandler(jaasContext, null));
+            try {
+                server.evaluateResponse(saslMessage(username, username + "-secret"));
+                return server.isComplete();
+            } finally {
+                server.dispose();
+            }
+        } catch (IOException e) {
+            // authentication failed
+            return false;
+        }
+    }
+
+    /**
+     * Writes the users in place, like an editor, so the watcher may see a partially written file.
+     */
+    private void writeConfiguration(Path jaasFile, int reload) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("KafkaServer {\n  ").append(PlainLoginModule.class.getName()).append(" required\n");
+        for (int i = 0; i < users; i++) {
+            builder.append("  user_user").append(i).append("=\"user").append(i).append("-secret\"\n");
+        }
+        for (int i = 1; i <= reload; i++) {
+            builder.append("  user_reload").append(i).append("=\"reload").append(i).append("-secret\"\n");
+        }
+        builder.append(";\n};\n");
+        Files.write(jaasFile, builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] saslMessage(String username, String password) {
+        return ("\u0000" + username + "\u0000" + password).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Latencies of the phases of each reload and the visibility delays.
+     */
+    static final class Result {
+        final List<LatencyHistogram[]> phases = new ArrayList<>();
+        final List<Long> visibilityDelaysNs = new ArrayList<>();
+        long failures;
+
+        void add(LatencyHistogram[] histograms, long visibilityDelayNs) {
+            phases.add(histograms);
+            visibilityDelaysNs.add(visibilityDelayNs);
+        }
+
+        void print(PrintStream out) {
+            out.printf("%-8s %-8s %10s %10s %10s %10s %10s%n", "reload", "phase", "count", "p50 us", "p99 us", "p999 us", "max us");
+            for (int i = 0; i < phases.size(); i++) {
+                for (int phase = 0; phase < PHASES.length; phase++) {
+                    LatencyHistogram histogram = phases.get(i)[phase];
+                    out.printf("%-8d %-8s %10d %10.1f %10.1f %10.1f %10.1f%n", i + 1, PHASES[phase], histogram.count(),
+                            histogram.percentile(0.5) / 1000.0, histogram.percentile(0.99) / 1000.0,
+                            histogram.percentile(0.999) / 1000.0, histogram.max() / 1000.0);
+                }
+                long delayNs = visibilityDelaysNs.get(i);
+                out.printf("%-8d visible %s%n", i + 1, delayNs < 0 ? "timed out" : String.format("after %.1f ms", delayNs / 1000000.0));
+            }
+            out.printf("failed handshakes of configured users: %d%n", failures);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionStormHarnessTest extends AbstractJaasContextTest {
+
+    /**
+     * A short run by default, the system properties of the harness configure a longer run.
+     */
+    @Test
+    public void testReloadsUnderLoad() throws Exception {
+        int reloads = Integer.getInteger("harness.reloads", 2);
+        ConnectionStormHarness.Result result = new ConnectionStormHarness(Integer.getInteger("harness.threads", 4),
+                Integer.getInteger("harness.users", 1000), reloads, Long.getLong("harness.phase.ms", 300L)).run();
+        result.print(System.out);
+
+        assertEquals(reloads, result.visibilityDelaysNs.size());
+        for (int i = 0; i < reloads; i++) {
+            assertTrue("reload " + (i + 1) + " is visible", result.visibilityDelaysNs.get(i) > 0);
+            for (LatencyHistogram histogram : result.phases.get(i)) {
+                assertTrue(histogram.count() > 0);
+            }
+        }
+        assertEquals("configured users always authenticate", 0L, result.failures);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CredentialFileCompilerTest {
+
+    private static final PasswordVerifiers VERIFIERS = PasswordVerifiers.create(Collections.<String, Object>emptyMap());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCompileJaasFile() throws Exception {
+        File jaasFile = folder.newFile("kafka_server_jaas.conf");
+        Files.write(jaasFile.toPath(), Arrays.asList(
+                "KafkaServer { " + PlainLoginModule.class.getName() + " required user_alice=\"alice-secret\"; };",
+                "sasl_ssl.KafkaServer { " + PlainLoginModule.class.getName() + " required",
+                "  password.verifiers=\"HMAC-SHA256\"",
+                "  user_bob=\"" + PasswordEncoder.encode(HmacSha256PasswordVerifier.SCHEME, bytes("bob-secret"), 0, 0) + "\"",
+                "  user_carol=\"carol-secret\";",
+                "};"), StandardCharsets.UTF_8);
+        Path output = folder.getRoot().toPath().resolve("users.cred");
+
+        assertEquals(1, CredentialFileCompiler.compileJaasFile(jaasFile.toPath(), "KafkaServer", output));
+        PackedCredentialStore store = PackedCredentialStore.open(output, VERIFIERS);
+        assertTrue(verify(store, "alice", "alice-secret"));
+
+        // cleartext passwords are not enabled in the section
+        assertEquals(1, CredentialFileCompiler.compileJaasFile(jaasFile.toPath(), "sasl_ssl.KafkaServer", output));
+        store = PackedCredentialStore.open(output, VERIFIERS);
+        assertTrue(verify(store, "bob", "bob-secret"));
+        assertNull(credential(store, "alice"));
+        assertNull(credential(store, "carol"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingSection() throws Exception {
+        File jaasFile = folder.newFile("kafka_server_jaas.conf");
+        Files.write(jaasFile.toPath(), Collections.singletonList("KafkaServer { test.LoginModule required; };"), StandardCharsets.UTF_8);
+
+        CredentialFileCompiler.compileJaasFile(jaasFile.toPath(), "sasl_ssl.KafkaServer", folder.getRoot().toPath().resolve("users.cred"));
+    }
+
+    @Test
+    public void testCompileUsersFile() throws Exception {
+        File usersFile = folder.newFile("users.properties");
+        Files.write(usersFile.toPath(), Arrays.asList(
+                "# service accounts",
+                "alice=alice-secret",
+                "bob={PBKDF2-SHA256}malformed",
+                "svc\\=x=svc-secret",
+                "empty="), StandardCharsets.UTF_8);
+        Path output = folder.getRoot().toPath().resolve("users.cred");
+
+        assertEquals(2, CredentialFileCompiler.compileUsersFile(usersFile.toPath(), output));
+        PackedCredentialStore store = PackedCredentialStore.open(output, VERIFIERS);
+        assertTrue(verify(store, "alice", "alice-secret"));
+        assertTrue(verify(store, "svc=x", "svc-secret"));
+        assertNull(credential(store, "bob"));
+    }
+
+    @Test
+    public void testReplaceMappedFile() throws Exception {
+        Path output = folder.getRoot().toPath().resolve("users.cred");
+        Map<String, String> configured = new HashMap<>();
+        configured.put("alice", "alice-secret");
+        CredentialFileCompiler.compile(configured, VERIFIERS, output);
+        PackedCredentialStore mapped = PackedCredentialStore.open(output, VERIFIERS);
+
+        configured.put("alice", "changed-secret");
+        CredentialFileCompiler.compile(configured, VERIFIERS, output);
+
+        // the previous mapping still reads the replaced file
+        assertTrue(verify(mapped, "alice", "alice-secret"));
+        assertTrue(verify(PackedCredentialStore.open(output, VERIFIERS), "alice", "changed-secret"));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    private static Credential credential(PackedCredentialStore store, String username) {
+        byte[] bytes = bytes(username);
+        return store.credential(bytes, 0, bytes.length);
+    }
+
+    private static boolean verify(PackedCredentialStore store, String username, String password) {
+        byte[] bytes = bytes(password);
+        return credential(store, username).verify(bytes, 0, bytes.length);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import com.grepplabs.kafka.security.sasl.authenticator.TestJaasConfig;
+import org.apache.kafka.common.security.JaasContext;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CredentialSnapshotTest {
+
+    @Test
+    public void testModulePrecedence() {
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        Map<String, Object> oldOptions = new HashMap<>();
+        oldOptions.put("user_alice", "old-alice");
+        oldOptions.put("user_bob", "old-bob");
+        oldOptions.put("user_carol", "old-carol");
+        jaasConfig.addEntry("jaasContext", org.apache.kafka.common.security.plain.PlainLoginModule.class.getName(), oldOptions);
+        Map<String, Object> options = new HashMap<>();
+        options.put("user_alice", "alice");
+        options.put("user_bob", "");
+        options.put("user_dave", "dave");
+        options.put("username", "admin");
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+        jaasConfig.addEntry("jaasContext", "test.OtherLoginModule", singleUser("user_eve", "eve"));
+
+        CredentialSnapshot snapshot = CredentialSnapshot.create(new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+
+        assertEquals(4, snapshot.userCount());
+        assertPassword(snapshot, "alice", "alice");
+        assertPassword(snapshot, "bob", "old-bob");
+        assertPassword(snapshot, "carol", "old-carol");
+        assertPassword(snapshot, "dave", "dave");
+        assertNull(snapshot.credential("eve"));
+        assertNull(snapshot.credential("admin"));
+    }
+
+    @Test
+    public void testFirstEntryWins() {
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), singleUser("user_alice", "first"));
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), singleUser("user_alice", "second"));
+
+        CredentialSnapshot snapshot = CredentialSnapshot.create(new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+
+        assertEquals(1, snapshot.userCount());
+        assertPassword(snapshot, "alice", "first");
+    }
+
+    @Test
+    public void testHashedCredentials() {
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        Map<String, Object> options = new HashMap<>();
+        options.put("user_alice", PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, bytes("alice-secret"), 1000, 0));
+        options.put("user_bob", PasswordEncoder.encode(HmacSha256PasswordVerifier.SCHEME, bytes("bob-secret"), 0, 0));
+        options.put("user_carol", "carol-secret");
+        options.put("user_dave", "{PBKDF2-SHA256}malformed");
+        options.put(PasswordVerifiers.PASSWORD_VERIFIERS_CONFIG, "PBKDF2-SHA256,HMAC-SHA256");
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+
+        CredentialSnapshot snapshot = CredentialSnapshot.create(new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+
+        assertEquals(2, snapshot.userCount());
+        assertPassword(snapshot, "alice", "alice-secret");
+        assertPassword(snapshot, "bob", "bob-secret");
+        assertNull("cleartext passwords are disabled", snapshot.credential("carol"));
+        assertNull(snapshot.credential("dave"));
+    }
+
+    @Test
+    public void testPackedStore() {
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        Map<String, Object> oldOptions = new HashMap<>();
+        oldOptions.put("user_alice", "old-alice");
+        oldOptions.put("user_bob", "old-bob");
+        jaasConfig.addEntry("jaasContext", org.apache.kafka.common.security.plain.PlainLoginModule.class.getName(), oldOptions);
+        Map<String, Object> options = new HashMap<>();
+        options.put("user_alice", "alice");
+        options.put("username", "admin");
+        options.put(CredentialStore.CREDENTIAL_STORE_CONFIG, "direct");
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+
+        CredentialSnapshot snapshot = CredentialSnapshot.create(new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+
+        assertTrue(snapshot.credentialStore() instanceof PackedCredentialStore);
+        assertEquals(2, snapshot.userCount());
+        assertPassword(snapshot, "alice", "alice");
+        assertPassword(snapshot, "bob", "old-bob");
+        assertEquals("admin", snapshot.jaasContext().configEntryOption("username", PlainLoginModule.class.getName()));
+        assertNull("user options are not retained", snapshot.jaasContext().configEntryOption("user_alice", PlainLoginModule.class.getName()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStore() {
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), singleUser(CredentialStore.CREDENTIAL_STORE_CONFIG, "tree"));
+
+        CredentialSnapshot.create(new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+    }
+
+    private static void assertPassword(CredentialSnapshot snapshot, String username, String password) {
+        byte[] bytes = bytes(password);
+        assertTrue(snapshot.credential(username).verify(bytes, 0, bytes.length));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Object> singleUser(String key, String value) {
+        Map<String, Object> options = new HashMap<>();
+        options.put(key, value);
+        return options;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.Test;
+
+import javax.security.sasl.SaslException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FailureThrottleTest {
+
+    private final VerificationCacheTest.MockTime time = new VerificationCacheTest.MockTime();
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        FailureThrottle throttle = FailureThrottle.create(Collections.<String, Object>emptyMap(), time);
+
+        assertFalse(throttle.isEnabled());
+        for (int i = 0; i < 100; i++) {
+            throttle.recordFailure(message("alice"));
+        }
+        assertFalse(throttle.isThrottled(message("alice")));
+        assertEquals(0, throttle.trackedUsers());
+    }
+
+    @Test
+    public void testUserBudget() throws Exception {
+        FailureThrottle throttle = FailureThrottle.create(options(FailureThrottle.USER_BURST_CONFIG, 3, FailureThrottle.USER_RATE_CONFIG, 6), time);
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(throttle.isThrottled(message("alice")));
+            throttle.recordFailure(message("alice"));
+        }
+        assertTrue(throttle.isThrottled(message("alice")));
+        assertFalse(throttle.isThrottled(message("bob")));
+
+        // 6 failures per minute refill a token every 10 seconds
+        time.sleep(9000);
+        assertTrue(throttle.isThrottled(message("alice")));
+        time.sleep(1000);
+        assertFalse(throttle.isThrottled(message("alice")));
+        throttle.recordFailure(message("alice"));
+        assertTrue(throttle.isThrottled(message("alice")));
+    }
+
+    @Test
+    public void testGlobalBudget() throws Exception {
+        FailureThrottle throttle = FailureThrottle.create(options(FailureThrottle.GLOBAL_BURST_CONFIG, 10, FailureThrottle.GLOBAL_RATE_CONFIG, 600), time);
+
+        for (int i = 0; i < 10; i++) {
+            assertFalse(throttle.isThrottled(message("user-" + i)));
+            throttle.recordFailure(message("user-" + i));
+        }
+        assertTrue("usernames with recent failures are throttled", throttle.isThrottled(message("user-0")));
+        assertFalse("usernames without failures are verified", throttle.isThrottled(message("alice")));
+        assertEquals(10, throttle.trackedUsers());
+
+        time.sleep(100);
+        assertFalse(throttle.isThrottled(message("user-0")));
+    }
+
+    @Test
+    public void testGlobalBudgetWithUserBudget() throws Exception {
+        Map<String, Object> options = options(FailureThrottle.GLOBAL_BURST_CONFIG, 2, FailureThrottle.GLOBAL_RATE_CONFIG, 1);
+        options.put(FailureThrottle.USER_BURST_CONFIG, "5");
+        FailureThrottle throttle = FailureThrottle.create(options, time);
+
+        throttle.recordFailure(message("mallory"));
+        throttle.recordFailure(message("mallory"));
+        assertTrue("the global budget is exhausted", throttle.isThrottled(message("mallory")));
+        assertFalse(throttle.isThrottled(message("alice")));
+
+        // the failures of a username are recent until its bucket is refilled, 6 per minute refill a token every 10 seconds
+        time.sleep(19000);
+        assertTrue(throttle.isThrottled(message("mallory")));
+        time.sleep(1000);
+        assertFalse(throttle.isThrottled(message("mallory")));
+    }
+
+    @Test
+    public void testTrackedUsersAreBounded() throws Exception {
+        Map<String, Object> options = options(FailureThrottle.USER_BURST_CONFIG, 1, FailureThrottle.USER_RATE_CONFIG, 60);
+        options.put(FailureThrottle.MAX_USERS_CONFIG, 2);
+        FailureThrottle throttle = FailureThrottle.create(options, time);
+
+        throttle.recordFailure(message("alice"));
+        throttle.recordFailure(message("bob"));
+        throttle.recordFailure(message("carol"));
+        assertEquals(2, throttle.trackedUsers());
+        assertTrue(throttle.isThrottled(message("alice")));
+        assertFalse("the map is full", throttle.isThrottled(message("carol")));
+
+        // refilled buckets are removed when the map is full
+        time.sleep(1000);
+        throttle.recordFailure(message("carol"));
+        assertEquals(1, throttle.trackedUsers());
+        assertTrue(throttle.isThrottled(message("carol")));
+        assertFalse(throttle.isThrottled(message("alice")));
+    }
+
+    @Test
+    public void testIsConfiguredBy() {
+        Map<String, Object> options = options(FailureThrottle.USER_BURST_CONFIG, 5, FailureThrottle.USER_RATE_CONFIG, 6);
+        FailureThrottle throttle = FailureThrottle.create(options, time);
+
+        assertTrue(throttle.isConfiguredBy(options));
+        assertFalse(throttle.isConfiguredBy(options(FailureThrottle.USER_BURST_CONFIG, 5, FailureThrottle.USER_RATE_CONFIG, 12)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        FailureThrottle.create(options(FailureThrottle.USER_BURST_CONFIG, 5, FailureThrottle.USER_RATE_CONFIG, 0), time);
+    }
+
+    @Test
+    public void testTokenBucket() {
+        long nowNs = 0L;
+        TokenBucket bucket = new TokenBucket(2, 100L, nowNs);
+
+        assertTrue(bucket.isFull(nowNs));
+        assertTrue(bucket.tryTake(nowNs));
+        assertFalse(bucket.isFull(nowNs));
+        assertTrue(bucket.tryTake(nowNs));
+        assertTrue(bucket.isEmpty(nowNs));
+        assertFalse(bucket.tryTake(nowNs));
+        assertTrue(bucket.isEmpty(nowNs + 99));
+        assertFalse(bucket.isEmpty(nowNs + 100));
+        assertTrue(bucket.isFull(nowNs + 200));
+    }
+
+    private static Map<String, Object> options(String burstConfig, int burst, String rateConfig, int rate) {
+        Map<String, Object> options = new HashMap<>();
+        options.put(burstConfig, String.valueOf(burst));
+        options.put(rateConfig, String.valueOf(rate));
+        return options;
+    }
+
+    private static PlainSaslMessage message(String username) throws SaslException {
+        PlainSaslMessage message = new PlainSaslMessage();
+        message.parse(("\u0000" + username + "\u0000password").getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+}
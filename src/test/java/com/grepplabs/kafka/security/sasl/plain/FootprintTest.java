@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import com.grepplabs.kafka.security.sasl.authenticator.TestJaasConfig;
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.security.JaasContext;
+import org.apache.kafka.common.security.authenticator.SaslServerCallbackHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.security.sasl.SaslServer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Retained heap per configured user and per connection, estimated by {@link ObjectGraph}. The tests fail when
+ * the footprint exceeds its budget. The numbers of users and connections are set with the system properties
+ * <code>footprint.users</code> (comma separated, default 1000,100000,1000000) and <code>footprint.connections</code> (default 10000).
+ */
+public class FootprintTest extends AbstractJaasContextTest {
+
+    // budgets in bytes, about a quarter above the footprint on a 64-bit JVM with compressed references
+    private static final long MAP_STORE_BYTES_PER_USER = 400;
+    private static final long PACKED_STORE_BYTES_PER_USER = 50;
+    private static final long BYTES_PER_CONNECTION = 180;
+
+    @Test
+    public void testFootprintPerUser() {
+        for (String store : new String[]{CredentialSnapshot.MAP_STORE, CredentialSnapshot.PACKED_STORE}) {
+            long budget = CredentialSnapshot.MAP_STORE.equals(store) ? MAP_STORE_BYTES_PER_USER : PACKED_STORE_BYTES_PER_USER;
+            long empty = ObjectGraph.sizeOf(snapshot(store, 0));
+            for (String users : System.getProperty("footprint.users", "1000,100000,1000000").split(",")) {
+                int count = Integer.parseInt(users.trim());
+                CredentialSnapshot snapshot = snapshot(store, count);
+                Assert.assertEquals(count, snapshot.userCount());
+                long perUser = (ObjectGraph.sizeOf(snapshot) - empty) / count;
+                System.out.printf("Footprint of %s store with %d users: %d bytes per user%n", store, count, perUser);
+                Assert.assertTrue("Footprint of " + store + " store with " + count + " users is " + perUser
+                        + " bytes per user, budget " + budget, perUser <= budget);
+            }
+        }
+    }
+
+    @Test
+    public void testFootprintPerUserOfConfigurationFile() throws Exception {
+        final int count = 100000;
+        long empty = providerFootprint(0);
+        long perUser = (providerFootprint(count) - empty) / count;
+        System.out.printf("Footprint of provider with %d users of the configuration file: %d bytes per user%n", count, perUser);
+        Assert.assertTrue("Footprint of provider with " + count + " users is " + perUser + " bytes per user, budget "
+                + PACKED_STORE_BYTES_PER_USER, perUser <= PACKED_STORE_BYTES_PER_USER);
+
+        writeUsers(count);
+        final PlainSaslServer.JaasContextProvider provider = PlainSaslServer.PlainSaslServerFactory.getJaasContextProvider(
+                JaasContext.Type.SERVER, new ListenerName("footprint"), Collections.<String, Object>emptyMap());
+        final long generation = provider.getGeneration();
+        PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.configFileChanged();
+        await().atMost(10, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return provider.getGeneration() != generation;
+            }
+        });
+        // the reload task returns before the configuration of the change is dropped
+        await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return ObjectGraph.sizeOf(PlainSaslServer.CONFIG_FILE_WATCH_SERVICE, provider) < count;
+            }
+        });
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+        PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+    }
+
+    /**
+     * @return the bytes retained by a provider of a packed store and by the watch service
+     */
+    private long providerFootprint(int users) throws Exception {
+        writeUsers(users);
+        PlainSaslServer.JaasContextProvider provider = PlainSaslServer.PlainSaslServerFactory.getJaasContextProvider(
+                JaasContext.Type.SERVER, new ListenerName("footprint"), Collections.<String, Object>emptyMap());
+        Assert.assertEquals(users, provider.getUserCount());
+        Assert.assertEquals("no previous snapshot is kept", -1L, provider.getPreviousGeneration());
+        long bytes = ObjectGraph.sizeOf(new Object[]{provider, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE});
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+        // the next configuration is not reloaded by the watcher of this provider
+        PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+        return bytes;
+    }
+
+    private void writeUsers(int users) throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("KafkaServer {");
+        lines.add(PlainLoginModule.class.getName() + " required " + CredentialStore.CREDENTIAL_STORE_CONFIG + "=\"" + CredentialSnapshot.PACKED_STORE + "\"");
+        for (int i = 0; i < users; i++) {
+            lines.add("user_user" + i + "=\"user" + i + "-secret\"");
+        }
+        lines.add(";};");
+        writeConfiguration(lines);
+    }
+
+    @Test
+    public void testFootprintPerConnection() throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("KafkaServer {");
+        lines.add(PlainLoginModule.class.getName() + " required");
+        for (int i = 0; i < 1000; i++) {
+            lines.add("user_user" + i + "=\"user" + i + "-secret\"");
+        }
+        lines.add(";};");
+        writeConfiguration(lines);
+        int listenersCount = PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount();
+
+        PlainSaslServer.PlainSaslServerFactory factory = new PlainSaslServer.PlainSaslServerFactory();
+        JaasContext jaasContext = JaasContext.load(JaasContext.Type.SERVER, new ListenerName("footprint"), Collections.<String, Object>emptyMap());
+        SaslServerCallbackHandler callbackHandler = new SaslServerCallbackHandler(jaasContext, null);
+        Map<String, Object> props = Collections.emptyMap();
+        int connections = Integer.getInteger("footprint.connections", 10000);
+        SaslServer[] servers = new SaslServer[connections];
+        for (int i = 0; i < connections; i++) {
+            servers[i] = factory.createSaslServer(PlainSaslServer.PLAIN_MECHANISM, PlainSaslServer.PlainSaslServerFactory.KAFKA_SASL_PROTOCOL,
+                    "localhost", props, callbackHandler);
+            String username = "user" + (i % 1000);
+            servers[i].evaluateResponse(("\u0000" + username + "\u0000" + username + "-secret").getBytes("UTF-8"));
+        }
+        Assert.assertEquals("Connections share the listener of the configuration file",
+                listenersCount + 1, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount());
+
+        PlainSaslServer.JaasContextProvider provider = PlainSaslServer.PlainSaslServerFactory.getJaasContextProvider(JaasContext.Type.SERVER,
+                PlainSaslServer.PlainSaslServerFactory.getListenerName(JaasContext.Type.SERVER, jaasContext.name(),
+                        PlainSaslServer.PlainSaslServerFactory.KAFKA_SASL_PROTOCOL), props);
+        long perConnection = (ObjectGraph.sizeOf(servers, provider, callbackHandler) - ObjectGraph.sizeOf(new SaslServer[connections])) / connections;
+        System.out.printf("Footprint of %d connections: %d bytes per connection%n", connections, perConnection);
+        Assert.assertTrue("Footprint is " + perConnection + " bytes per connection, budget " + BYTES_PER_CONNECTION,
+                perConnection <= BYTES_PER_CONNECTION);
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+        PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+    }
+
+    private static CredentialSnapshot snapshot(String store, int users) {
+        Map<String, Object> options = new HashMap<>();
+        options.put(CredentialStore.CREDENTIAL_STORE_CONFIG, store);
+        for (int i = 0; i < users; i++) {
+            options.put("user_user" + i, "user" + i + "-secret");
+        }
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+        return CredentialSnapshot.create(new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+    }
+}
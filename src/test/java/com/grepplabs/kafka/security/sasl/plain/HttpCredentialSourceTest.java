@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class HttpCredentialSourceTest {
+
+    private final Map<String, String> requests = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private HttpCredentialSource source;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/users/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String username = exchange.getRequestURI().getPath().substring("/users/".length());
+                String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+                requests.put(username, authorization != null ? authorization : "");
+                switch (username) {
+                    case "alice":
+                        respond(exchange, 200, "{\"id\": 1, \"groups\": [\"a\", {\"b\": null}], \"credential\": \"alice-secret\"}");
+                        break;
+                    case "bob smith":
+                        respond(exchange, 200, "{\"credential\":\"{PLAIN}b\\u00f6b \\\"quoted\\\"\"}");
+                        break;
+                    case "disabled":
+                        respond(exchange, 200, "{\"credential\": null}");
+                        break;
+                    case "broken":
+                        respond(exchange, 500, "{\"error\": \"unavailable\"}");
+                        break;
+                    case "malformed":
+                        respond(exchange, 200, "{\"credential\": \"unterminated}");
+                        break;
+                    default:
+                        respond(exchange, 404, "{}");
+                }
+            }
+        });
+        server.start();
+        source = new HttpCredentialSource();
+        Map<String, Object> options = new HashMap<>();
+        options.put(HttpCredentialSource.URL_CONFIG, "http://127.0.0.1:" + server.getAddress().getPort() + "/users/{username}");
+        options.put(HttpCredentialSource.AUTHORIZATION_CONFIG, "Bearer token");
+        source.configure(options);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCredential() throws IOException {
+        assertEquals("alice-secret", source.credential("alice"));
+        assertEquals("Bearer token", requests.get("alice"));
+        assertEquals("{PLAIN}b\u00f6b \"quoted\"", source.credential("bob smith"));
+    }
+
+    @Test
+    public void testUnknownUser() throws IOException {
+        assertNull(source.credential("carol"));
+        assertNull(source.credential("disabled"));
+    }
+
+    @Test
+    public void testErrors() {
+        for (String username : new String[]{"broken", "malformed"}) {
+            try {
+                source.credential(username);
+                fail("IOException expected for " + username);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUrlWithoutPlaceholder() {
+        new HttpCredentialSource().configure(Collections.singletonMap(HttpCredentialSource.URL_CONFIG, "http://localhost/users"));
+    }
+
+    @Test
+    public void testJsonField() throws IOException {
+        assertEquals("x", HttpCredentialSource.JsonField.stringField(" { \"a\" : [1, 2.5e3, true, []], \"credential\" : \"x\" } ", "credential"));
+        assertEquals("\u00e9/\n", HttpCredentialSource.JsonField.stringField("{\"credential\":\"\\u00e9\\/\\n\"}", "credential"));
+        assertInvalidJson("{}");
+        assertInvalidJson("{\"credential\": 1}");
+        assertInvalidJson("{\"credential\": \"x\"} trailing");
+        assertInvalidJson("[\"credential\"]");
+        assertInvalidJson("{\"credential\": \"\\x\"}");
+    }
+
+    private static void assertInvalidJson(String json) {
+        try {
+            HttpCredentialSource.JsonField.stringField(json, "credential");
+            fail("IOException expected for " + json);
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.security.JaasContext;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.URIParameter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JaasConfigParserTest {
+
+    private static final JaasConfigParser.SectionFilter ALL_SECTIONS = new JaasConfigParser.SectionFilter() {
+        @Override
+        public boolean accept(String name) {
+            return true;
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameEntriesAsJdk() throws Exception {
+        System.setProperty("jaas.parser.test.password", "expanded-secret");
+        List<String> lines = Arrays.asList(
+                "// line comment",
+                "KafkaServer {",
+                "   /* block",
+                "      comment */",
+                "   com.grepplabs.kafka.security.sasl.plain.PlainLoginModule required",
+                "   username=\"admin\"",
+                "   password=\"admin secret\"",
+                "   user_admin=\"admin-secret\"",
+                "   user_alice=\"a\\\\b\\\"c\\tend\"",
+                "   user_bob=\"${jaas.parser.test.password}\"",
+                "   user_carol=\"dir${/}file\"",
+                "   \"user_dave\"=unquoted_value-1.2",
+                "   user_eve=\"\\101\\60\";",
+                "   org.apache.kafka.common.security.plain.PlainLoginModule OPTIONAL;",
+                "};",
+                "sasl_ssl.KafkaServer { test.Module Sufficient; };",
+                "KafkaClient { test.ClientModule requisite option=\"value\"; };");
+        File file = write(lines);
+
+        Configuration jdk = Configuration.getInstance("JavaLoginConfig", new URIParameter(file.toURI()));
+        Map<String, AppConfigurationEntry[]> sections = parse(lines, ALL_SECTIONS);
+
+        assertEquals(Arrays.asList("KafkaServer", "sasl_ssl.KafkaServer", "KafkaClient"), Arrays.asList(sections.keySet().toArray()));
+        for (String name : sections.keySet()) {
+            assertSameEntries(jdk.getAppConfigurationEntry(name), sections.get(name));
+        }
+        Map<String, ?> options = sections.get("KafkaServer")[0].getOptions();
+        assertEquals("a\\b\"c\tend", options.get("user_alice"));
+        assertEquals("expanded-secret", options.get("user_bob"));
+        assertEquals("dir" + File.separator + "file", options.get("user_carol"));
+        assertEquals("unquoted_value-1.2", options.get("user_dave"));
+        assertEquals("A0", options.get("user_eve"));
+    }
+
+    @Test
+    public void testSectionFilter() throws Exception {
+        File file = write(Arrays.asList(
+                "KafkaClient { test.ClientModule required; };",
+                "KafkaServer { test.ServerModule required user_alice=\"alice\"; };",
+                "plaintext.KafkaServer { test.ListenerModule required; };"));
+
+        JaasFileConfiguration configuration = JaasFileConfiguration.load(file.toPath());
+
+        assertNull(configuration.getAppConfigurationEntry("KafkaClient"));
+        assertNotNull(configuration.getAppConfigurationEntry("KafkaServer"));
+        JaasContext listenerContext = configuration.serverContext(new ListenerName("PLAINTEXT"));
+        assertEquals("plaintext.KafkaServer", listenerContext.name());
+        assertEquals("test.ListenerModule", listenerContext.configurationEntries().get(0).getLoginModuleName());
+        JaasContext globalContext = configuration.serverContext(new ListenerName("SASL_SSL"));
+        assertEquals("KafkaServer", globalContext.name());
+        assertEquals("alice", globalContext.configEntryOption("user_alice", "test.ServerModule"));
+    }
+
+    @Test
+    public void testNoServerSection() throws Exception {
+        File file = write(Arrays.asList("KafkaClient { test.ClientModule required; };"));
+        assertNull(JaasFileConfiguration.load(file.toPath()).serverContext(new ListenerName("PLAINTEXT")));
+    }
+
+    @Test
+    public void testInvalidConfiguration() throws Exception {
+        assertInvalid("KafkaServer { required option1=value1; };", "Line 1");
+        assertInvalid("KafkaServer { test.LoginModule option1=value1; };", "Invalid control flag");
+        assertInvalid("KafkaServer { test.LoginModule required option1; };", "expected [=], found [;]");
+        assertInvalid("KafkaServer {\n test.LoginModule required option1=value1\n};", "Line 3");
+        assertInvalid("KafkaServer { test.LoginModule required option1=3; };", "found [3]");
+        assertInvalid("KafkaServer { test.LoginModule required option1='value1'; };", "found ['value1']");
+        assertInvalid("KafkaServer { test.LoginModule required; }", "end of file");
+        assertInvalid("KafkaServer { test.LoginModule required option1=\"${jaas.parser.test.undefined}\"; };", "Unable to expand");
+        assertInvalid("KafkaServer { test.LoginModule required; };\nKafkaServer { test.LoginModule required; };", "multiple entries");
+        // sections skipped by the filter are validated as well
+        assertInvalid("KafkaClient { test.LoginModule required option1; };", "expected [=]");
+    }
+
+    @Test
+    public void testLargeFile() throws Exception {
+        StringBuilder builder = new StringBuilder("KafkaServer {\n  com.grepplabs.kafka.security.sasl.plain.PlainLoginModule required\n");
+        for (int i = 0; i < 200000; i++) {
+            builder.append("  user_user").append(i).append("=\"secret-").append(i).append("\"\n");
+        }
+        builder.append(";\n};\n");
+
+        Map<String, AppConfigurationEntry[]> sections = JaasConfigParser.parse(new StringReader(builder.toString()), ALL_SECTIONS);
+
+        Map<String, ?> options = sections.get("KafkaServer")[0].getOptions();
+        assertEquals(200000, options.size());
+        assertEquals("secret-199999", options.get("user_user199999"));
+    }
+
+    private void assertInvalid(String config, String message) throws IOException {
+        try {
+            JaasConfigParser.parse(new StringReader(config), new JaasConfigParser.SectionFilter() {
+                @Override
+                public boolean accept(String name) {
+                    return name.endsWith("KafkaServer");
+                }
+            });
+            fail("Invalid JAAS configuration didn't throw exception: " + config);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+        File file = write(Arrays.asList(config));
+        try {
+            Configuration.getInstance("JavaLoginConfig", new URIParameter(file.toURI())).getAppConfigurationEntry("KafkaServer");
+            fail("JDK accepted the invalid JAAS configuration: " + config);
+        } catch (Exception e) {
+            // expected, the JDK rejects the configuration as well
+        }
+    }
+
+    private static void assertSameEntries(AppConfigurationEntry[] expected, AppConfigurationEntry[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getLoginModuleName(), actual[i].getLoginModuleName());
+            assertEquals(expected[i].getControlFlag(), actual[i].getControlFlag());
+            assertEquals(expected[i].getOptions(), actual[i].getOptions());
+        }
+    }
+
+    private static Map<String, AppConfigurationEntry[]> parse(List<String> lines, JaasConfigParser.SectionFilter filter) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        return JaasConfigParser.parse(new StringReader(builder.toString()), filter);
+    }
+
+    private File write(List<String> lines) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -21,18 +21,31 @@ import org.apache.kafka.common.network.ListenerName;
 import org.apache.kafka.common.security.JaasContext;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.security.auth.login.AppConfigurationEntry;
 import javax.security.auth.login.AppConfigurationEntry.LoginModuleControlFlag;
+import javax.security.auth.login.Configuration;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import static com.grepplabs.kafka.security.sasl.plain.PlainSaslServer.PlainSaslServerFactory.getListenerName;
+import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 
@@ -154,6 +167,254 @@ public class JaasContextProviderTest extends AbstractJaasContextTest {
                 Collections.<String, Object>emptyMap());
     }
 
+    @Test
+    public void testReloadWithoutGlobalConfigurationRefresh() throws Exception {
+        writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName() + " required user_alice=\"alice\";");
+        final PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(JaasContext.Type.SERVER,
+                new ListenerName("plaintext"), Collections.<String, Object>emptyMap());
+        assertTrue(provider.get().configuration() instanceof JaasFileConfiguration);
+        assertEquals(TestJaasConfig.LOGIN_CONTEXT_SERVER, provider.get().name());
+        provider.init();
+        try {
+            writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName() + " required user_bob=\"bob\";", false);
+            PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.configFileChanged();
+            await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return provider.snapshot().credential("bob") != null;
+                }
+            });
+            assertNull(provider.snapshot().credential("alice"));
+            // the JVM wide configuration is not refreshed
+            AppConfigurationEntry[] entries = Configuration.getConfiguration().getAppConfigurationEntry(TestJaasConfig.LOGIN_CONTEXT_SERVER);
+            assertEquals("alice", entries[0].getOptions().get("user_alice"));
+        } finally {
+            provider.dispose();
+        }
+    }
+
+    @Test
+    public void testChangeBeforeRegistrationIsReloaded() throws Exception {
+        writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName() + " required user_alice=\"alice\";");
+        PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(JaasContext.Type.SERVER,
+                new ListenerName("plaintext"), Collections.<String, Object>emptyMap());
+        assertNotNull(provider.snapshot().credential("alice"));
+        writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName() + " required user_bob=\"bob\";", false);
+        // the change is notified before the provider is registered
+        PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.configFileChanged();
+        provider.init();
+        try {
+            assertNotNull(provider.snapshot().credential("bob"));
+            assertNull(provider.snapshot().credential("alice"));
+        } finally {
+            provider.dispose();
+        }
+    }
+
+    @Test
+    public void testReloadOnCredentialFileChange() throws Exception {
+        final Path credentialFile = Files.createTempFile("users", ".cred");
+        CredentialFileCompiler.compile(Collections.singletonMap("alice", "alice"),
+                PasswordVerifiers.create(Collections.<String, Object>emptyMap()), credentialFile);
+        writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName()
+                + " required credential.file=\"" + credentialFile + "\" user_carol=\"carol\";");
+        final PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(JaasContext.Type.SERVER,
+                new ListenerName("plaintext"), Collections.<String, Object>emptyMap());
+        assertEquals(credentialFile, provider.snapshot().credentialFile());
+        assertNotNull(provider.snapshot().credential("alice"));
+        assertNull("user options are ignored", provider.snapshot().credential("carol"));
+        provider.init();
+        try {
+            assertEquals(1, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getFileWatchersCount());
+            // let the watcher register before the change
+            Thread.sleep(200);
+            CredentialFileCompiler.compile(Collections.singletonMap("bob", "bob"),
+                    PasswordVerifiers.create(Collections.<String, Object>emptyMap()), credentialFile);
+            await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return provider.snapshot().credential("bob") != null;
+                }
+            });
+            assertNull(provider.snapshot().credential("alice"));
+        } finally {
+            provider.dispose();
+            PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+            Files.delete(credentialFile);
+        }
+    }
+
+    @Test
+    public void testReloadOnCredentialShardChange() throws Exception {
+        final Path directory = Files.createTempDirectory("shards");
+        Files.write(directory.resolve("tenant-a"), Collections.singletonList("alice=alice"), StandardCharsets.UTF_8);
+        Files.write(directory.resolve("tenant-b"), Collections.singletonList("bob=bob"), StandardCharsets.UTF_8);
+        writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName()
+                + " required reload.invalid.credentials=\"reject\" credential.directory=\"" + directory + "\";");
+        final PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(JaasContext.Type.SERVER,
+                new ListenerName("plaintext"), Collections.<String, Object>emptyMap());
+        assertEquals(2, provider.snapshot().userCount());
+        long generation = provider.getGeneration();
+        provider.init();
+        try {
+            // let the watcher register before the change
+            Thread.sleep(200);
+            Files.write(directory.resolve("tenant-a"), Arrays.asList("alice=alice", "carol=carol"), StandardCharsets.UTF_8);
+            await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return provider.snapshot().credential("carol") != null;
+                }
+            });
+            assertNotNull(provider.snapshot().credential("bob"));
+            assertEquals("a shard is merged in place", generation, provider.getGeneration());
+
+            Files.write(directory.resolve("tenant-b"), Arrays.asList("bob=bob", "dave={PBKDF2-SHA256}malformed"), StandardCharsets.UTF_8);
+            Files.write(directory.resolve("tenant-c"), Collections.singletonList("eve=eve"), StandardCharsets.UTF_8);
+            await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return provider.snapshot().credential("eve") != null;
+                }
+            });
+            assertEquals("the shard with an invalid credential is rejected", 4, provider.snapshot().userCount());
+        } finally {
+            provider.dispose();
+            PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+            for (String shard : Arrays.asList("tenant-a", "tenant-b", "tenant-c")) {
+                Files.delete(directory.resolve(shard));
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testRejectedReloadAndRollback() throws Exception {
+        writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName()
+                + " required reload.min.users=\"1\" user_alice=\"alice\";");
+        PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(JaasContext.Type.SERVER,
+                new ListenerName("rollback"), Collections.<String, Object>emptyMap());
+        provider.init();
+        try {
+            long firstGeneration = provider.getGeneration();
+            assertEquals(-1L, provider.getPreviousGeneration());
+
+            reload(provider, " required reload.min.users=\"1\" user_bob=\"bob\";");
+            assertNotNull(provider.snapshot().credential("bob"));
+            assertTrue(provider.getGeneration() > firstGeneration);
+            assertEquals(firstGeneration, provider.getPreviousGeneration());
+
+            long secondGeneration = provider.getGeneration();
+            reload(provider, " required reload.min.users=\"1\";");
+            assertEquals("a reload without users is rejected", secondGeneration, provider.getGeneration());
+            assertNotNull(provider.snapshot().credential("bob"));
+
+            ObjectName name = new ObjectName(PlainSaslMetrics.JMX_PREFIX + ":type=" + PlainSaslMetrics.CREDENTIAL_SNAPSHOTS_TYPE + ",listener=rollback");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(secondGeneration, server.getAttribute(name, "Generation"));
+            assertEquals(firstGeneration, server.invoke(name, "rollback", new Object[0], new String[0]));
+            assertEquals(firstGeneration, provider.getGeneration());
+            assertNotNull(provider.snapshot().credential("alice"));
+            assertNull(provider.snapshot().credential("bob"));
+            assertEquals(-1L, provider.getPreviousGeneration());
+            try {
+                provider.rollback();
+                fail("Only one step can be rolled back");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            provider.dispose();
+        }
+        assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName(PlainSaslMetrics.JMX_PREFIX
+                + ":type=" + PlainSaslMetrics.CREDENTIAL_SNAPSHOTS_TYPE + ",listener=rollback"), null).isEmpty());
+    }
+
+    @Test
+    public void testRollbackRescansCredentialShards() throws Exception {
+        Path directory = Files.createTempDirectory("shards");
+        Files.write(directory.resolve("tenant-a"), Collections.singletonList("alice=alice"), StandardCharsets.UTF_8);
+        Files.write(directory.resolve("tenant-b"), Collections.singletonList("bob=bob"), StandardCharsets.UTF_8);
+        writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName()
+                + " required credential.directory=\"" + directory + "\";");
+        PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(JaasContext.Type.SERVER,
+                new ListenerName("rollback-shards"), Collections.<String, Object>emptyMap());
+        provider.init();
+        try {
+            long firstGeneration = provider.getGeneration();
+            reload(provider, " required reload.min.users=\"1\" credential.directory=\"" + directory + "\";");
+            assertEquals(firstGeneration, provider.getPreviousGeneration());
+
+            // the shard changes are merged into the active snapshot only
+            Files.write(directory.resolve("tenant-a"), Arrays.asList("alice=alice", "carol=carol"), StandardCharsets.UTF_8);
+            Files.delete(directory.resolve("tenant-b"));
+            Files.write(directory.resolve("tenant-c"), Collections.singletonList("eve=eve"), StandardCharsets.UTF_8);
+            provider.credentialShardsChanged(directory, new HashSet<>(Arrays.asList(
+                    directory.resolve("tenant-a"), directory.resolve("tenant-b"), directory.resolve("tenant-c"))));
+            assertNotNull(provider.snapshot().credential("carol"));
+
+            assertEquals(firstGeneration, provider.rollback());
+            assertNotNull(provider.snapshot().credential("alice"));
+            assertNotNull("a changed shard is read again", provider.snapshot().credential("carol"));
+            assertNotNull("an added shard is read", provider.snapshot().credential("eve"));
+            assertNull("a removed shard is dropped", provider.snapshot().credential("bob"));
+            assertEquals(3, provider.snapshot().userCount());
+        } finally {
+            provider.dispose();
+            PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+            for (String shard : Arrays.asList("tenant-a", "tenant-c")) {
+                Files.delete(directory.resolve(shard));
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testShardChangeInvalidatesVerificationCache() throws Exception {
+        Path directory = Files.createTempDirectory("shards");
+        Path shard = directory.resolve("tenant-a");
+        Files.write(shard, Collections.singletonList("alice=" + pbkdf2("old-secret")), StandardCharsets.UTF_8);
+        writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName()
+                + " required credential.directory=\"" + directory + "\";");
+        PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(JaasContext.Type.SERVER,
+                new ListenerName("rotation"), Collections.<String, Object>emptyMap());
+        provider.init();
+        try {
+            long hits = provider.verificationCacheStats().hits();
+            assertTrue(verify(provider.snapshot(), "alice", "old-secret"));
+            assertTrue(verify(provider.snapshot(), "alice", "old-secret"));
+            assertEquals("the verification is cached", hits + 1, provider.verificationCacheStats().hits());
+
+            Files.write(shard, Collections.singletonList("alice=" + pbkdf2("new-secret")), StandardCharsets.UTF_8);
+            provider.credentialShardsChanged(directory, Collections.singleton(shard));
+
+            assertFalse("the old password is rejected at once", verify(provider.snapshot(), "alice", "old-secret"));
+            assertTrue(verify(provider.snapshot(), "alice", "new-secret"));
+        } finally {
+            provider.dispose();
+            PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+            Files.delete(shard);
+            Files.delete(directory);
+        }
+    }
+
+    private static String pbkdf2(String password) {
+        return PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, password.getBytes(StandardCharsets.UTF_8), 1000, 0);
+    }
+
+    private static boolean verify(CredentialSnapshot snapshot, String username, String password) throws Exception {
+        PlainSaslMessage message = new PlainSaslMessage();
+        message.parse(("\u0000" + username + "\u0000" + password).getBytes(StandardCharsets.UTF_8));
+        long cacheVersion = snapshot.verificationCacheVersion();
+        return snapshot.verify(message, snapshot.credential(username), cacheVersion);
+    }
+
+    private void reload(PlainSaslServer.JaasContextProvider provider, String moduleOptions) throws IOException {
+        writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName() + moduleOptions, false);
+        PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.loadJaasConfiguration();
+        provider.configFileChanged();
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testListenerNameShouldNotBeNullForSERVER() {
         new PlainSaslServer.JaasContextProvider(JaasContext.Type.SERVER, null, Collections.<String, Object>emptyMap());
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value = 0; value < 100000; value++) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= value);
+            assertTrue(value < LatencyHistogram.lowerBound(bucket + 1));
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0.0, histogram.mean(), 0.0);
+        assertEquals(0, histogram.percentile(0.99));
+        assertEquals(0, histogram.max());
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(10000, histogram.count());
+        assertEquals(5000500.0, histogram.mean(), 0.0);
+        assertEquals(10000000, histogram.max());
+        assertWithin(5000000, histogram.percentile(0.5));
+        assertWithin(9900000, histogram.percentile(0.99));
+        assertWithin(1000, histogram.percentile(0.0));
+        assertWithin(10000000, histogram.percentile(1.0));
+    }
+
+    @Test
+    public void testNegativeValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.percentile(0.5));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 8);
+    }
+}
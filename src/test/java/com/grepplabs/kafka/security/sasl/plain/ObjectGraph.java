@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Walker of an object graph which estimates the retained heap of the objects reachable from a root by their
+ * field layout, like JOL does without an agent. The offsets of the fields and the sizes of the headers are
+ * taken from sun.misc.Unsafe, so the estimate follows the compressed references and alignment of the running JVM.
+ * Static fields, classes, class loaders, threads, enum constants and the referents of references are not followed.
+ */
+final class ObjectGraph {
+    private static final int ALIGNMENT = 8;
+
+    private static final Object UNSAFE;
+    private static final Method OBJECT_FIELD_OFFSET;
+    private static final Method GET_OBJECT;
+    private static final Method ARRAY_BASE_OFFSET;
+    private static final int OBJECT_HEADER;
+    private static final int REFERENCE_SIZE;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            UNSAFE = theUnsafe.get(null);
+            OBJECT_FIELD_OFFSET = unsafeClass.getMethod("objectFieldOffset", Field.class);
+            GET_OBJECT = unsafeClass.getMethod("getObject", Object.class, long.class);
+            ARRAY_BASE_OFFSET = unsafeClass.getMethod("arrayBaseOffset", Class.class);
+            OBJECT_HEADER = (int) (long) (Long) OBJECT_FIELD_OFFSET.invoke(UNSAFE, Probe.class.getDeclaredField("field"));
+            REFERENCE_SIZE = (Integer) unsafeClass.getMethod("arrayIndexScale", Class.class).invoke(UNSAFE, Object[].class);
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Map<Class<?>, Layout> layouts = new HashMap<>();
+    private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    private long bytes;
+
+    /**
+     * @return the estimated bytes retained by the root, without the objects reachable from the shared roots
+     */
+    static long sizeOf(Object root, Object... shared) {
+        ObjectGraph graph = new ObjectGraph();
+        for (Object object : shared) {
+            graph.walk(object);
+        }
+        graph.bytes = 0;
+        graph.walk(root);
+        return graph.bytes;
+    }
+
+    private void walk(Object root) {
+        Deque<Object> pending = new ArrayDeque<>();
+        push(pending, root);
+        while (!pending.isEmpty()) {
+            Object object = pending.pop();
+            Class<?> type = object.getClass();
+            if (type.isArray()) {
+                int length = Array.getLength(object);
+                bytes += align(arrayBaseOffset(type) + (long) length * elementSize(type.getComponentType()));
+                if (!type.getComponentType().isPrimitive()) {
+                    for (Object element : (Object[]) object) {
+                        push(pending, element);
+                    }
+                }
+            } else {
+                Layout layout = layout(type);
+                bytes += layout.size;
+                for (long offset : layout.references) {
+                    push(pending, getObject(object, offset));
+                }
+            }
+        }
+    }
+
+    private void push(Deque<Object> pending, Object object) {
+        if (object == null || object instanceof Class || object instanceof ClassLoader || object instanceof Thread
+                || object instanceof Enum) {
+            return;
+        }
+        if (visited.add(object)) {
+            pending.push(object);
+        }
+    }
+
+    private Layout layout(Class<?> type) {
+        Layout layout = layouts.get(type);
+        if (layout == null) {
+            layout = new Layout(type);
+            layouts.put(type, layout);
+        }
+        return layout;
+    }
+
+    private static final class Layout {
+        final long size;
+        final List<Long> references = new ArrayList<>();
+
+        Layout(Class<?> type) {
+            long end = OBJECT_HEADER;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    long offset = objectFieldOffset(field);
+                    if (offset < 0) {
+                        continue;
+                    }
+                    end = Math.max(end, offset + elementSize(field.getType()));
+                    boolean referent = c == Reference.class && "referent".equals(field.getName());
+                    if (!field.getType().isPrimitive() && !referent) {
+                        references.add(offset);
+                    }
+                }
+            }
+            this.size = align(end);
+        }
+    }
+
+    private static int elementSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE_SIZE;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static long objectFieldOffset(Field field) {
+        try {
+            return (Long) OBJECT_FIELD_OFFSET.invoke(UNSAFE, field);
+        } catch (Exception e) {
+            // fields of hidden classes have no offset
+            return -1;
+        }
+    }
+
+    private static int arrayBaseOffset(Class<?> type) {
+        try {
+            return (Integer) ARRAY_BASE_OFFSET.invoke(UNSAFE, type);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object getObject(Object object, long offset) {
+        try {
+            return GET_OBJECT.invoke(UNSAFE, object, offset);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Probe {
+        int field;
+    }
+}
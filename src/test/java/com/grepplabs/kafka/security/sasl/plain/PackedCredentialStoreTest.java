@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PackedCredentialStoreTest {
+
+    private static final PasswordVerifiers VERIFIERS = PasswordVerifiers.create(Collections.<String, Object>emptyMap());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHeapStore() {
+        assertStore(false);
+    }
+
+    @Test
+    public void testDirectStore() {
+        assertStore(true);
+    }
+
+    private static void assertStore(boolean direct) {
+        Map<String, String> configured = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            configured.put("user-" + i, "secret-" + i);
+        }
+        PackedCredentialStore store = PackedCredentialStore.create(configured, VERIFIERS, direct);
+
+        assertEquals(direct, store.isDirect());
+        assertEquals(1000, store.size());
+        for (int i = 0; i < 1000; i++) {
+            Credential credential = credential(store, "user-" + i);
+            assertEquals(PlainPasswordVerifier.SCHEME, credential.scheme());
+            assertTrue(verify(credential, "secret-" + i));
+            assertFalse(verify(credential, "secret-" + (i + 1)));
+            assertFalse(verify(credential, "secret-" + i + "0"));
+        }
+        assertNull(credential(store, "user-1000"));
+        assertNull(credential(store, "user-"));
+        assertNull(credential(store, ""));
+    }
+
+    @Test
+    public void testLookupInMessageBytes() {
+        PackedCredentialStore store = PackedCredentialStore.create(Collections.singletonMap("alice", "alice-secret"), VERIFIERS, false);
+        byte[] message = bytes("\u0000alice\u0000alice-secret");
+
+        Credential credential = store.credential(message, 1, 5);
+
+        assertTrue(credential.verify(message, 7, 12));
+        assertNull(store.credential(message, 0, 6));
+    }
+
+    @Test
+    public void testHashedCredentials() {
+        Map<String, String> configured = new HashMap<>();
+        configured.put("alice", PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, bytes("alice-secret"), 1000, 0));
+        configured.put("bob", PasswordEncoder.encode(HmacSha256PasswordVerifier.SCHEME, bytes("bob-secret"), 0, 0));
+        configured.put("carol", "{PLAIN}carol-secret");
+        PackedCredentialStore store = PackedCredentialStore.create(configured, VERIFIERS, false);
+
+        assertEquals(3, store.size());
+        assertEquals(Pbkdf2PasswordVerifier.SCHEME, credential(store, "alice").scheme());
+        assertTrue(verify(credential(store, "alice"), "alice-secret"));
+        assertFalse(verify(credential(store, "alice"), "bob-secret"));
+        assertEquals(HmacSha256PasswordVerifier.SCHEME, credential(store, "bob").scheme());
+        assertTrue(verify(credential(store, "bob"), "bob-secret"));
+        assertTrue(verify(credential(store, "carol"), "carol-secret"));
+    }
+
+    @Test
+    public void testInvalidCredentialsAreIgnored() {
+        Map<String, String> configured = new HashMap<>();
+        configured.put("alice", "alice-secret");
+        configured.put("bob", "{PBKDF2-SHA256}malformed");
+        configured.put(new String(new char[256]).replace('\0', 'x'), "long-username");
+        PackedCredentialStore store = PackedCredentialStore.create(configured, VERIFIERS, false);
+
+        assertEquals(1, store.size());
+        assertNull(credential(store, "bob"));
+        assertTrue(verify(credential(store, "alice"), "alice-secret"));
+    }
+
+    @Test
+    public void testUtf8Username() {
+        PackedCredentialStore store = PackedCredentialStore.create(Collections.singletonMap("älice", "pässword"), VERIFIERS, false);
+
+        assertTrue(verify(credential(store, "älice"), "pässword"));
+        assertNull(credential(store, "alice"));
+    }
+
+    @Test
+    public void testEmptyStore() {
+        PackedCredentialStore store = PackedCredentialStore.create(Collections.<String, String>emptyMap(), VERIFIERS, false);
+
+        assertEquals(0, store.size());
+        assertNull(credential(store, "alice"));
+    }
+
+    @Test
+    public void testCapacity() {
+        Map<String, String> configured = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            configured.put(String.format("user-%06d", i), String.format("secret-%06d", i));
+        }
+        PackedCredentialStore store = PackedCredentialStore.create(configured, VERIFIERS, true);
+
+        // 4 bytes of the record header, 11 bytes of username, 13 bytes of password and at most 4 slots of 4 bytes
+        assertTrue("capacity " + store.capacity(), store.capacity() <= 100000 * (4 + 11 + 13 + 16));
+        assertTrue(verify(credential(store, "user-099999"), "secret-099999"));
+    }
+
+    @Test
+    public void testCredentialFile() throws Exception {
+        Map<String, String> configured = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            configured.put("user-" + i, "secret-" + i);
+        }
+        configured.put("alice", PasswordEncoder.encode(HmacSha256PasswordVerifier.SCHEME, bytes("alice-secret"), 0, 0));
+        Path file = folder.getRoot().toPath().resolve("users.cred");
+        CredentialFileCompiler.compile(configured, VERIFIERS, file);
+
+        PackedCredentialStore store = PackedCredentialStore.open(file, VERIFIERS);
+
+        assertTrue("mapped buffers are direct", store.isDirect());
+        store.warmUp();
+        assertEquals(101, store.size());
+        assertTrue(verify(credential(store, "user-42"), "secret-42"));
+        assertFalse(verify(credential(store, "user-42"), "secret-43"));
+        assertEquals(HmacSha256PasswordVerifier.SCHEME, credential(store, "alice").scheme());
+        assertTrue(verify(credential(store, "alice"), "alice-secret"));
+        assertNull(credential(store, "bob"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCredentialFileWithDisabledScheme() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("users.cred");
+        CredentialFileCompiler.compile(Collections.singletonMap("alice", "alice-secret"), VERIFIERS, file);
+
+        PackedCredentialStore.open(file, PasswordVerifiers.create(Collections.singletonMap(
+                PasswordVerifiers.PASSWORD_VERIFIERS_CONFIG, HmacSha256PasswordVerifier.SCHEME)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCredentialFile() throws Exception {
+        Path file = folder.newFile("kafka_server_jaas.conf").toPath();
+        Files.write(file, bytes("KafkaServer { test.LoginModule required; };"));
+
+        PackedCredentialStore.open(file, VERIFIERS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedCredentialFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("users.cred");
+        CredentialFileCompiler.compile(Collections.singletonMap("alice", "alice-secret"), VERIFIERS, file);
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, 24));
+
+        PackedCredentialStore.open(file, VERIFIERS);
+    }
+
+    @Test
+    public void testCorruptedCredentialFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("users.cred");
+        CredentialFileCompiler.compile(Collections.singletonMap("alice", "alice-secret"), VERIFIERS, file);
+        byte[] content = Files.readAllBytes(file);
+        // header of 21 bytes without schemes, followed by a table of 4 slots
+        int table = 21;
+        int slots = 4;
+        int used = -1;
+        for (int slot = 0; slot < slots; slot++) {
+            if (ByteBuffer.wrap(content).getInt(table + slot * 4) != 0) {
+                used = slot;
+            }
+        }
+        assertTrue(used != -1);
+
+        // record cut off
+        checkCorrupted(file, Arrays.copyOf(content, content.length - 1));
+        // offset of a record beyond the end of the file
+        byte[] corrupted = content.clone();
+        ByteBuffer.wrap(corrupted).putInt(table + used * 4, content.length);
+        checkCorrupted(file, corrupted);
+        // offset of a record into the table
+        corrupted = content.clone();
+        ByteBuffer.wrap(corrupted).putInt(table + used * 4, 1);
+        checkCorrupted(file, corrupted);
+        // table without an empty slot
+        corrupted = content.clone();
+        int record = ByteBuffer.wrap(content).getInt(table + used * 4);
+        for (int slot = 0; slot < slots; slot++) {
+            ByteBuffer.wrap(corrupted).putInt(table + slot * 4, record);
+        }
+        checkCorrupted(file, corrupted);
+    }
+
+    private static void checkCorrupted(Path file, byte[] content) throws Exception {
+        Files.write(file, content);
+        try {
+            PackedCredentialStore.open(file, VERIFIERS);
+            fail("Corrupted credential file is opened");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("is corrupted"));
+        }
+    }
+
+    private static Credential credential(PackedCredentialStore store, String username) {
+        byte[] bytes = bytes(username);
+        return store.credential(bytes, 0, bytes.length);
+    }
+
+    private static boolean verify(Credential credential, String password) {
+        byte[] bytes = bytes(password);
+        return credential.verify(bytes, 0, bytes.length);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PasswordVerifiersTest {
+
+    private final PasswordVerifiers verifiers = PasswordVerifiers.create(Collections.<String, Object>emptyMap());
+
+    @Test
+    public void testPlain() {
+        checkScheme(PlainPasswordVerifier.SCHEME, verifiers.parse("secret"));
+        checkScheme(PlainPasswordVerifier.SCHEME, verifiers.parse("{PLAIN}secret"));
+        // unknown schemes are part of a cleartext password
+        Credential credential = verifiers.parse("{UNKNOWN}secret");
+        assertEquals(PlainPasswordVerifier.SCHEME, credential.scheme());
+        assertTrue(verify(credential, "{UNKNOWN}secret"));
+        // a cleartext password with the prefix of a known scheme is escaped
+        String escaped = PasswordEncoder.encode(PlainPasswordVerifier.SCHEME, bytes("{BCRYPT}secret"), 0, 0);
+        assertEquals("{PLAIN}{BCRYPT}secret", escaped);
+        credential = verifiers.parse(escaped);
+        assertEquals(PlainPasswordVerifier.SCHEME, credential.scheme());
+        assertTrue(verify(credential, "{BCRYPT}secret"));
+    }
+
+    @Test
+    public void testPbkdf2() {
+        Credential credential = verifiers.parse(PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, bytes("secret"), 1000, 0));
+        checkScheme(Pbkdf2PasswordVerifier.SCHEME, credential);
+    }
+
+    @Test
+    public void testPbkdf2TestVector() {
+        // RFC 7914, section 11
+        byte[] expected = new byte[]{(byte) 0x55, (byte) 0xac, (byte) 0x04, (byte) 0x6e, (byte) 0x56, (byte) 0xe3, (byte) 0x08, (byte) 0x9f,
+                (byte) 0xec, (byte) 0x16, (byte) 0x91, (byte) 0xc2, (byte) 0x25, (byte) 0x44, (byte) 0xb6, (byte) 0x05,
+                (byte) 0xf9, (byte) 0x41, (byte) 0x85, (byte) 0x21, (byte) 0x6d, (byte) 0xde, (byte) 0x04, (byte) 0x65,
+                (byte) 0xe6, (byte) 0x8b, (byte) 0x9d, (byte) 0x57, (byte) 0xc2, (byte) 0x0d, (byte) 0xac, (byte) 0xbc,
+                (byte) 0x49, (byte) 0xca, (byte) 0x9c, (byte) 0xcc, (byte) 0xf1, (byte) 0x79, (byte) 0xb6, (byte) 0x45,
+                (byte) 0x99, (byte) 0x16, (byte) 0x64, (byte) 0xb3, (byte) 0x9d, (byte) 0x77, (byte) 0xef, (byte) 0x31,
+                (byte) 0x7c, (byte) 0x71, (byte) 0xb8, (byte) 0x45, (byte) 0xb1, (byte) 0xe3, (byte) 0x0b, (byte) 0xd5,
+                (byte) 0x09, (byte) 0x11, (byte) 0x20, (byte) 0x41, (byte) 0xd3, (byte) 0xa1, (byte) 0x97, (byte) 0x83};
+        byte[] password = bytes("passwd");
+        assertArrayEquals(expected, Pbkdf2PasswordVerifier.pbkdf2(password, 0, password.length, bytes("salt"), 1, 64));
+    }
+
+    @Test
+    public void testPbkdf2Iterations() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(Pbkdf2PasswordVerifier.MIN_ITERATIONS_CONFIG, "2000");
+        options.put(Pbkdf2PasswordVerifier.MAX_ITERATIONS_CONFIG, "3000");
+        PasswordVerifiers verifiers = PasswordVerifiers.create(options);
+        checkScheme(Pbkdf2PasswordVerifier.SCHEME, verifiers.parse(PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, bytes("secret"), 2000, 0)));
+        checkInvalid(verifiers, PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, bytes("secret"), 1000, 0));
+        checkInvalid(verifiers, PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, bytes("secret"), 3001, 0));
+    }
+
+    @Test
+    public void testHmacSha256() {
+        Credential credential = verifiers.parse(PasswordEncoder.encode(HmacSha256PasswordVerifier.SCHEME, bytes("secret"), 0, 0));
+        checkScheme(HmacSha256PasswordVerifier.SCHEME, credential);
+    }
+
+    @Test
+    public void testBcrypt() {
+        Credential credential = verifiers.parse(PasswordEncoder.encode(BcryptPasswordVerifier.SCHEME, bytes("secret"), 0, 4));
+        checkScheme(BcryptPasswordVerifier.SCHEME, credential);
+
+        Map<String, Object> options = new HashMap<>();
+        options.put(BcryptPasswordVerifier.MAX_COST_CONFIG, "4");
+        checkInvalid(PasswordVerifiers.create(options), PasswordEncoder.encode(BcryptPasswordVerifier.SCHEME, bytes("secret"), 0, 5));
+    }
+
+    @Test
+    public void testBcryptRevisions() {
+        String encoded = PasswordEncoder.encode(BcryptPasswordVerifier.SCHEME, bytes("secret"), 0, 4);
+        assertTrue(encoded.startsWith("{BCRYPT}$2a$04$"));
+        // jBCrypt can not verify the revisions of other bcrypt implementations
+        checkInvalid(verifiers, encoded.replace("$2a$", "$2b$"));
+        checkInvalid(verifiers, encoded.replace("$2a$", "$2y$"));
+        checkInvalid(verifiers, encoded.replace("$2a$04$", "$2a$03$"));
+        checkInvalid(verifiers, encoded.substring(0, encoded.length() - 1) + "=");
+    }
+
+    @Test
+    public void testMalformed() {
+        checkInvalid(verifiers, "{PBKDF2-SHA256}");
+        checkInvalid(verifiers, "{PBKDF2-SHA256}x$c2FsdA==$aGFzaA==");
+        checkInvalid(verifiers, "{PBKDF2-SHA256}1000$c2FsdA==$aGFz*A==");
+        checkInvalid(verifiers, "{HMAC-SHA256}c2FsdA==");
+        checkInvalid(verifiers, "{BCRYPT}$2a$10$tooshort");
+    }
+
+    @Test
+    public void testEnabledSchemes() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(PasswordVerifiers.PASSWORD_VERIFIERS_CONFIG, "hmac-sha256");
+        PasswordVerifiers verifiers = PasswordVerifiers.create(options);
+        checkInvalid(verifiers, "secret");
+        checkInvalid(verifiers, PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, bytes("secret"), 1000, 0));
+        checkScheme(HmacSha256PasswordVerifier.SCHEME, verifiers.parse(PasswordEncoder.encode(HmacSha256PasswordVerifier.SCHEME, bytes("secret"), 0, 0)));
+    }
+
+    @Test
+    public void testCustomVerifier() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(PasswordVerifiers.PASSWORD_VERIFIERS_CONFIG, "");
+        options.put(PasswordVerifiers.PASSWORD_VERIFIER_CLASSES_CONFIG, ReversedPasswordVerifier.class.getName());
+        PasswordVerifiers verifiers = PasswordVerifiers.create(options);
+        checkScheme("REVERSED", verifiers.parse("{REVERSED}terces"));
+        checkInvalid(verifiers, "secret");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownScheme() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(PasswordVerifiers.PASSWORD_VERIFIERS_CONFIG, "PLAIN,UNKNOWN");
+        PasswordVerifiers.create(options);
+    }
+
+    @Test
+    public void testBase64() {
+        for (String value : new String[]{"", "f", "fo", "foo", "foob", "fooba", "foobar"}) {
+            String encoded = CredentialEncoding.base64Encode(bytes(value));
+            assertArrayEquals(bytes(value), CredentialEncoding.base64Decode(encoded));
+        }
+        assertEquals("Zm9vYmE=", CredentialEncoding.base64Encode(bytes("fooba")));
+        assertEquals("Zm9vYg==", CredentialEncoding.base64Encode(bytes("foob")));
+    }
+
+    private static void checkScheme(String scheme, Credential credential) {
+        assertEquals(scheme, credential.scheme());
+        assertTrue(verify(credential, "secret"));
+        assertFalse(verify(credential, "Secret"));
+        assertFalse(verify(credential, "secret1"));
+        assertFalse(verify(credential, "secre"));
+    }
+
+    private static boolean verify(Credential credential, String password) {
+        // password in the middle of a larger buffer
+        byte[] buffer = bytes("x\u0000" + password + "\u0000y");
+        return credential.verify(buffer, 2, buffer.length - 4);
+    }
+
+    private static void checkInvalid(PasswordVerifiers verifiers, String configured) {
+        try {
+            verifiers.parse(configured);
+            fail("Invalid credential " + configured + " was parsed");
+        } catch (IllegalArgumentException e) {
+            // Expected exception
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static class ReversedPasswordVerifier implements PasswordVerifier {
+        @Override
+        public String scheme() {
+            return "REVERSED";
+        }
+
+        @Override
+        public void configure(Map<String, ?> options) {
+        }
+
+        @Override
+        public Credential parse(String encoded) {
+            final byte[] expected = bytes(new StringBuilder(encoded).reverse().toString());
+            return new Credential() {
+                @Override
+                public String scheme() {
+                    return "REVERSED";
+                }
+
+                @Override
+                public boolean verify(byte[] password, int offset, int length) {
+                    return CredentialEncoding.constantTimeEquals(expected, password, offset, length);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.Test;
+
+import javax.security.sasl.SaslException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlainSaslMessageTest {
+
+    private final PlainSaslMessage message = new PlainSaslMessage();
+
+    @Test
+    public void testParse() throws Exception {
+        message.parse(bytes("alice\u0000alice\u0000secret"));
+        assertEquals(5, message.authorizationIdLength());
+        assertEquals("alice", message.username());
+        assertEquals(6, message.passwordLength());
+        assertTrue(message.authorizationIdMatchesUsername());
+        assertTrue(message.verifyPassword(plain("secret")));
+        assertFalse(message.verifyPassword(plain("secreT")));
+        assertFalse(message.verifyPassword(plain("secret1")));
+        assertFalse(message.verifyPassword(null));
+    }
+
+    @Test
+    public void testParseUtf8() throws Exception {
+        message.parse(bytes("\u0000\u017c\u00f3\u0142w\u0000p\u00e4ss"));
+        assertEquals(0, message.authorizationIdLength());
+        assertEquals("\u017c\u00f3\u0142w", message.username());
+        assertTrue(message.authorizationIdMatchesUsername());
+        assertTrue(message.verifyPassword(plain("p\u00e4ss")));
+    }
+
+    @Test
+    public void testAuthorizationIdDifferentFromUsername() throws Exception {
+        message.parse(bytes("bob\u0000alice\u0000secret"));
+        assertFalse(message.authorizationIdMatchesUsername());
+        message.parse(bytes("alicf\u0000alice\u0000secret"));
+        assertFalse(message.authorizationIdMatchesUsername());
+    }
+
+    @Test
+    public void testEmptyTokens() throws Exception {
+        message.parse(bytes("\u0000\u0000"));
+        assertEquals(0, message.usernameLength());
+        assertEquals(0, message.passwordLength());
+    }
+
+    @Test
+    public void testInvalidTokenCount() {
+        checkInvalid(bytes("alice"), "expected 3 tokens, got 1");
+        checkInvalid(bytes("alice\u0000secret"), "expected 3 tokens, got 2");
+        checkInvalid(bytes("a\u0000alice\u0000secret\u0000"), "expected 3 tokens, got 4");
+        checkInvalid(new byte[0], "expected 3 tokens, got 1");
+    }
+
+    @Test
+    public void testTokenLimits() throws Exception {
+        String max = repeat('a', PlainSaslMessage.MAX_TOKEN_LENGTH);
+        String tooLong = repeat('a', PlainSaslMessage.MAX_TOKEN_LENGTH + 1);
+        message.parse(bytes(max + "\u0000" + max + "\u0000" + max));
+        assertEquals(PlainSaslMessage.MAX_TOKEN_LENGTH, message.usernameLength());
+
+        checkInvalid(bytes(tooLong + "\u0000alice\u0000secret"), "authorization id exceeds 255 octets");
+        checkInvalid(bytes("\u0000" + tooLong + "\u0000secret"), "username exceeds 255 octets");
+        checkInvalid(bytes("\u0000alice\u0000" + tooLong), "password exceeds 255 octets");
+        checkInvalid(new byte[PlainSaslMessage.MAX_MESSAGE_LENGTH + 1], "message exceeds 767 octets");
+    }
+
+    private void checkInvalid(byte[] response, String expectedMessage) {
+        try {
+            message.parse(response);
+            fail("Invalid message " + Arrays.toString(response) + " was parsed");
+        } catch (SaslException e) {
+            assertEquals("Invalid SASL/PLAIN response: " + expectedMessage, e.getMessage());
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static Credential plain(String password) {
+        return new PlainPasswordVerifier().parse(password);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
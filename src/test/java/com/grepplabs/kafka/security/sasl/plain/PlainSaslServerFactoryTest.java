@@ -17,6 +17,7 @@
 package com.grepplabs.kafka.security.sasl.plain;
 
 import com.grepplabs.kafka.security.sasl.authenticator.TestJaasConfig;
+import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.network.ListenerName;
 import org.apache.kafka.common.security.JaasContext;
 import org.apache.kafka.common.security.authenticator.SaslServerCallbackHandler;
@@ -24,11 +25,14 @@ import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import javax.security.auth.Subject;
 import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
 import javax.security.sasl.SaslException;
 import javax.security.sasl.SaslServer;
 import java.lang.ref.WeakReference;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -76,7 +80,7 @@ public class PlainSaslServerFactoryTest extends AbstractJaasContextTest {
         });
 
         server.dispose();
-        Assert.assertEquals(listenersCount, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount());
+        Assert.assertEquals(listenersCount + 1, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount());
         PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
     }
 
@@ -114,10 +118,75 @@ public class PlainSaslServerFactoryTest extends AbstractJaasContextTest {
         server.evaluateResponse(saslMessage("alice", "alice", "pass12345"));
 
         server.dispose();
+        Assert.assertEquals(listenersCount + 1, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount());
+        PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+    }
+
+    @Test
+    public void testSharedJaasContextProvider() throws Exception {
+        final int listenersCount = PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount();
+        final Map<String, Object> options = new HashMap<>();
+        options.put("user_alice", "\"pass12345\"");
+        writeStaticConfiguration(PlainLoginModule.class.getName(), AppConfigurationEntry.LoginModuleControlFlag.REQUISITE, options);
+
+        PlainSaslServer.PlainSaslServerFactory factory = new PlainSaslServer.PlainSaslServerFactory();
+        JaasContext jaasContext = JaasContext.load(JaasContext.Type.SERVER, new ListenerName("my-listener"), Collections.<String, Object>emptyMap());
+        SaslServer server1 = factory.createSaslServer(PlainSaslServer.PLAIN_MECHANISM, "SASL_SSL", "my-broker", Collections.<String, Object>emptyMap(), new SaslServerCallbackHandler(jaasContext, null));
+        SaslServer server2 = factory.createSaslServer(PlainSaslServer.PLAIN_MECHANISM, "SASL_SSL", "my-broker", Collections.<String, Object>emptyMap(), new SaslServerCallbackHandler(jaasContext, null));
+        Assert.assertEquals(listenersCount + 1, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount());
+        Assert.assertSame(PlainSaslServer.PlainSaslServerFactory.getJaasContextProvider(JaasContext.Type.SERVER, new ListenerName("SASL_SSL"), Collections.<String, Object>emptyMap()),
+                PlainSaslServer.PlainSaslServerFactory.getJaasContextProvider(JaasContext.Type.SERVER, new ListenerName("SASL_SSL"), Collections.<String, Object>emptyMap()));
+
+        server1.evaluateResponse(saslMessage("alice", "alice", "pass12345"));
+        server2.evaluateResponse(saslMessage("alice", "alice", "pass12345"));
+        server1.dispose();
+        server2.dispose();
+        Assert.assertEquals(listenersCount + 1, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount());
+
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
         Assert.assertEquals(listenersCount, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount());
         PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
     }
 
+    @Test
+    public void testWarmUp() throws Exception {
+        final int listenersCount = PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount();
+        writeConfiguration(Arrays.asList(
+                "KafkaServer { " + PlainLoginModule.class.getName() + " required warmup=\"true\" user_alice=\"pass12345\"; };",
+                "sasl_ssl.KafkaServer { " + PlainLoginModule.class.getName() + " required warmup=\"true\" user_bob=\"pass6789\"; };"
+        ));
+        Map<String, ?> options = Configuration.getConfiguration().getAppConfigurationEntry("KafkaServer")[0].getOptions();
+
+        new PlainLoginModule().initialize(new Subject(), null, Collections.<String, Object>emptyMap(), options);
+        Assert.assertEquals("only the listener of the options is warmed up", listenersCount + 1,
+                PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount());
+        MetricName warmUpTime = PlainSaslMetrics.metrics(null).metricName("warmup-time-ms", AuthenticatorMetrics.GROUP, "",
+                Collections.singletonMap(AuthenticatorMetrics.LISTENER_TAG, PlainSaslServer.PlainSaslServerFactory.KAFKA_SASL_PROTOCOL));
+        Assert.assertFalse("metrics are registered by the first SaslServer", PlainSaslMetrics.metrics(null).metrics().containsKey(warmUpTime));
+
+        PlainSaslServer.PlainSaslServerFactory factory = new PlainSaslServer.PlainSaslServerFactory();
+        JaasContext jaasContext = JaasContext.load(JaasContext.Type.SERVER, new ListenerName("my-listener"), Collections.<String, Object>emptyMap());
+        SaslServer server = factory.createSaslServer(PlainSaslServer.PLAIN_MECHANISM, PlainSaslServer.PlainSaslServerFactory.KAFKA_SASL_PROTOCOL,
+                "my-broker", Collections.<String, Object>emptyMap(), new SaslServerCallbackHandler(jaasContext, null));
+        Assert.assertEquals("the warmed up provider is used", listenersCount + 1, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount());
+        server.evaluateResponse(saslMessage("alice", "alice", "pass12345"));
+        Assert.assertTrue(PlainSaslMetrics.metrics(null).metrics().get(warmUpTime).value() > 0.0);
+
+        server.dispose();
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+        PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+    }
+
+    @Test
+    public void testNoWarmUpByDefault() throws Exception {
+        final int listenersCount = PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount();
+        writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, PlainLoginModule.class.getName() + " required user_alice=\"pass12345\";");
+        Map<String, ?> options = Configuration.getConfiguration().getAppConfigurationEntry(TestJaasConfig.LOGIN_CONTEXT_SERVER)[0].getOptions();
+
+        new PlainLoginModule().initialize(new Subject(), null, Collections.<String, Object>emptyMap(), options);
+        Assert.assertEquals(listenersCount, PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.getListenersCount());
+    }
+
     private void writeStaticConfiguration(String loginModule, AppConfigurationEntry.LoginModuleControlFlag controlFlag, Map<String, Object> options) throws Exception {
         String jaasConfigProp = jaasConfigProp(loginModule, controlFlag, options);
         writeConfiguration(TestJaasConfig.LOGIN_CONTEXT_SERVER, jaasConfigProp, false);
@@ -23,10 +23,12 @@ import org.junit.Test;
 
 import javax.security.sasl.SaslException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class PlainSaslServerTest {
 
@@ -68,6 +70,69 @@ public class PlainSaslServerTest {
         saslServer.evaluateResponse(saslMessage(USER_B, USER_A, PASSWORD_A));
     }
 
+    @Test
+    public void responseIsNotRetained() throws Exception {
+        char[] password = new char[PlainSaslMessage.MAX_TOKEN_LENGTH];
+        Arrays.fill(password, 'p');
+        evaluateInvalidResponse(saslMessage("", USER_A, PASSWORD_B));
+        long retained = ObjectGraph.sizeOf(saslServer);
+        evaluateInvalidResponse(saslMessage("", USER_A, new String(password)));
+        assertEquals("the response with the password is released", retained, ObjectGraph.sizeOf(saslServer));
+    }
+
+    @Test
+    public void rotatedSourceCredentialInvalidatesVerificationCache() throws Exception {
+        RotatingSource.credential = pbkdf2(PASSWORD_A);
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        Map<String, Object> options = new HashMap<>();
+        options.put(CachingCredentialStore.CREDENTIAL_SOURCE_CLASS_CONFIG, RotatingSource.class.getName());
+        options.put(CachingCredentialStore.TTL_MS_CONFIG, "1");
+        options.put(CachingCredentialStore.REFRESH_AHEAD_MS_CONFIG, "0");
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+        PlainSaslServer.JaasContextProvider provider = new PlainSaslServer.JaasContextProvider(
+                new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+
+        new PlainSaslServer(provider).evaluateResponse(saslMessage("", USER_A, PASSWORD_A));
+        saslServer = new PlainSaslServer(provider);
+        evaluateInvalidResponse(saslMessage("", USER_A, PASSWORD_B));
+        long hits = provider.verificationCacheStats().hits();
+        new PlainSaslServer(provider).evaluateResponse(saslMessage("", USER_A, PASSWORD_A));
+        assertEquals("the verification is cached", hits + 1, provider.verificationCacheStats().hits());
+
+        RotatingSource.credential = pbkdf2(PASSWORD_B);
+        // the credential expires and is reloaded from the source
+        Thread.sleep(10);
+        saslServer = new PlainSaslServer(provider);
+        evaluateInvalidResponse(saslMessage("", USER_A, PASSWORD_A));
+        new PlainSaslServer(provider).evaluateResponse(saslMessage("", USER_A, PASSWORD_B));
+    }
+
+    private static String pbkdf2(String password) {
+        return PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, password.getBytes(StandardCharsets.UTF_8), 1000, 0);
+    }
+
+    public static class RotatingSource implements CredentialSource {
+        static volatile String credential;
+
+        @Override
+        public void configure(Map<String, ?> options) {
+        }
+
+        @Override
+        public String credential(String username) {
+            return USER_A.equals(username) ? credential : null;
+        }
+    }
+
+    private void evaluateInvalidResponse(byte[] response) {
+        try {
+            saslServer.evaluateResponse(response);
+            fail("Invalid password is accepted");
+        } catch (SaslException e) {
+            // expected
+        }
+    }
+
     private byte[] saslMessage(String authorizationId, String userName, String password) {
         String nul = "\u0000";
         String message = String.format("%s%s%s%s%s", authorizationId, nul, userName, nul, password);
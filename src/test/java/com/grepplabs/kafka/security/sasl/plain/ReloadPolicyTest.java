@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import com.grepplabs.kafka.security.sasl.authenticator.TestJaasConfig;
+import org.apache.kafka.common.security.JaasContext;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReloadPolicyTest {
+
+    @Test
+    public void testDefaultAcceptsEmptyReload() {
+        ReloadPolicy policy = ReloadPolicy.create(Collections.<String, Object>emptyMap());
+        assertNull(policy.violation(snapshot(100, 0), snapshot(0, 0)));
+        assertNull(policy.violation(snapshot(10, 0), snapshot(10, 3)));
+    }
+
+    @Test
+    public void testMinUsers() {
+        ReloadPolicy policy = ReloadPolicy.create(Collections.singletonMap(ReloadPolicy.MIN_USERS_CONFIG, "10"));
+        assertNull(policy.violation(snapshot(20, 0), snapshot(10, 0)));
+        assertNotNull(policy.violation(snapshot(20, 0), snapshot(9, 0)));
+    }
+
+    @Test
+    public void testMaxRemovedPercent() {
+        ReloadPolicy policy = ReloadPolicy.create(Collections.singletonMap(ReloadPolicy.MAX_REMOVED_PERCENT_CONFIG, "10"));
+        assertNull(policy.violation(snapshot(100, 0), snapshot(90, 0)));
+        assertNull("added users are accepted", policy.violation(snapshot(100, 0), snapshot(200, 0)));
+        String violation = policy.violation(snapshot(100, 0), snapshot(89, 0));
+        assertTrue(violation, violation.contains("from 100 to 89"));
+        assertNull("an empty listener can be filled", policy.violation(snapshot(0, 0), snapshot(1, 0)));
+    }
+
+    @Test
+    public void testInvalidCredentials() {
+        ReloadPolicy reject = ReloadPolicy.create(Collections.singletonMap(ReloadPolicy.INVALID_CREDENTIALS_CONFIG, "REJECT"));
+        assertNull(reject.violation(snapshot(10, 0), snapshot(10, 0)));
+        assertNotNull(reject.violation(snapshot(10, 0), snapshot(10, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownInvalidCredentialsPolicy() {
+        ReloadPolicy.create(Collections.singletonMap(ReloadPolicy.INVALID_CREDENTIALS_CONFIG, "skip"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxRemovedPercent() {
+        ReloadPolicy.create(Collections.singletonMap(ReloadPolicy.MAX_REMOVED_PERCENT_CONFIG, "101"));
+    }
+
+    @Test
+    public void testGenerationsIncrease() {
+        CredentialSnapshot first = snapshot(1, 0);
+        CredentialSnapshot second = snapshot(1, 0);
+        assertTrue(second.generation() > first.generation());
+        assertEquals(2, snapshot(1, 2).invalidCredentialCount());
+    }
+
+    private static CredentialSnapshot snapshot(int users, int invalid) {
+        Map<String, Object> options = new HashMap<>();
+        for (int i = 0; i < users; i++) {
+            options.put("user_user-" + i, "secret-" + i);
+        }
+        for (int i = 0; i < invalid; i++) {
+            options.put("user_invalid-" + i, "{PBKDF2-SHA256}malformed");
+        }
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+        return CredentialSnapshot.create(new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShardDirectoryWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testScan() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Path tenantA = directory.resolve("tenant-a");
+        Path tenantB = directory.resolve("tenant-b");
+        write(tenantA, "alice=alice");
+        write(tenantB, "bob=bob");
+        ShardDirectoryWatcher watcher = new ShardDirectoryWatcher(directory, null, 0L);
+
+        assertEquals(2, watcher.scan().size());
+        assertTrue(watcher.scan().isEmpty());
+
+        write(tenantA, "alice=alice");
+        assertTrue("same content", watcher.scan().isEmpty());
+
+        write(tenantA, "alice=changed");
+        write(directory.resolve(".tenant-c.tmp"), "carol=carol");
+        assertEquals(Collections.singleton(tenantA), watcher.scan());
+
+        Files.delete(tenantB);
+        assertEquals(Collections.singleton(tenantB), watcher.scan());
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        final Path tenantA = directory.resolve("tenant-a");
+        final Path tenantB = directory.resolve("tenant-b");
+        write(tenantA, "alice=alice");
+        write(tenantB, "bob=bob");
+        final Set<Path> changed = new ConcurrentSkipListSet<>();
+        ShardDirectoryWatcher watcher = new ShardDirectoryWatcher(directory, new CredentialShardListener() {
+            @Override
+            public void credentialShardsChanged(Path directory, Set<Path> files) {
+                changed.addAll(files);
+            }
+        }, 100L);
+        Thread thread = new Thread(watcher);
+        thread.start();
+        try {
+            // a change before the watcher scanned and registered is not reported, so it is changed until it is
+            final AtomicInteger version = new AtomicInteger();
+            await().atMost(10, TimeUnit.SECONDS).pollInterval(500, TimeUnit.MILLISECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    if (changed.contains(tenantA)) {
+                        return true;
+                    }
+                    write(tenantA, "alice=changed-" + version.incrementAndGet());
+                    return false;
+                }
+            });
+            assertFalse("only the changed shard is reported", changed.contains(tenantB));
+        } finally {
+            watcher.stop();
+            thread.interrupt();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    private static void write(Path file, String... lines) throws IOException {
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+}
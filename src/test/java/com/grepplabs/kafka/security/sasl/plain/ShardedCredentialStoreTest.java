@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedCredentialStoreTest {
+
+    private static final PasswordVerifiers VERIFIERS = PasswordVerifiers.create(Collections.<String, Object>emptyMap());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOpen() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        write(directory.resolve("tenant-a"), "alice=alice-secret", "bob=bob-secret");
+        write(directory.resolve("tenant-b"), "carol=carol-secret", "dave={PBKDF2-SHA256}malformed");
+        write(directory.resolve(".hidden"), "eve=eve-secret");
+        Files.createDirectory(directory.resolve("..data"));
+
+        ShardedCredentialStore store = ShardedCredentialStore.open(directory, VERIFIERS);
+
+        assertEquals(3, store.size());
+        assertEquals(1, store.invalidCredentialCount());
+        assertTrue(verify(store, "alice", "alice-secret"));
+        assertTrue(verify(store, "carol", "carol-secret"));
+        assertFalse(mightContain(store, "dave"));
+        assertFalse("hidden files are ignored", mightContain(store, "eve"));
+    }
+
+    @Test
+    public void testUpdateShard() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Path tenantA = directory.resolve("tenant-a");
+        write(tenantA, "alice=alice-secret", "bob=bob-secret");
+        write(directory.resolve("tenant-b"), "carol=carol-secret");
+        ShardedCredentialStore store = ShardedCredentialStore.open(directory, VERIFIERS);
+
+        write(tenantA, "alice=new-secret", "frank=frank-secret");
+        assertEquals(2, store.update(store.read(tenantA)));
+
+        assertEquals(3, store.size());
+        assertTrue(verify(store, "alice", "new-secret"));
+        assertNull("removed from its shard", credential(store, "bob"));
+        assertTrue(verify(store, "frank", "frank-secret"));
+        assertTrue("other shards are kept", verify(store, "carol", "carol-secret"));
+
+        Files.delete(tenantA);
+        store.update(store.read(tenantA));
+        assertEquals(1, store.size());
+        assertEquals(0, store.shardSize(tenantA));
+    }
+
+    @Test
+    public void testShardPrecedence() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Path tenantA = directory.resolve("tenant-a");
+        Path tenantB = directory.resolve("tenant-b");
+        write(tenantA, "alice=first");
+        write(tenantB, "alice=second");
+        ShardedCredentialStore store = ShardedCredentialStore.open(directory, VERIFIERS);
+        assertTrue(verify(store, "alice", "first"));
+
+        write(tenantB, "alice=changed");
+        store.update(store.read(tenantB));
+        assertTrue("the first shard wins", verify(store, "alice", "first"));
+
+        write(tenantA, "bob=bob-secret");
+        store.update(store.read(tenantA));
+        assertTrue("the username moves to the other shard", verify(store, "alice", "changed"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingDirectory() {
+        ShardedCredentialStore.open(folder.getRoot().toPath().resolve("missing"), VERIFIERS);
+    }
+
+    private static void write(Path file, String... lines) throws IOException {
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private static Credential credential(ShardedCredentialStore store, String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        return store.credential(bytes, 0, bytes.length);
+    }
+
+    private static boolean mightContain(ShardedCredentialStore store, String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        return store.mightContain(bytes, 0, bytes.length);
+    }
+
+    private static boolean verify(ShardedCredentialStore store, String username, String password) {
+        Credential credential = credential(store, username);
+        byte[] bytes = password.getBytes(StandardCharsets.UTF_8);
+        return credential != null && credential.verify(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import com.grepplabs.kafka.security.sasl.authenticator.TestJaasConfig;
+import org.apache.kafka.common.security.JaasContext;
+import org.apache.kafka.common.utils.Time;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VerificationCacheTest {
+
+    private final MockTime time = new MockTime();
+    private final VerificationCache.Stats stats = new VerificationCache.Stats();
+
+    @Test
+    public void testGetPut() {
+        VerificationCache cache = new VerificationCache(100, 1000, time, stats);
+        VerificationCache.Key alice = key("alice", "secret");
+        assertNull(cache.get(alice));
+        cache.put(alice, true, cache.version());
+        cache.put(key("bob", "wrong"), false, cache.version());
+        assertTrue(cache.get(key("alice", "secret")));
+        assertFalse(cache.get(key("bob", "wrong")));
+        assertNull(cache.get(key("alice", "wrong")));
+        // username and password boundary is part of the key
+        assertNull(cache.get(key("alices", "ecret")));
+        assertEquals(2, stats.hits());
+        assertEquals(3, stats.misses());
+        assertEquals(0, stats.evictions());
+    }
+
+    @Test
+    public void testTtl() {
+        VerificationCache cache = new VerificationCache(100, 1000, time, stats);
+        cache.put(key("alice", "secret"), true, cache.version());
+        time.sleep(999);
+        assertTrue(cache.get(key("alice", "secret")));
+        time.sleep(1);
+        assertNull(cache.get(key("alice", "secret")));
+        assertEquals(0, cache.size());
+        assertEquals(1, stats.evictions());
+    }
+
+    @Test
+    public void testMaxEntries() {
+        VerificationCache cache = new VerificationCache(32, 1000, time, stats);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(key("user" + i, "secret"), true, cache.version());
+        }
+        assertTrue(cache.size() <= 32);
+        assertEquals(1000 - cache.size(), stats.evictions());
+    }
+
+    @Test
+    public void testInvalidate() {
+        VerificationCache cache = new VerificationCache(100, 1000, time, stats);
+        long version = cache.version();
+        cache.put(key("alice", "secret"), true, version);
+
+        cache.invalidate();
+        assertNull(cache.get(key("alice", "secret")));
+        assertEquals(0, cache.size());
+        // a result of a credential looked up before the invalidation is dropped
+        cache.put(key("alice", "secret"), true, version);
+        assertNull(cache.get(key("alice", "secret")));
+        cache.put(key("alice", "secret"), true, cache.version());
+        assertTrue(cache.get(key("alice", "secret")));
+    }
+
+    @Test
+    public void testCacheableSchemes() {
+        VerificationCache cache = new VerificationCache(100, 1000, time, stats);
+        PasswordVerifiers verifiers = PasswordVerifiers.create(Collections.<String, Object>emptyMap());
+        assertFalse(cache.isCacheable(verifiers.parse("secret")));
+        assertFalse(cache.isCacheable(verifiers.parse(PasswordEncoder.encode(HmacSha256PasswordVerifier.SCHEME, bytes("secret"), 0, 0))));
+        assertTrue(cache.isCacheable(verifiers.parse(PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, bytes("secret"), 1000, 0))));
+        assertFalse(new VerificationCache(0, 1000, time, stats).isCacheable(verifiers.parse(PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, bytes("secret"), 1000, 0))));
+    }
+
+    @Test
+    public void testSnapshotVerify() throws Exception {
+        TestJaasConfig jaasConfig = new TestJaasConfig();
+        Map<String, Object> options = new HashMap<>();
+        options.put("user_alice", PasswordEncoder.encode(Pbkdf2PasswordVerifier.SCHEME, bytes("secret"), 1000, 0));
+        jaasConfig.addEntry("jaasContext", PlainLoginModule.class.getName(), options);
+        JaasContext jaasContext = new JaasContext("jaasContext", JaasContext.Type.SERVER, jaasConfig);
+
+        CredentialSnapshot snapshot = CredentialSnapshot.create(jaasContext, stats);
+        assertTrue(verify(snapshot, "alice", "secret"));
+        assertTrue(verify(snapshot, "alice", "secret"));
+        assertFalse(verify(snapshot, "alice", "wrong"));
+        assertFalse(verify(snapshot, "alice", "wrong"));
+        assertEquals(2, stats.hits());
+        assertEquals(2, stats.misses());
+
+        // a reloaded snapshot starts with an empty cache
+        CredentialSnapshot reloaded = CredentialSnapshot.create(jaasContext, stats);
+        assertTrue(verify(reloaded, "alice", "secret"));
+        assertEquals(2, stats.hits());
+        assertEquals(3, stats.misses());
+    }
+
+    private static boolean verify(CredentialSnapshot snapshot, String username, String password) throws Exception {
+        PlainSaslMessage message = new PlainSaslMessage();
+        message.parse(bytes("\u0000" + username + "\u0000" + password));
+        long cacheVersion = snapshot.verificationCacheVersion();
+        return snapshot.verify(message, snapshot.credential(username), cacheVersion);
+    }
+
+    private static VerificationCache.Key key(String username, String password) {
+        byte[] bytes = bytes(username + password);
+        return VerificationCache.key(bytes, 0, username.length(), username.length(), password.length());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static class MockTime implements Time {
+        private volatile long nanos = System.nanoTime();
+
+        @Override
+        public long milliseconds() {
+            return nanos / 1000000L;
+        }
+
+        @Override
+        public long hiResClockMs() {
+            return milliseconds();
+        }
+
+        @Override
+        public long nanoseconds() {
+            return nanos;
+        }
+
+        @Override
+        public void sleep(long ms) {
+            nanos += ms * 1000000L;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.grepplabs.kafka.security.sasl.plain;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.security.JaasContext;
+import org.apache.kafka.common.security.authenticator.SaslServerCallbackHandler;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.sasl.SaslException;
+import javax.security.sasl.SaslServer;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FlightRecorderEventsTest extends AbstractJaasContextTest {
+
+    private static final String HANDSHAKE = "com.grepplabs.kafka.sasl.plain.Handshake";
+    private static final String RELOAD = "com.grepplabs.kafka.sasl.plain.Reload";
+    private static final String CONFIGURATION_CHANGE = "com.grepplabs.kafka.sasl.plain.ConfigurationChange";
+    private static final String WATCHER_WAKE_UP = "com.grepplabs.kafka.sasl.plain.WatcherWakeUp";
+
+    @After
+    public void stopWatcher() {
+        PlainSaslServer.PlainSaslServerFactory.clearJaasContextProviders();
+        PlainSaslServer.CONFIG_FILE_WATCH_SERVICE.stopWatcher();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertTrue(FlightRecorderEvents.INSTANCE instanceof JfrFlightRecorderEvents);
+        assertNull(FlightRecorderEvents.INSTANCE.beginHandshake());
+        assertNull(FlightRecorderEvents.INSTANCE.beginReload());
+        assertNull(FlightRecorderEvents.INSTANCE.beginConfigurationChange());
+        assertNull(FlightRecorderEvents.INSTANCE.beginWatcherWakeUp());
+    }
+
+    @Test
+    public void testSettings() throws Exception {
+        Map<String, String> settings;
+        try (Reader reader = new InputStreamReader(getClass().getResourceAsStream("/sasl-plain.jfc"), StandardCharsets.UTF_8)) {
+            settings = Configuration.create(reader).getSettings();
+        }
+        for (String event : new String[]{HANDSHAKE, RELOAD, CONFIGURATION_CHANGE, WATCHER_WAKE_UP}) {
+            assertEquals(event, "true", settings.get(event + "#enabled"));
+        }
+        assertEquals("10 ms", settings.get(HANDSHAKE + "#threshold"));
+    }
+
+    @Test
+    public void testRecordedEvents() throws Exception {
+        Map<String, Object> options = new HashMap<>();
+        options.put("user_alice", "\"alice-secret\"");
+        writeConfiguration("KafkaServer", jaasConfigProp(PlainLoginModule.class.getName(),
+                AppConfigurationEntry.LoginModuleControlFlag.REQUIRED, options));
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(HANDSHAKE).withoutThreshold();
+            recording.enable(RELOAD).withoutThreshold();
+            recording.enable(CONFIGURATION_CHANGE).withoutThreshold();
+            recording.enable(WATCHER_WAKE_UP).withoutThreshold();
+            recording.start();
+
+            PlainSaslServer.PlainSaslServerFactory factory = new PlainSaslServer.PlainSaslServerFactory();
+            JaasContext jaasContext = JaasContext.load(JaasContext.Type.SERVER, new ListenerName("jfr"), Collections.<String, Object>emptyMap());
+            SaslServerCallbackHandler callbackHandler = new SaslServerCallbackHandler(jaasContext, null);
+            SaslServer server = factory.createSaslServer(PlainSaslServer.PLAIN_MECHANISM, PlainSaslServer.PlainSaslServerFactory.KAFKA_SASL_PROTOCOL,
+                    "localhost", Collections.<String, Object>emptyMap(), callbackHandler);
+            server.evaluateResponse(saslMessage("alice", "alice-secret"));
+            SaslServer failed = factory.createSaslServer(PlainSaslServer.PLAIN_MECHANISM, PlainSaslServer.PlainSaslServerFactory.KAFKA_SASL_PROTOCOL,
+                    "localhost", Collections.<String, Object>emptyMap(), callbackHandler);
+            try {
+                failed.evaluateResponse(saslMessage("alice", "wrong-secret"));
+            } catch (SaslException expected) {
+                // recorded as INVALID_PASSWORD
+            }
+
+            // let the watcher register before the write
+            Thread.sleep(200);
+            options.put("user_bob", "\"bob-secret\"");
+            writeConfiguration("KafkaServer", jaasConfigProp(PlainLoginModule.class.getName(),
+                    AppConfigurationEntry.LoginModuleControlFlag.REQUIRED, options));
+            SaslServer reloaded = factory.createSaslServer(PlainSaslServer.PLAIN_MECHANISM, PlainSaslServer.PlainSaslServerFactory.KAFKA_SASL_PROTOCOL,
+                    "localhost", Collections.<String, Object>emptyMap(), callbackHandler);
+            await().atMost(10, TimeUnit.SECONDS).pollInterval(100, TimeUnit.MILLISECONDS).until(() -> {
+                try {
+                    reloaded.evaluateResponse(saslMessage("bob", "bob-secret"));
+                    return true;
+                } catch (SaslException e) {
+                    return false;
+                }
+            });
+            // the configuration change event is committed after the last listener returned
+            Thread.sleep(200);
+            recording.stop();
+            Path file = Files.createTempFile("sasl-plain", ".jfr");
+            try {
+                recording.dump(file);
+                events = RecordingFile.readAllEvents(file);
+            } finally {
+                Files.delete(file);
+            }
+        }
+
+        List<RecordedEvent> handshakes = events(events, HANDSHAKE);
+        assertTrue(handshakes.size() >= 3);
+        RecordedEvent success = handshakes.get(0);
+        assertEquals(PlainSaslServer.PlainSaslServerFactory.KAFKA_SASL_PROTOCOL, success.getString("listener"));
+        assertEquals(PlainSaslServer.PLAIN_MECHANISM, success.getString("mechanism"));
+        assertEquals("SUCCESSFUL", success.getString("outcome"));
+        assertTrue(success.getDuration("parseDuration").toNanos() > 0);
+        assertTrue(success.getDuration("lookupDuration").toNanos() > 0);
+        assertTrue(success.getDuration("verifyDuration").toNanos() > 0);
+        assertEquals("INVALID_PASSWORD", handshakes.get(1).getString("outcome"));
+
+        RecordedEvent reload = events(events, RELOAD).get(0);
+        assertEquals(PlainSaslServer.PlainSaslServerFactory.KAFKA_SASL_PROTOCOL, reload.getString("listener"));
+        assertEquals(FlightRecorderEvents.CONFIGURATION_TRIGGER, reload.getString("trigger"));
+        assertEquals(FlightRecorderEvents.RELOADED, reload.getString("outcome"));
+        assertEquals(1, reload.getInt("userCountDelta"));
+
+        RecordedEvent change = events(events, CONFIGURATION_CHANGE).get(0);
+        assertTrue(change.getInt("listeners") >= 1);
+        assertTrue(change.getDuration("fanOutDuration").toNanos() > 0);
+
+        boolean changed = false;
+        for (RecordedEvent wakeUp : events(events, WATCHER_WAKE_UP)) {
+            changed |= wakeUp.getBoolean("changed");
+        }
+        assertTrue("a wake-up after the quiet period saw the change", changed);
+    }
+
+    private static List<RecordedEvent> events(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> selected = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                selected.add(event);
+            }
+        }
+        Collections.sort(selected, (first, second) -> first.getStartTime().compareTo(second.getStartTime()));
+        return selected;
+    }
+
+    private static byte[] saslMessage(String username, String password) {
+        return ("\u0000" + username + "\u0000" + password).getBytes(StandardCharsets.UTF_8);
+    }
+}